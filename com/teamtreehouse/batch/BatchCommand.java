@@ -0,0 +1,194 @@
+package com.teamtreehouse.batch;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One line of a batch script, split into its command and arguments.
+ *
+ * Arguments are separated by spaces; put double quotes around any that
+ * contain spaces. Blank lines and lines starting with # are skipped.
+ *   team   "<team name>" "<coach name>"
+ *   assign "<team name>" "<last name>" "<first name>" [height]
+ *   remove "<team name>" "<last name>" "<first name>" [height]
+ *   move   "<from team>" "<to team>" "<last name>" "<first name>" [height]
+ *   autoassign [seconds to search for balanced teams]
+ *   report balance [all]
+ *   report height "<team name>"
+ *   report roster "<team name>"
+ *   export "<directory>"
+ * The height is only needed when more than one player has the name.
+ * For move, either team may be "(unassigned)" for the unassigned pool;
+ * consecutive move commands are made together, all of them or none.
+ */
+public class BatchCommand {
+    public enum Type { TEAM, ASSIGN, REMOVE, MOVE, AUTO_ASSIGN, REPORT, EXPORT }
+
+    private final int mLineNumber;
+    private final Type mType;
+    private final List<String> mArguments;
+
+    private BatchCommand(int lineNumber, Type type, List<String> arguments) {
+        mLineNumber = lineNumber;
+        mType = type;
+        mArguments = Collections.unmodifiableList(arguments);
+    }
+
+    /**
+     * @param line one line of the script
+     * @param lineNumber where the line is in the script (for messages)
+     * @return the command, or null for a blank line or comment
+     * @throws IllegalArgumentException if the line is not a valid command
+     */
+    public static BatchCommand parse(String line, int lineNumber) {
+        List<String> words = split(line);
+        if (words.isEmpty() || words.get(0).startsWith("#"))
+            return null;
+        String command = words.get(0).toLowerCase();
+        List<String> arguments = words.subList(1, words.size());
+        Type type;
+        switch (command) {
+            case "team":
+                requireCount(command, arguments, 2, 2);
+                type = Type.TEAM;
+                break;
+            case "assign":
+            case "remove":
+                requireCount(command, arguments, 3, 4);
+                if (arguments.size() == 4)
+                    parseHeight(arguments.get(3));
+                type = command.equals("assign") ? Type.ASSIGN : Type.REMOVE;
+                break;
+            case "move":
+                requireCount(command, arguments, 4, 5);
+                if (arguments.size() == 5)
+                    parseHeight(arguments.get(4));
+                type = Type.MOVE;
+                break;
+            case "autoassign":
+                requireCount(command, arguments, 0, 1);
+                if (arguments.size() == 1)
+                    parseSeconds(arguments.get(0));
+                type = Type.AUTO_ASSIGN;
+                break;
+            case "report":
+                if (arguments.isEmpty())
+                    throw new IllegalArgumentException("report needs balance, height or roster");
+                String report = arguments.get(0).toLowerCase();
+                if (report.equals("balance")) {
+                    requireCount(command, arguments, 1, 2);
+                    if (arguments.size() == 2 && !arguments.get(1).equalsIgnoreCase("all"))
+                        throw new IllegalArgumentException("report balance only takes \"all\"");
+                } else if (report.equals("height") || report.equals("roster")) {
+                    requireCount(command, arguments, 2, 2);
+                } else {
+                    throw new IllegalArgumentException(String.format("unknown report \"%s\"", arguments.get(0)));
+                }
+                type = Type.REPORT;
+                break;
+            case "export":
+                requireCount(command, arguments, 1, 1);
+                type = Type.EXPORT;
+                break;
+            default:
+                throw new IllegalArgumentException(String.format("unknown command \"%s\"", words.get(0)));
+        }
+        return new BatchCommand(lineNumber, type, new ArrayList<>(arguments));
+    }
+
+    public int getLineNumber() { return mLineNumber; }
+    public Type getType() { return mType; }
+    public int getArgumentCount() { return mArguments.size(); }
+    public String getArgument(int index) { return mArguments.get(index); }
+
+    /**
+     * @return the player's last name, for an assign, remove or move command
+     */
+    public String getLastName() { return mArguments.get(playerArgument()); }
+
+    /**
+     * @return the player's first name, for an assign, remove or move command
+     */
+    public String getFirstName() { return mArguments.get(playerArgument() + 1); }
+
+    /**
+     * @return the optional height of an assign, remove or move command, or null
+     */
+    public Integer getHeight() {
+        if (mType != Type.ASSIGN && mType != Type.REMOVE && mType != Type.MOVE)
+            return null;
+        int index = playerArgument() + 2;
+        return mArguments.size() > index ? parseHeight(mArguments.get(index)) : null;
+    }
+
+    // Note: the player's names come after the one team, or both teams for move
+    private int playerArgument() {
+        return mType == Type.MOVE ? 2 : 1;
+    }
+
+    /**
+     * @return the optional time budget of an autoassign command, or null
+     */
+    public Double getSeconds() {
+        if (mType != Type.AUTO_ASSIGN || mArguments.isEmpty())
+            return null;
+        return parseSeconds(mArguments.get(0));
+    }
+
+    private static double parseSeconds(String text) {
+        try {
+            double seconds = Double.parseDouble(text);
+            if (seconds >= 0 && seconds <= 3600)
+                return seconds;
+        } catch (NumberFormatException ex) {
+            // reported below
+        }
+        throw new IllegalArgumentException(String.format("\"%s\" is not a number of seconds (0 to 3600)", text));
+    }
+
+    private static int parseHeight(String text) {
+        try {
+            return Integer.parseInt(text);
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException(String.format("height \"%s\" is not a number", text));
+        }
+    }
+
+    private static void requireCount(String command, List<String> arguments, int min, int max) {
+        if (arguments.size() < min || arguments.size() > max)
+            throw new IllegalArgumentException(String.format(
+                    "%s takes %s arguments, not %d",
+                    command, min == max ? String.valueOf(min) : min + " to " + max, arguments.size()));
+    }
+
+    /**
+     * Split on spaces, keeping quoted text together.
+     */
+    private static List<String> split(String line) {
+        List<String> words = new ArrayList<>();
+        StringBuilder word = new StringBuilder();
+        boolean quoted = false;
+        boolean inWord = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '"') {
+                quoted = !quoted;
+                inWord = true;
+            } else if (!quoted && Character.isWhitespace(c)) {
+                if (inWord)
+                    words.add(word.toString());
+                word.setLength(0);
+                inWord = false;
+            } else {
+                word.append(c);
+                inWord = true;
+            }
+        }
+        if (quoted)
+            throw new IllegalArgumentException("missing closing quote");
+        if (inWord)
+            words.add(word.toString());
+        return words;
+    }
+}
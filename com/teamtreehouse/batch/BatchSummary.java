@@ -0,0 +1,59 @@
+package com.teamtreehouse.batch;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Counts of what a batch script did, for the summary printed at the end.
+ */
+public class BatchSummary {
+    private final Map<BatchCommand.Type, Integer> mApplied = new EnumMap<>(BatchCommand.Type.class);
+    private int mErrors;
+    private int mBatches;
+    private long mElapsedNanos;
+
+    public void applied(BatchCommand.Type type) {
+        mApplied.merge(type, 1, Integer::sum);
+    }
+
+    public void error() { mErrors++; }
+    public void batchDone() { mBatches++; }
+    public void setElapsedNanos(long elapsedNanos) { mElapsedNanos = elapsedNanos; }
+
+    public int getApplied(BatchCommand.Type type) {
+        return mApplied.getOrDefault(type, 0);
+    }
+
+    public int getApplied() {
+        int total = 0;
+        for (int count : mApplied.values())
+            total += count;
+        return total;
+    }
+
+    public int getErrors() { return mErrors; }
+    public int getBatches() { return mBatches; }
+    public long getElapsedNanos() { return mElapsedNanos; }
+
+    public double getCommandsPerSecond() {
+        if (mElapsedNanos <= 0)
+            return 0d;
+        return (getApplied() + mErrors) * 1e9 / mElapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "Batch complete: %d commands applied (%d teams created, %d assigned, %d removed, %d moved, %d auto-assigns, %d reports, %d exports), "
+                        + "%d failed, %d batches in %.3f s (%.0f commands/s)",
+                getApplied(),
+                getApplied(BatchCommand.Type.TEAM),
+                getApplied(BatchCommand.Type.ASSIGN),
+                getApplied(BatchCommand.Type.REMOVE),
+                getApplied(BatchCommand.Type.MOVE),
+                getApplied(BatchCommand.Type.AUTO_ASSIGN),
+                getApplied(BatchCommand.Type.REPORT),
+                getApplied(BatchCommand.Type.EXPORT),
+                mErrors, mBatches, mElapsedNanos / 1e9, getCommandsPerSecond());
+    }
+}
@@ -0,0 +1,156 @@
+package com.teamtreehouse.benchmark;
+
+import com.teamtreehouse.model.League;
+import com.teamtreehouse.model.Player;
+import com.teamtreehouse.model.Team;
+import com.teamtreehouse.web.LeagueHttpServer;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures requests/sec of the JSON API on this computer, with client
+ * threads reading every kind of report while another thread keeps
+ * moving players between teams, to show reads don't hold up edits.
+ *
+ * Usage: java com.teamtreehouse.benchmark.HttpLoadTest [players] [teams] [seconds] [clients]
+ */
+public class HttpLoadTest {
+
+    private static class Endpoint {
+        final String mName;
+        final LongAdder mRequests = new LongAdder();
+        final LongAdder mBytes = new LongAdder();
+        final LongAdder mNanos = new LongAdder();
+
+        Endpoint(String name) {
+            mName = name;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        int teamCount = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        int clients = args.length > 3 ? Integer.parseInt(args[3]) : 8;
+
+        League league = new League();
+        Random random = new Random(42);
+        Player[] players = SyntheticPlayers.roster(size, random);
+        for (Player player : players)
+            league.registerPlayer(player);
+        Team[] teams = new Team[teamCount];
+        for (int i = 0; i < teamCount; i++)
+            teams[i] = league.createTeam(String.format("Team %02d", i + 1), "Coach " + (i + 1));
+        // leave a tenth of the players unassigned, for the balance report
+        int assigned = size - size / 10;
+        int[] teamOf = new int[assigned]; // only the editor thread moves players
+        for (int i = 0; i < assigned; i++) {
+            teamOf[i] = i % teamCount;
+            league.assignPlayer(players[i], teams[teamOf[i]]);
+        }
+
+        LeagueHttpServer server = new LeagueHttpServer(league, 0);
+        server.start();
+        String base = "http://localhost:" + server.getPort();
+        System.out.printf("%,d players, %d teams, %d clients for %d s against %s%n",
+                size, teamCount, clients, seconds, base);
+
+        Endpoint[] endpoints = {
+            new Endpoint("/teams"),
+            new Endpoint("/teams/{name}/roster"),
+            new Endpoint("/teams/{name}/height-report"),
+            new Endpoint("/reports/balance?unassigned=true")
+        };
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        AtomicBoolean running = new AtomicBoolean(true);
+        LongAdder errors = new LongAdder();
+        LongAdder edits = new LongAdder();
+
+        Random editRandom = new Random(7);
+        Runnable editor = () -> {
+            while (running.get()) {
+                int i = editRandom.nextInt(assigned);
+                int to = editRandom.nextInt(teamCount);
+                if (league.transferPlayer(players[i], teams[teamOf[i]], teams[to])) {
+                    teamOf[i] = to;
+                    edits.increment();
+                }
+            }
+        };
+
+        // edits with no one reading, to compare with edits while reading
+        Thread editorAlone = new Thread(editor, "editor");
+        editorAlone.start();
+        Thread.sleep(1000);
+        running.set(false);
+        editorAlone.join();
+        double editsAlone = edits.sumThenReset();
+        running.set(true);
+
+        List<Thread> threads = new ArrayList<>();
+        for (int c = 0; c < clients; c++) {
+            long seed = c;
+            threads.add(new Thread(() -> {
+                Random clientRandom = new Random(seed);
+                while (running.get()) {
+                    int which = clientRandom.nextInt(endpoints.length);
+                    String team = URLEncoder.encode(teams[clientRandom.nextInt(teamCount)].getName(), StandardCharsets.UTF_8)
+                            .replace("+", "%20");
+                    String path = endpoints[which].mName.replace("{name}", team);
+                    long start = System.nanoTime();
+                    try {
+                        HttpResponse<byte[]> response = client.send(
+                                HttpRequest.newBuilder(URI.create(base + path)).GET().build(),
+                                HttpResponse.BodyHandlers.ofByteArray());
+                        if (response.statusCode() != 200) {
+                            errors.increment();
+                            continue;
+                        }
+                        endpoints[which].mBytes.add(response.body().length);
+                    } catch (Exception ex) {
+                        errors.increment();
+                        continue;
+                    }
+                    endpoints[which].mNanos.add(System.nanoTime() - start);
+                    endpoints[which].mRequests.increment();
+                }
+            }, "client-" + c));
+        }
+
+        long start = System.nanoTime();
+        Thread editorThread = new Thread(editor, "editor");
+        editorThread.start();
+        for (Thread thread : threads)
+            thread.start();
+        Thread.sleep(seconds * 1000L);
+        running.set(false);
+        editorThread.join();
+        for (Thread thread : threads)
+            thread.join();
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        server.stop();
+
+        long total = 0;
+        System.out.printf("%-34s %12s %12s %12s%n", "endpoint", "requests/s", "avg ms", "avg KB");
+        for (Endpoint endpoint : endpoints) {
+            long requests = endpoint.mRequests.sum();
+            total += requests;
+            System.out.printf("%-34s %,12.0f %12.2f %12.1f%n", endpoint.mName,
+                    requests / elapsed,
+                    requests == 0 ? 0d : endpoint.mNanos.sum() / 1e6 / requests,
+                    requests == 0 ? 0d : endpoint.mBytes.sum() / 1024d / requests);
+        }
+        System.out.printf("%-34s %,12.0f%n", "all", total / elapsed);
+        System.out.printf("errors: %d, roster edits: %,.0f/s alone, %,.0f/s while serving%n",
+                errors.sum(), editsAlone, edits.sum() / elapsed);
+    }
+}
@@ -0,0 +1,42 @@
+package com.teamtreehouse.benchmark;
+
+import com.teamtreehouse.model.Player;
+import java.util.Random;
+
+/**
+ * Rosters of made-up players for the load test and the JMH benchmarks.
+ */
+final class SyntheticPlayers {
+
+    private static final String[] SYLLABLES = {
+        "an", "ber", "co", "dal", "en", "fra", "gor", "hel", "is", "jo",
+        "kar", "lo", "man", "ne", "or", "pe", "ra", "son", "ter", "ville"
+    };
+
+    private SyntheticPlayers() {
+    }
+
+    /**
+     * Names are built from a small set of syllables, so like a real
+     * registry many players share a surname or a long common prefix.
+     */
+    static Player[] roster(int size, Random random) {
+        Player[] players = new Player[size];
+        for (int i = 0; i < size; i++) {
+            players[i] = new Player(
+                    name(random, 2) + i, // unique, so every player is kept
+                    name(random, 3),
+                    35 + random.nextInt(13),
+                    random.nextBoolean());
+        }
+        return players;
+    }
+
+    private static String name(Random random, int syllables) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < syllables; i++)
+            sb.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+        sb.setCharAt(0, Character.toUpperCase(sb.charAt(0)));
+        return sb.toString();
+    }
+}
@@ -0,0 +1,397 @@
+package com.teamtreehouse.export;
+
+import com.teamtreehouse.metrics.Metrics;
+import com.teamtreehouse.metrics.OperationMetrics;
+import com.teamtreehouse.model.League;
+import com.teamtreehouse.model.LeagueState;
+import com.teamtreehouse.model.LeagueStatistics;
+import com.teamtreehouse.model.Player;
+import com.teamtreehouse.view.LeagueBalanceReport;
+import com.teamtreehouse.view.LeagueJson;
+import com.teamtreehouse.view.TeamReports;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes every team's roster and the League Balance Report into a
+ * directory, each as CSV, JSON and text:
+ *   balance-report.csv, .json, .txt
+ *   rosters/{team name}.csv, .json, .txt
+ * The text files match what the menus print. The CSV rosters are in the
+ * player registry format (see {@link com.teamtreehouse.model.PlayerRegistryLoader}),
+ * so a roster can be loaded as a registry.
+ *
+ * Everything but the text balance report is rendered from a copy of the
+ * league ({@link LeagueState}), one task per team spread over all the
+ * processors, so an export doesn't hold up changes to the league. Each
+ * thread renders into its own buffers and writes them to the file
+ * through a FileChannel, 64 KB at a time.
+ */
+public class LeagueExporter {
+    public static final String ROSTER_DIRECTORY = "rosters";
+    public static final String BALANCE_REPORT_NAME = "balance-report";
+    static final String UNASSIGNED_FILE_NAME = "unassigned";
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_FILE_NAME_LENGTH = 100;
+    // times the text balance report is rendered again if the league
+    //    changes while it's being rendered
+    private static final int MAX_RENDER_ATTEMPTS = 3;
+
+    private static final OperationMetrics EXPORT = Metrics.operation("export.all");
+    private static final OperationMetrics EXPORT_TEAM = Metrics.operation("export.team");
+
+    private final League mLeague;
+    private final LeagueStatistics mStatistics;
+    private int mParallelism;
+
+    /**
+     * What one export wrote.
+     */
+    public static class Result {
+        private final Path mDirectory;
+        private final int mTeams;
+        private final int mFiles;
+        private final long mBytes;
+        private final long mElapsedNanos;
+
+        Result(Path directory, int teams, int files, long bytes, long elapsedNanos) {
+            mDirectory = directory;
+            mTeams = teams;
+            mFiles = files;
+            mBytes = bytes;
+            mElapsedNanos = elapsedNanos;
+        }
+
+        public Path getDirectory() { return mDirectory; }
+        public int getTeams() { return mTeams; }
+        public int getFiles() { return mFiles; }
+        public long getBytes() { return mBytes; }
+        public long getElapsedNanos() { return mElapsedNanos; }
+
+        @Override
+        public String toString() {
+            return String.format("Exported %d teams to %s: %d files, %.1f MB in %.3f s",
+                    mTeams, mDirectory.toAbsolutePath(), mFiles, mBytes / (1024d * 1024d), mElapsedNanos / 1e9);
+        }
+    }
+
+    /**
+     * Text, bytes and encoder reused by every file one thread writes.
+     */
+    private static class Buffers {
+        final StringBuilder mText = new StringBuilder(BUFFER_SIZE);
+        final char[] mChars = new char[BUFFER_SIZE / 4];
+        final CharBuffer mCharBuffer = CharBuffer.wrap(mChars);
+        final ByteBuffer mBytes = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        final CharsetEncoder mEncoder = StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    private final ThreadLocal<Buffers> mBuffers = ThreadLocal.withInitial(Buffers::new);
+
+    public LeagueExporter(League league, LeagueStatistics statistics) {
+        mLeague = league;
+        mStatistics = statistics;
+        mParallelism = Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * @param parallelism number of files rendered and written at the same time
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1)
+            throw new IllegalArgumentException("parallelism must be at least 1");
+        mParallelism = parallelism;
+    }
+
+    /**
+     * Export the league, replacing any files of the same names.
+     * Note: must not be called from a LeagueListener (see
+     *    {@link LeagueState#capture}).
+     * @param directory where to write the files, created if needed
+     * @param includeUnassignedPlayers also export the unassigned players'
+     *   roster, and include them in the balance report
+     * @throws IOException if a file can't be written
+     */
+    public Result export(Path directory, boolean includeUnassignedPlayers) throws IOException {
+        return EXPORT.time(() -> export_timed(directory, includeUnassignedPlayers));
+    }
+
+    private Result export_timed(Path directory, boolean includeUnassignedPlayers) throws IOException {
+        long start = System.nanoTime();
+        Path rosterDirectory = directory.resolve(ROSTER_DIRECTORY);
+        Files.createDirectories(rosterDirectory);
+
+        // Note: the text balance report needs the live teams' running
+        //    totals, so it's rendered first and then the league is copied;
+        //    if the league changed in between, it's rendered again so all
+        //    the files show the same version of the league
+        StringBuilder balanceText = new StringBuilder();
+        LeagueState state;
+        int attempt = 0;
+        while (true) {
+            long version = mLeague.getVersion();
+            balanceText.setLength(0);
+            appendBalanceText(balanceText, includeUnassignedPlayers);
+            state = LeagueState.capture(mLeague);
+            if (state.getVersion() == version || ++attempt == MAX_RENDER_ATTEMPTS)
+                break;
+        }
+
+        List<LeagueState.TeamState> teams = new ArrayList<>(state.getTeams().size() + 1);
+        List<String> fileNames = new ArrayList<>(state.getTeams().size() + 1);
+        Set<String> usedNames = new HashSet<>();
+        if (includeUnassignedPlayers) {
+            teams.add(state.getUnassignedPool());
+            fileNames.add(UNASSIGNED_FILE_NAME);
+            usedNames.add(UNASSIGNED_FILE_NAME);
+        }
+        for (LeagueState.TeamState team : state.getTeams()) {
+            teams.add(team);
+            fileNames.add(uniqueFileName(team.getName(), usedNames));
+        }
+
+        LeagueState exported = state;
+        AtomicLong bytes = new AtomicLong();
+        List<RecursiveAction> tasks = new ArrayList<>(teams.size() + 1);
+        tasks.add(task(() -> {
+            Buffers buffers = mBuffers.get();
+            Path base = directory.resolve(BALANCE_REPORT_NAME);
+            long written = write(base.resolveSibling(BALANCE_REPORT_NAME + ".txt"), balanceText, buffers);
+            buffers.mText.setLength(0);
+            appendBalanceCsv(buffers.mText, exported, includeUnassignedPlayers);
+            written += write(base.resolveSibling(BALANCE_REPORT_NAME + ".csv"), buffers.mText, buffers);
+            buffers.mText.setLength(0);
+            LeagueJson.appendBalanceReport(buffers.mText, exported, includeUnassignedPlayers);
+            written += write(base.resolveSibling(BALANCE_REPORT_NAME + ".json"), buffers.mText, buffers);
+            bytes.addAndGet(written);
+        }));
+        for (int i = 0; i < teams.size(); i++) {
+            LeagueState.TeamState team = teams.get(i);
+            String fileName = fileNames.get(i);
+            tasks.add(task(() -> {
+                long teamStart = System.nanoTime();
+                bytes.addAndGet(exportTeam(rosterDirectory, fileName, exported, team));
+                EXPORT_TEAM.recordSince(teamStart);
+            }));
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(mParallelism);
+        try {
+            pool.invoke(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    invokeAll(tasks);
+                }
+            });
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        } finally {
+            pool.shutdown();
+        }
+        return new Result(directory, teams.size(), 3 * tasks.size(), bytes.get(), System.nanoTime() - start);
+    }
+
+    private interface ExportTask {
+        void run() throws IOException;
+    }
+
+    private static RecursiveAction task(ExportTask exportTask) {
+        return new RecursiveAction() {
+            @Override
+            protected void compute() {
+                try {
+                    exportTask.run();
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            }
+        };
+    }
+
+    /**
+     * @return bytes written
+     */
+    private long exportTeam(Path rosterDirectory, String fileName, LeagueState state, LeagueState.TeamState team)
+            throws IOException {
+        Buffers buffers = mBuffers.get();
+        StringBuilder text = buffers.mText;
+        text.setLength(0);
+        TeamReports.appendRoster(text, team.getName(), team.getCoach(), team.getPlayers());
+        long written = write(rosterDirectory.resolve(fileName + ".txt"), text, buffers);
+
+        text.setLength(0);
+        text.append("firstName,lastName,heightInInches,previousExperience\n");
+        for (Player player : team.getPlayers()) {
+            appendCsvField(text, player.getFirstName()).append(',');
+            appendCsvField(text, player.getLastName()).append(',');
+            text.append(player.getHeightInInches()).append(',');
+            text.append(player.isPreviousExperience()).append('\n');
+        }
+        written += write(rosterDirectory.resolve(fileName + ".csv"), text, buffers);
+
+        text.setLength(0);
+        LeagueJson.appendRoster(text, state, team);
+        written += write(rosterDirectory.resolve(fileName + ".json"), text, buffers);
+        return written;
+    }
+
+    private void appendBalanceText(StringBuilder out, boolean includeUnassignedPlayers) {
+        out.append("League Balance Report\n");
+        out.append("-----------------------\n\n");
+        if (!includeUnassignedPlayers && mLeague.getTeamCount() < 1) {
+            out.append("Team Name\n");
+            out.append("-------------\n");
+            out.append("(no teams)\n");
+            return;
+        }
+        LeagueBalanceReport.appendReport(out, mStatistics, includeUnassignedPlayers);
+    }
+
+    /**
+     * One row per team and a Total row, with a column for each height
+     * in the league, tallest first.
+     */
+    private static void appendBalanceCsv(StringBuilder out, LeagueState state, boolean includeUnassignedPlayers) {
+        NavigableMap<Integer, Integer> heights = state.getHeightCounts(includeUnassignedPlayers);
+        out.append("team,coach,players,averageHeight,experienced,inexperienced,percentExperienced");
+        for (int height : heights.keySet())
+            out.append(",height").append(height);
+        out.append('\n');
+
+        List<LeagueState.TeamState> teams = new ArrayList<>(state.getTeams().size() + 1);
+        if (includeUnassignedPlayers)
+            teams.add(state.getUnassignedPool());
+        teams.addAll(state.getTeams());
+        for (LeagueState.TeamState team : teams) {
+            appendBalanceCsvRow(out, team.getName(), team.getCoach(), team.getCount_AllPlayers(),
+                    team.getAverageHeight(), team.getCount_ExperiencedPlayers());
+            for (int height : heights.keySet())
+                out.append(',').append(team.getHeightCounts().getOrDefault(height, 0));
+            out.append('\n');
+        }
+
+        appendBalanceCsvRow(out, "Total", "", state.getCount_AllPlayers(includeUnassignedPlayers),
+                state.getAverageHeight(includeUnassignedPlayers),
+                state.getCount_ExperiencedPlayers(includeUnassignedPlayers));
+        for (Map.Entry<Integer, Integer> height : heights.entrySet())
+            out.append(',').append(height.getValue());
+        out.append('\n');
+    }
+
+    private static void appendBalanceCsvRow(StringBuilder out, String name, String coach, int numPlayers,
+            double averageHeight, int experienced) {
+        appendCsvField(out, name).append(',');
+        appendCsvField(out, coach).append(',');
+        out.append(numPlayers).append(',');
+        out.append(String.format("%.2f", averageHeight)).append(',');
+        out.append(experienced).append(',');
+        out.append(numPlayers - experienced).append(',');
+        out.append(numPlayers < 1 ? 0 : 100 * experienced / numPlayers);
+    }
+
+    /**
+     * Quoted (RFC 4180) if it holds a comma, quote or line break.
+     */
+    private static StringBuilder appendCsvField(StringBuilder out, String value) {
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote)
+            return out.append(value);
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"')
+                out.append('"');
+            out.append(c);
+        }
+        return out.append('"');
+    }
+
+    /**
+     * A file name for the team, unique (ignoring case) among usedNames.
+     * Characters that aren't safe in file names are replaced with _.
+     */
+    static String uniqueFileName(String teamName, Set<String> usedNames) {
+        StringBuilder sb = new StringBuilder(Math.min(teamName.length(), MAX_FILE_NAME_LENGTH));
+        for (int i = 0; i < teamName.length() && sb.length() < MAX_FILE_NAME_LENGTH; i++) {
+            char c = teamName.charAt(i);
+            boolean safe = (c < 0x80 && Character.isLetterOrDigit(c)) || c == ' ' || c == '-' || c == '_'
+                    || (c == '.' && sb.length() > 0);
+            sb.append(safe ? c : '_');
+        }
+        String base = sb.toString().trim();
+        if (base.isEmpty())
+            base = "team";
+        String name = base;
+        for (int copy = 2; !usedNames.add(name.toLowerCase()); copy++)
+            name = String.format("%s (%d)", base, copy);
+        return name;
+    }
+
+    /**
+     * Encode the text as UTF-8 and write it to the file, a buffer at a time.
+     * @return bytes written
+     */
+    private static long write(Path file, StringBuilder text, Buffers buffers) throws IOException {
+        CharsetEncoder encoder = buffers.mEncoder.reset();
+        char[] chars = buffers.mChars;
+        CharBuffer in = buffers.mCharBuffer;
+        ByteBuffer out = buffers.mBytes;
+        out.clear();
+        long written = 0;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            int length = text.length();
+            int start = 0;
+            do {
+                int end = Math.min(length, start + chars.length);
+                // Note: a surrogate pair is never split between chunks
+                if (end < length && Character.isHighSurrogate(text.charAt(end - 1)))
+                    end--;
+                text.getChars(start, end, chars, 0);
+                in.clear().limit(end - start);
+                boolean last = end == length;
+                while (encoder.encode(in, out, last).isOverflow())
+                    written += drain(channel, out);
+                start = end;
+            } while (start < length);
+            while (encoder.flush(out) == CoderResult.OVERFLOW)
+                written += drain(channel, out);
+            written += drain(channel, out);
+        }
+        return written;
+    }
+
+    private static long drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        int count = buffer.remaining();
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+        buffer.clear();
+        return count;
+    }
+}
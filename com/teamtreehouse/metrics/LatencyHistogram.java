@@ -0,0 +1,94 @@
+package com.teamtreehouse.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts of recorded durations in log-linear buckets, like an
+ * HdrHistogram: every power of two is split into 64 equal buckets, so
+ * any value is kept to within about 1.5% from 1 ns up to centuries, in
+ * a fixed 3712 counters. Recording is a few atomic adds, with no locks
+ * or allocation, and can be done from any number of threads.
+ *
+ * Percentiles read while values are being recorded may be off by the
+ * values recorded meanwhile.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int HALF_BUCKET_COUNT = 1 << (SUB_BUCKET_BITS - 1); // 64
+    private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS + 1) * HALF_BUCKET_COUNT;
+
+    private final AtomicLongArray mCounts = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder mCount = new LongAdder();
+    private final LongAdder mSum = new LongAdder();
+    private final LongAccumulator mMax = new LongAccumulator(Math::max, 0);
+
+    /**
+     * @param nanos a duration; negative values are counted as 0
+     */
+    public void record(long nanos) {
+        if (nanos < 0)
+            nanos = 0;
+        mCounts.incrementAndGet(bucketOf(nanos));
+        mCount.increment();
+        mSum.add(nanos);
+        mMax.accumulate(nanos);
+    }
+
+    public long getCount() { return mCount.sum(); }
+    public long getTotalNanos() { return mSum.sum(); }
+    public long getMaxNanos() { return mMax.get(); }
+
+    public double getMeanNanos() {
+        long count = mCount.sum();
+        return count == 0 ? 0d : (double) mSum.sum() / count;
+    }
+
+    /**
+     * @param percentile 0 to 100, e.g. 99.9
+     * @return the longest duration in the bucket holding the percentile
+     *   (no more than the longest recorded), or 0 if nothing was recorded
+     */
+    public long getNanosAtPercentile(double percentile) {
+        long count = mCount.sum();
+        if (count == 0)
+            return 0;
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100d * count));
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            seen += mCounts.get(bucket);
+            if (seen >= rank)
+                return Math.min(highestValueIn(bucket), mMax.get());
+        }
+        return mMax.get();
+    }
+
+    public void reset() {
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++)
+            mCounts.set(bucket, 0);
+        mCount.reset();
+        mSum.reset();
+        mMax.reset();
+    }
+
+    // Values below 128 get a bucket each. Above that, a value whose top
+    //    bit is bit n (n >= 7) is bucketed by its top 7 bits: 64 buckets
+    //    per power of two, each 2^(n-6) wide.
+    static int bucketOf(long value) {
+        int topBit = 63 - Long.numberOfLeadingZeros(value);
+        if (topBit < SUB_BUCKET_BITS)
+            return (int) value;
+        int shift = topBit - SUB_BUCKET_BITS + 1;
+        int subBucket = (int) (value >>> shift); // 64 to 127
+        return (shift + 1) * HALF_BUCKET_COUNT + subBucket - HALF_BUCKET_COUNT;
+    }
+
+    static long highestValueIn(int bucket) {
+        if (bucket < 2 * HALF_BUCKET_COUNT)
+            return bucket;
+        int shift = bucket / HALF_BUCKET_COUNT - 1;
+        long subBucket = bucket % HALF_BUCKET_COUNT + HALF_BUCKET_COUNT;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,93 @@
+package com.teamtreehouse.metrics;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Every operation being measured in this process, by name. Names are
+ * grouped by a prefix: "menu." for menu actions (not counting the time
+ * spent waiting for the user to type), "league." for changes to the
+ * model, "report." for rendering reports, "http." for API requests.
+ *
+ * Operations are usually looked up once and kept in a static field.
+ */
+public class Metrics {
+    private static final ConcurrentMap<String, OperationMetrics> sOperations = new ConcurrentSkipListMap<>();
+
+    private Metrics() {}
+
+    /**
+     * @return the operation with the name, created the first time it's asked for
+     */
+    public static OperationMetrics operation(String name) {
+        return sOperations.computeIfAbsent(name, OperationMetrics::new);
+    }
+
+    /**
+     * @return all operations in order of name (read-only)
+     */
+    public static Collection<OperationMetrics> getOperations() {
+        return Collections.unmodifiableCollection(sOperations.values());
+    }
+
+    /**
+     * Forget everything recorded so far, e.g. to measure from a known point.
+     */
+    public static void reset() {
+        for (OperationMetrics operation : sOperations.values())
+            operation.getLatencies().reset();
+    }
+
+    /**
+     * @return a table of the operations recorded so far, times in milliseconds
+     */
+    public static String report() {
+        int nameLength = "Operation".length();
+        for (OperationMetrics operation : sOperations.values())
+            nameLength = Math.max(nameLength, operation.getName().length());
+        String rowFormat = "%-" + nameLength + "s %10s %10s %10s %10s %10s %10s %10s\n";
+        String valueFormat = "%-" + nameLength + "s %,10d %10.3f %10.3f %10.3f %10.3f %10.3f %10.3f\n";
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(rowFormat, "Operation", "count", "mean ms", "p50", "p90", "p99", "p99.9", "max"));
+        boolean any = false;
+        for (OperationMetrics operation : sOperations.values()) {
+            LatencyHistogram latencies = operation.getLatencies();
+            if (latencies.getCount() == 0)
+                continue;
+            any = true;
+            sb.append(String.format(valueFormat, operation.getName(), latencies.getCount(),
+                    latencies.getMeanNanos() / 1e6,
+                    latencies.getNanosAtPercentile(50) / 1e6,
+                    latencies.getNanosAtPercentile(90) / 1e6,
+                    latencies.getNanosAtPercentile(99) / 1e6,
+                    latencies.getNanosAtPercentile(99.9) / 1e6,
+                    latencies.getMaxNanos() / 1e6));
+        }
+        if (!any)
+            sb.append("(nothing recorded yet)\n");
+        return sb.toString();
+    }
+
+    /**
+     * Append the report to a file, with the time it was taken.
+     * @throws IOException if the file can't be written
+     */
+    public static void dumpTo(Path file) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            out.write("Metrics at " + LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME) + "\n");
+            out.write(report());
+            out.write("\n");
+        }
+    }
+}
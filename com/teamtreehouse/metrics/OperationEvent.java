@@ -0,0 +1,26 @@
+package com.teamtreehouse.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Flight Recorder event for a slow path timed with
+ * {@link OperationMetrics#time(OperationMetrics.Action)}. Only recorded while a recording is
+ * running, and by default only when the operation takes 10 ms or more.
+ */
+@Name("com.teamtreehouse.LeagueOperation")
+@Label("League Operation")
+@Category("Soccer League Organizer")
+@Description("A report render, auto-assign search, snapshot or other slow league operation")
+@Threshold("10 ms")
+@StackTrace(false)
+class OperationEvent extends Event {
+    @Name("operation")
+    @Label("Operation")
+    String mOperation;
+}
@@ -0,0 +1,82 @@
+package com.teamtreehouse.metrics;
+
+import jdk.jfr.FlightRecorder;
+
+/**
+ * The count and latencies of one kind of operation.
+ *
+ * Fast paths record their own start time, so nothing is allocated:
+ *   long start = System.nanoTime();
+ *   ...
+ *   ASSIGN.recordSince(start);
+ * Slow paths also get a Flight Recorder event:
+ *   Report report = RENDER.time(() -> render(team));
+ */
+public class OperationMetrics {
+    private final String mName;
+    private final LatencyHistogram mLatencies = new LatencyHistogram();
+
+    OperationMetrics(String name) {
+        mName = name;
+    }
+
+    public String getName() { return mName; }
+    public LatencyHistogram getLatencies() { return mLatencies; }
+
+    public void record(long elapsedNanos) {
+        mLatencies.record(elapsedNanos);
+    }
+
+    /**
+     * @param startNanos System.nanoTime() when the operation started
+     */
+    public void recordSince(long startNanos) {
+        mLatencies.record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * A slow path timed by {@link #time(Action)}.
+     */
+    public interface Action<T, E extends Exception> {
+        T run() throws E;
+    }
+
+    public interface VoidAction<E extends Exception> {
+        void run() throws E;
+    }
+
+    /**
+     * Run a slow path, recording it here and, if it was slow enough, as
+     * a {@link OperationEvent}; recorded even if it throws.
+     * @return what the action returned
+     */
+    public <T, E extends Exception> T time(Action<T, E> action) throws E {
+        // Note: the first event costs a few hundred ms to set up, so
+        //    none are made until a recording has been started
+        OperationEvent event = null;
+        if (FlightRecorder.isInitialized()) {
+            event = new OperationEvent();
+            event.begin();
+        }
+        long start = System.nanoTime();
+        try {
+            return action.run();
+        } finally {
+            recordSince(start);
+            if (event != null) {
+                event.end();
+                if (event.shouldCommit()) {
+                    event.mOperation = mName;
+                    event.commit();
+                }
+            }
+        }
+    }
+
+    public <E extends Exception> void time(VoidAction<E> action) throws E {
+        time(() -> {
+            action.run();
+            return null;
+        });
+    }
+}
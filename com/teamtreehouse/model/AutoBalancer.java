@@ -0,0 +1,491 @@
+package com.teamtreehouse.model;
+
+import com.teamtreehouse.metrics.Metrics;
+import com.teamtreehouse.metrics.OperationMetrics;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Spreads the unassigned players across the existing teams so that team
+ * size, average height and share of experienced players come out as even
+ * as possible. Players already on a team stay where they are.
+ *
+ * The cost of a plan is the sum over those three measures of their
+ * variance across teams (experience as a fraction, weighted so a 10
+ * point spread in percent counts like a 1 inch spread in height).
+ * Each search starts from a randomized greedy deal, always to one of the
+ * smallest teams, and then swaps and moves newly placed players between
+ * teams while that lowers the cost. Searches run in parallel on a
+ * fork/join pool, restarting until the time budget is spent, and the
+ * cheapest plan found wins.
+ *
+ * The league is read once, when the balancer is created; the plan is
+ * only applied to the league by {@link Plan#applyTo(League)}.
+ */
+public class AutoBalancer {
+    public static final long DEFAULT_TIME_BUDGET_MILLIS = 2_000;
+
+    private static final double SIZE_WEIGHT = 1d;
+    private static final double HEIGHT_WEIGHT = 1d;
+    private static final double EXPERIENCE_WEIGHT = 100d;
+    private static final double EPSILON = 1e-12;
+    private static final OperationMetrics BALANCE = Metrics.operation("autoAssign.balance");
+
+    private final Player[] mPlayers; // the unassigned players
+    private final int[] mHeights;
+    private final boolean[] mExperienced;
+    private final Team[] mTeams;
+    private final int[] mBaseSize; // of each team before any players are added
+    private final long[] mBaseHeightSum;
+    private final int[] mBaseExperienced;
+    private int mParallelism;
+    private long mSeed;
+
+    public AutoBalancer(League league) {
+        Collection<Player> players = league.getUnassignedPlayers();
+        mPlayers = players.toArray(new Player[0]);
+        mHeights = new int[mPlayers.length];
+        mExperienced = new boolean[mPlayers.length];
+        for (int i = 0; i < mPlayers.length; i++) {
+            mHeights[i] = mPlayers[i].getHeightInInches();
+            mExperienced[i] = mPlayers[i].isPreviousExperience();
+        }
+        mTeams = league.getTeams().toArray(new Team[0]);
+        mBaseSize = new int[mTeams.length];
+        mBaseHeightSum = new long[mTeams.length];
+        mBaseExperienced = new int[mTeams.length];
+        for (int t = 0; t < mTeams.length; t++) {
+            Team team = mTeams[t];
+            mBaseSize[t] = team.getCount_AllPlayers();
+            mBaseHeightSum[t] = Math.round(team.getAverageHeight() * team.getCount_AllPlayers());
+            mBaseExperienced[t] = team.getCount_ExperiencedPlayers();
+        }
+        mParallelism = Runtime.getRuntime().availableProcessors();
+        mSeed = System.nanoTime();
+    }
+
+    /**
+     * @param parallelism number of searches run at the same time
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1)
+            throw new IllegalArgumentException("parallelism must be at least 1");
+        mParallelism = parallelism;
+    }
+
+    /**
+     * @param seed makes the search repeatable (for the same time budget
+     *   and parallelism, as far as thread timing allows)
+     */
+    public void setSeed(long seed) { mSeed = seed; }
+
+    /**
+     * Find a balanced plan, without changing the league.
+     * At least one search always finishes its greedy deal, so a plan is
+     * returned even if the budget is very small.
+     * @param timeBudgetMillis how long to search for
+     * @throws IllegalStateException if the league has no teams
+     */
+    public Plan balance(long timeBudgetMillis) {
+        if (mTeams.length == 0)
+            throw new IllegalStateException("There are no teams to assign players to.");
+        return BALANCE.time(() -> search(timeBudgetMillis));
+    }
+
+    private Plan search(long timeBudgetMillis) {
+        long start = System.nanoTime();
+        long deadline = start + timeBudgetMillis * 1_000_000L;
+        List<Searcher> searchers = new ArrayList<>(mParallelism);
+        for (int i = 0; i < mParallelism; i++)
+            searchers.add(new Searcher(i, mSeed + i * 0x9E3779B97F4A7C15L, deadline));
+
+        ForkJoinPool pool = new ForkJoinPool(mParallelism);
+        try {
+            pool.invoke(new RecursiveTask<Void>() {
+                @Override
+                protected Void compute() {
+                    invokeAll(searchers);
+                    return null;
+                }
+            });
+        } finally {
+            pool.shutdown();
+        }
+
+        Searcher best = null;
+        int starts = 0;
+        for (Searcher searcher : searchers) {
+            starts += searcher.mStarts;
+            if (best == null || searcher.mBestCost < best.mBestCost)
+                best = searcher;
+        }
+        return new Plan(best.mBestTeamOf, best.mBestCost, starts, System.nanoTime() - start);
+    }
+
+    /**
+     * Team assignments for the unassigned players, with how even the
+     * teams would be before and after.
+     */
+    public class Plan {
+        private final int[] mTeamOf; // index into mTeams for each player
+        private final double mCost;
+        private final int mStarts;
+        private final long mElapsedNanos;
+
+        private Plan(int[] teamOf, double cost, int starts, long elapsedNanos) {
+            mTeamOf = teamOf;
+            mCost = cost;
+            mStarts = starts;
+            mElapsedNanos = elapsedNanos;
+        }
+
+        public int getPlayerCount() { return mTeamOf.length; }
+        public int getTeamCount() { return mTeams.length; }
+        public double getCost() { return mCost; }
+        public int getStarts() { return mStarts; }
+        public long getElapsedNanos() { return mElapsedNanos; }
+
+        /**
+         * @return standard deviation across teams of size, average height
+         *   and percent experienced, before the plan is applied
+         */
+        public double[] getSpreadBefore() {
+            return spread(mBaseSize.clone(), mBaseHeightSum.clone(), mBaseExperienced.clone());
+        }
+
+        /**
+         * @return the same as getSpreadBefore, once the plan is applied
+         */
+        public double[] getSpreadAfter() {
+            int[] size = mBaseSize.clone();
+            long[] heightSum = mBaseHeightSum.clone();
+            int[] experienced = mBaseExperienced.clone();
+            for (int i = 0; i < mTeamOf.length; i++) {
+                int t = mTeamOf[i];
+                size[t]++;
+                heightSum[t] += mHeights[i];
+                if (mExperienced[i])
+                    experienced[t]++;
+            }
+            return spread(size, heightSum, experienced);
+        }
+
+        /**
+         * Assign the players as planned, in one {@link League#movePlayers}
+         * batch. Players that are no longer unassigned, or whose team has
+         * been removed (the league changed since the plan was made), are
+         * left alone.
+         * @return number of players assigned
+         */
+        public int applyTo(League league) {
+            Team pool = league.getUnassignedPool();
+            while (true) {
+                List<PlayerMove> moves = new ArrayList<>(mTeamOf.length);
+                for (int i = 0; i < mTeamOf.length; i++) {
+                    Team team = mTeams[mTeamOf[i]];
+                    if (pool.findPlayer(mPlayers[i]) != null && league.getTeam(team.getName()) == team)
+                        moves.add(new PlayerMove(mPlayers[i], pool, team));
+                }
+                try {
+                    league.movePlayers(moves);
+                    return moves.size();
+                } catch (IllegalArgumentException ex) {
+                    // Note: another organizer changed one of the players or
+                    //    teams since they were checked, check them again
+                }
+            }
+        }
+
+        @Override
+        public String toString() {
+            double[] before = getSpreadBefore();
+            double[] after = getSpreadAfter();
+            return String.format(
+                    "%d players planned onto %d teams in %.3f s (%d searches)%n"
+                            + "  Spread across teams      before    after%n"
+                            + "  Team size               %7.2f  %7.2f players%n"
+                            + "  Average height          %7.2f  %7.2f inches%n"
+                            + "  Experienced players     %7.2f  %7.2f %%",
+                    mTeamOf.length, mTeams.length, mElapsedNanos / 1e9, mStarts,
+                    before[0], after[0], before[1], after[1], before[2], after[2]);
+        }
+    }
+
+    private static double[] spread(int[] size, long[] heightSum, int[] experienced) {
+        int teams = size.length;
+        double[] sum = new double[3];
+        double[] sumOfSquares = new double[3];
+        for (int t = 0; t < teams; t++) {
+            double[] values = {
+                size[t],
+                size[t] > 0 ? (double) heightSum[t] / size[t] : 0d,
+                size[t] > 0 ? 100d * experienced[t] / size[t] : 0d
+            };
+            for (int k = 0; k < 3; k++) {
+                sum[k] += values[k];
+                sumOfSquares[k] += values[k] * values[k];
+            }
+        }
+        double[] result = new double[3];
+        for (int k = 0; k < 3 && teams > 0; k++) {
+            double mean = sum[k] / teams;
+            result[k] = Math.sqrt(Math.max(0d, sumOfSquares[k] / teams - mean * mean));
+        }
+        return result;
+    }
+
+    /**
+     * One fork/join task: repeated greedy deals and local searches until
+     * the deadline, keeping the best.
+     */
+    private class Searcher extends RecursiveTask<Void> {
+        private static final long serialVersionUID = 1L;
+
+        private final int mId;
+        private final Random mRandom;
+        private final long mDeadline;
+        // state of the current search
+        private final int[] mTeamOf = new int[mPlayers.length];
+        private final int[] mSize = new int[mTeams.length];
+        private final long[] mHeightSum = new long[mTeams.length];
+        private final int[] mExperiencedCount = new int[mTeams.length];
+        // sum and sum of squares over teams of size, average height, experienced share
+        private double mSumSize, mSquaresSize;
+        private double mSumHeight, mSquaresHeight;
+        private double mSumRatio, mSquaresRatio;
+        // best so far
+        private int[] mBestTeamOf;
+        private double mBestCost = Double.MAX_VALUE;
+        private int mStarts;
+
+        Searcher(int id, long seed, long deadline) {
+            mId = id;
+            mRandom = new Random(seed);
+            mDeadline = deadline;
+        }
+
+        @Override
+        protected Void compute() {
+            do {
+                // the first deal of all isn't shuffled
+                if (!deal(mId == 0 && mStarts == 0))
+                    break;
+                improve();
+                mStarts++;
+                double cost = recomputeTotals();
+                if (cost < mBestCost) {
+                    mBestCost = cost;
+                    mBestTeamOf = mTeamOf.clone();
+                }
+            } while (System.nanoTime() < mDeadline && mPlayers.length > 0);
+            return null;
+        }
+
+        /**
+         * Greedy start: experienced players first, tallest first (with
+         * some jitter on later starts), each onto whichever of the
+         * smallest teams it improves the most.
+         * @return false if time ran out first (only once there is a plan to fall back on)
+         */
+        private boolean deal(boolean exact) {
+            int count = mPlayers.length;
+            long[] order = new long[count];
+            for (int i = 0; i < count; i++) {
+                double jitter = exact ? 0d : mRandom.nextGaussian() * 1.5;
+                // sort key: experienced first, then taller first, player index in the low bits
+                long heightKey = Math.round((1000d - mHeights[i] - jitter) * 16);
+                order[i] = ((mExperienced[i] ? 0L : 1L) << 62) | (heightKey << 32) | i;
+            }
+            Arrays.sort(order);
+
+            System.arraycopy(mBaseSize, 0, mSize, 0, mSize.length);
+            System.arraycopy(mBaseHeightSum, 0, mHeightSum, 0, mHeightSum.length);
+            System.arraycopy(mBaseExperienced, 0, mExperiencedCount, 0, mExperiencedCount.length);
+            recomputeTotals();
+
+            int[] candidates = new int[mTeams.length];
+            for (int n = 0; n < count; n++) {
+                if ((n & 1023) == 1023 && mBestTeamOf != null && System.nanoTime() >= mDeadline)
+                    return false;
+                int player = (int) order[n];
+                int smallest = Integer.MAX_VALUE;
+                int candidateCount = 0;
+                for (int t = 0; t < mTeams.length; t++) {
+                    if (mSize[t] < smallest) {
+                        smallest = mSize[t];
+                        candidateCount = 0;
+                    }
+                    if (mSize[t] == smallest)
+                        candidates[candidateCount++] = t;
+                }
+                int bestTeam = candidates[mRandom.nextInt(candidateCount)];
+                double bestCost = Double.MAX_VALUE;
+                int experienced = mExperienced[player] ? 1 : 0;
+                for (int c = 0; c < candidateCount; c++) {
+                    int t = candidates[c];
+                    double cost = costAfterChange(t, 1, mHeights[player], experienced, -1, 0, 0, 0);
+                    if (cost < bestCost - EPSILON) {
+                        bestCost = cost;
+                        bestTeam = t;
+                    }
+                }
+                mTeamOf[player] = bestTeam;
+                change(bestTeam, 1, mHeights[player], experienced);
+            }
+            return true;
+        }
+
+        /**
+         * Hill climbing on random swaps (and the odd single move) of newly
+         * placed players, until many tries in a row don't help or time is up.
+         */
+        private void improve() {
+            int count = mPlayers.length;
+            if (count < 2 || mTeams.length < 2)
+                return;
+            int stallLimit = Math.max(20_000, count * 20);
+            int sinceImproved = 0;
+            for (int tries = 0; sinceImproved < stallLimit; tries++) {
+                if ((tries & 1023) == 0 && System.nanoTime() >= mDeadline)
+                    return;
+                sinceImproved++;
+                int i = mRandom.nextInt(count);
+                int a = mTeamOf[i];
+                int heightI = mHeights[i];
+                int expI = mExperienced[i] ? 1 : 0;
+                double current = cost();
+
+                if (mRandom.nextInt(4) == 0) { // move player i to another team
+                    int b = mRandom.nextInt(mTeams.length);
+                    if (b == a)
+                        continue;
+                    double moved = costAfterChange(a, -1, -heightI, -expI, b, 1, heightI, expI);
+                    if (moved < current - EPSILON) {
+                        change(a, -1, -heightI, -expI);
+                        change(b, 1, heightI, expI);
+                        mTeamOf[i] = b;
+                        sinceImproved = 0;
+                    }
+                    continue;
+                }
+
+                int j = mRandom.nextInt(count); // swap players i and j
+                int b = mTeamOf[j];
+                if (a == b)
+                    continue;
+                int heightDiff = mHeights[j] - heightI;
+                int expDiff = (mExperienced[j] ? 1 : 0) - expI;
+                if (heightDiff == 0 && expDiff == 0)
+                    continue;
+                double swapped = costAfterChange(a, 0, heightDiff, expDiff, b, 0, -heightDiff, -expDiff);
+                if (swapped < current - EPSILON) {
+                    change(a, 0, heightDiff, expDiff);
+                    change(b, 0, -heightDiff, -expDiff);
+                    mTeamOf[i] = b;
+                    mTeamOf[j] = a;
+                    sinceImproved = 0;
+                }
+            }
+        }
+
+        private double cost() {
+            return cost(mSumSize, mSquaresSize, mSumHeight, mSquaresHeight, mSumRatio, mSquaresRatio);
+        }
+
+        private double cost(double sumSize, double squaresSize, double sumHeight, double squaresHeight,
+                            double sumRatio, double squaresRatio) {
+            int teams = mTeams.length;
+            double meanSize = sumSize / teams;
+            double meanHeight = sumHeight / teams;
+            double meanRatio = sumRatio / teams;
+            return SIZE_WEIGHT * (squaresSize / teams - meanSize * meanSize)
+                    + HEIGHT_WEIGHT * (squaresHeight / teams - meanHeight * meanHeight)
+                    + EXPERIENCE_WEIGHT * (squaresRatio / teams - meanRatio * meanRatio);
+        }
+
+        /**
+         * Cost if team a (and b, unless b is -1) changed by the amounts given,
+         * without making the change.
+         */
+        private double costAfterChange(int a, int sizeA, int heightA, int expA,
+                                       int b, int sizeB, int heightB, int expB) {
+            double sumSize = mSumSize, squaresSize = mSquaresSize;
+            double sumHeight = mSumHeight, squaresHeight = mSquaresHeight;
+            double sumRatio = mSumRatio, squaresRatio = mSquaresRatio;
+            for (int pass = 0; pass < 2; pass++) {
+                int t = pass == 0 ? a : b;
+                if (t < 0)
+                    break;
+                int size = mSize[t];
+                long heightSum = mHeightSum[t];
+                int experienced = mExperiencedCount[t];
+                double oldHeight = average(heightSum, size);
+                double oldRatio = average(experienced, size);
+                int newSize = size + (pass == 0 ? sizeA : sizeB);
+                double newHeight = average(heightSum + (pass == 0 ? heightA : heightB), newSize);
+                double newRatio = average(experienced + (pass == 0 ? expA : expB), newSize);
+                sumSize += newSize - size;
+                squaresSize += (double) newSize * newSize - (double) size * size;
+                sumHeight += newHeight - oldHeight;
+                squaresHeight += newHeight * newHeight - oldHeight * oldHeight;
+                sumRatio += newRatio - oldRatio;
+                squaresRatio += newRatio * newRatio - oldRatio * oldRatio;
+            }
+            return cost(sumSize, squaresSize, sumHeight, squaresHeight, sumRatio, squaresRatio);
+        }
+
+        private void change(int t, int size, int height, int experienced) {
+            removeFromTotals(t);
+            mSize[t] += size;
+            mHeightSum[t] += height;
+            mExperiencedCount[t] += experienced;
+            addToTotals(t);
+        }
+
+        /**
+         * Recompute the sums from the team totals (clearing any rounding
+         * drift from the running updates).
+         * @return the cost
+         */
+        private double recomputeTotals() {
+            mSumSize = mSquaresSize = mSumHeight = mSquaresHeight = mSumRatio = mSquaresRatio = 0d;
+            for (int t = 0; t < mTeams.length; t++)
+                addToTotals(t);
+            return cost();
+        }
+
+        private void addToTotals(int t) {
+            double height = average(mHeightSum[t], mSize[t]);
+            double ratio = average(mExperiencedCount[t], mSize[t]);
+            mSumSize += mSize[t];
+            mSquaresSize += (double) mSize[t] * mSize[t];
+            mSumHeight += height;
+            mSquaresHeight += height * height;
+            mSumRatio += ratio;
+            mSquaresRatio += ratio * ratio;
+        }
+
+        private void removeFromTotals(int t) {
+            double height = average(mHeightSum[t], mSize[t]);
+            double ratio = average(mExperiencedCount[t], mSize[t]);
+            mSumSize -= mSize[t];
+            mSquaresSize -= (double) mSize[t] * mSize[t];
+            mSumHeight -= height;
+            mSquaresHeight -= height * height;
+            mSumRatio -= ratio;
+            mSquaresRatio -= ratio * ratio;
+        }
+    }
+
+    /**
+     * @return sum / count, or 0 for no players (like Team.getAverageHeight)
+     */
+    private static double average(long sum, int count) {
+        return count > 0 ? (double) sum / count : 0d;
+    }
+}
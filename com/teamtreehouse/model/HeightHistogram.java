@@ -0,0 +1,224 @@
+package com.teamtreehouse.model;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Count of players at each height, stored in a primitive array indexed
+ * by height so lookups and updates don't allocate.
+ * Optionally keeps the players at each height (sorted by name) as well.
+ * Each height's list is copied on write, so getPlayers hands out the
+ * list itself: readers never copy it, and nothing changes it under them.
+ *
+ * Heights are walked from tallest to shortest with:
+ *   for (int h = histogram.getTallest(); h != NONE; h = histogram.getNextShorter(h))
+ *
+ * Safe to use from several threads; each call sees the histogram as it
+ * was at one moment, but a walk over the heights can see later changes.
+ */
+public class HeightHistogram {
+    /** returned by getTallest/getNextShorter when there are no more heights */
+    public static final int NONE = Integer.MIN_VALUE;
+
+    private final boolean mTrackMembers;
+    private int mBaseHeight; // height stored at index 0
+    private int[] mCounts;
+    private List<Player>[] mMembers; // read-only, replaced on every change
+    private int mTotal;
+
+    /**
+     * @param trackMembers true to also keep the players at each height
+     */
+    public HeightHistogram(boolean trackMembers) {
+        mTrackMembers = trackMembers;
+        mCounts = new int[0];
+        if (trackMembers) {
+            mMembers = newListArray(0);
+        }
+    }
+
+    public synchronized void add(Player player) {
+        int index = indexFor(player.getHeightInInches());
+        mCounts[index]++;
+        mTotal++;
+        if (mTrackMembers) {
+            List<Player> members = mMembers[index] == null ? Collections.emptyList() : mMembers[index];
+            int position = Collections.binarySearch(members, player);
+            List<Player> changed = new ArrayList<>(members.size() + 1);
+            changed.addAll(members);
+            changed.add(position < 0 ? -(position + 1) : position, player);
+            mMembers[index] = Collections.unmodifiableList(changed);
+        }
+    }
+
+    public synchronized void remove(Player player) {
+        int index = player.getHeightInInches() - mBaseHeight;
+        if (index < 0 || index >= mCounts.length || mCounts[index] < 1)
+            return;
+        mCounts[index]--;
+        mTotal--;
+        if (mTrackMembers) {
+            List<Player> members = mMembers[index];
+            int position = Collections.binarySearch(members, player);
+            if (position < 0 || !members.get(position).equals(player))
+                position = members.indexOf(player);
+            if (position >= 0) {
+                List<Player> changed = new ArrayList<>(members);
+                changed.remove(position);
+                mMembers[index] = Collections.unmodifiableList(changed);
+            }
+        }
+    }
+
+    /**
+     * Remove and add many players as one change. Each height's player
+     * list is copied once, however many of its players come and go,
+     * rather than once per player.
+     */
+    public synchronized void update(Collection<Player> removed, Collection<Player> added) {
+        Map<Integer, Set<Player>> removedByHeight = new HashMap<>();
+        for (Player player : removed) {
+            int index = player.getHeightInInches() - mBaseHeight;
+            if (index < 0 || index >= mCounts.length || mCounts[index] < 1)
+                continue;
+            mCounts[index]--;
+            mTotal--;
+            if (mTrackMembers)
+                removedByHeight.computeIfAbsent(player.getHeightInInches(), height -> new HashSet<>()).add(player);
+        }
+        Map<Integer, List<Player>> addedByHeight = new HashMap<>();
+        for (Player player : added) {
+            int index = indexFor(player.getHeightInInches());
+            mCounts[index]++;
+            mTotal++;
+            if (mTrackMembers)
+                addedByHeight.computeIfAbsent(player.getHeightInInches(), height -> new ArrayList<>()).add(player);
+        }
+        if (!mTrackMembers)
+            return;
+        Set<Integer> heights = new HashSet<>(removedByHeight.keySet());
+        heights.addAll(addedByHeight.keySet());
+        for (int height : heights) {
+            int index = height - mBaseHeight;
+            List<Player> changed = mMembers[index] == null ? new ArrayList<>() : new ArrayList<>(mMembers[index]);
+            Set<Player> removedHere = removedByHeight.get(height);
+            if (removedHere != null)
+                changed.removeIf(removedHere::contains);
+            List<Player> addedHere = addedByHeight.get(height);
+            if (addedHere != null) {
+                changed.addAll(addedHere);
+                Collections.sort(changed); // Note: mostly in order already, so close to linear
+            }
+            mMembers[index] = Collections.unmodifiableList(changed);
+        }
+    }
+
+    /**
+     * Add to the count for a height without recording a player.
+     * @param heightInInches height to count
+     * @param delta amount to add (negative to subtract)
+     */
+    public synchronized void addCount(int heightInInches, int delta) {
+        if (mTrackMembers)
+            throw new IllegalStateException("Counts of a member tracking histogram follow its players");
+        int index = indexFor(heightInInches);
+        mCounts[index] += delta;
+        mTotal += delta;
+    }
+
+    /**
+     * @return number of players at the height
+     */
+    public synchronized int getCount(int heightInInches) {
+        int index = heightInInches - mBaseHeight;
+        if (index < 0 || index >= mCounts.length)
+            return 0;
+        return mCounts[index];
+    }
+
+    /**
+     * @return players at the height sorted by name (read-only, and not
+     *   changed by later changes to the histogram), empty if there are
+     *   none or members are not being tracked
+     */
+    public synchronized List<Player> getPlayers(int heightInInches) {
+        int index = heightInInches - mBaseHeight;
+        if (!mTrackMembers || index < 0 || index >= mCounts.length || mMembers[index] == null)
+            return Collections.emptyList();
+        return mMembers[index];
+    }
+
+    public synchronized int getTotal() { return mTotal; }
+    public synchronized boolean isEmpty() { return mTotal == 0; }
+
+    /**
+     * @return tallest height with at least one player, or NONE
+     */
+    public synchronized int getTallest() {
+        return getNextShorter(mBaseHeight + mCounts.length);
+    }
+
+    /**
+     * @return next height shorter than the one given with at least one
+     *   player, or NONE
+     */
+    public synchronized int getNextShorter(int heightInInches) {
+        int index = Math.min(heightInInches - mBaseHeight, mCounts.length) - 1;
+        for (; index >= 0; index--)
+            if (mCounts[index] > 0)
+                return mBaseHeight + index;
+        return NONE;
+    }
+
+    /**
+     * @return number of different heights with at least one player
+     */
+    public synchronized int getHeightCount() {
+        int result = 0;
+        for (int count : mCounts)
+            if (count > 0)
+                result++;
+        return result;
+    }
+
+    /**
+     * Grows the arrays when needed so the height has a slot.
+     */
+    private int indexFor(int heightInInches) {
+        if (mCounts.length == 0) {
+            mBaseHeight = heightInInches;
+            resize(0, 1);
+            return 0;
+        }
+        if (heightInInches < mBaseHeight) {
+            int shift = mBaseHeight - heightInInches;
+            resize(shift, mCounts.length + shift);
+            mBaseHeight = heightInInches;
+        } else if (heightInInches - mBaseHeight >= mCounts.length) {
+            resize(0, heightInInches - mBaseHeight + 1);
+        }
+        return heightInInches - mBaseHeight;
+    }
+
+    private void resize(int shift, int length) {
+        int[] counts = new int[length];
+        System.arraycopy(mCounts, 0, counts, shift, mCounts.length);
+        if (mTrackMembers) {
+            List<Player>[] members = newListArray(length);
+            System.arraycopy(mMembers, 0, members, shift, mMembers.length);
+            mMembers = members;
+        }
+        mCounts = counts;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static List<Player>[] newListArray(int length) {
+        return (List<Player>[]) new List[length];
+    }
+}
@@ -0,0 +1,394 @@
+package com.teamtreehouse.model;
+
+import com.teamtreehouse.metrics.Metrics;
+import com.teamtreehouse.metrics.OperationMetrics;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * The teams of a league and the pool of players not yet on a team.
+ * All changes go through this class so registered
+ * {@link LeagueListener}s see every one of them.
+ *
+ * Several organizers can work at once. Each team (and the pool) has its
+ * own lock, and a move locks only the teams it involves, always in the
+ * same order, so moves between different teams never wait on each
+ * other. Moves to or from the pool share the pool's lock.
+ */
+public class League {
+    public static final String UNASSIGNED_POOL_NAME = "(unassigned)";
+
+    // Note: timings include any wait for another organizer's lock
+    private static final OperationMetrics REGISTER = Metrics.operation("league.registerPlayer");
+    private static final OperationMetrics CREATE_TEAM = Metrics.operation("league.createTeam");
+    private static final OperationMetrics REMOVE_TEAM = Metrics.operation("league.removeTeam");
+    private static final OperationMetrics ASSIGN = Metrics.operation("league.assignPlayer");
+    private static final OperationMetrics UNASSIGN = Metrics.operation("league.unassignPlayer");
+    private static final OperationMetrics TRANSFER = Metrics.operation("league.transferPlayer");
+    private static final OperationMetrics MOVE = Metrics.operation("league.movePlayers");
+
+    private ConcurrentMap<String, Team> mTeams; // keyed by lower case team name
+    private ReentrantLock mTeamsLock; // held to create a team
+    private Team mUnassigned;
+    private PlayerStore mStore; // every player registered, added to holding mUnassigned's lock
+    private AtomicInteger mPlayerCount;
+    private AtomicLong mVersion; // changes made so far
+    private List<LeagueListener> mListeners;
+
+    /**
+     * The players one team loses and gains in a batch of moves.
+     */
+    private static class TeamChange {
+        final PlayerMove mNamedBy; // first move naming the team, for errors
+        final List<Player> mRemoved = new ArrayList<>();
+        final List<Player> mAdded = new ArrayList<>();
+        final List<Integer> mAddedRows = new ArrayList<>(); // in mStore
+
+        TeamChange(PlayerMove namedBy) {
+            mNamedBy = namedBy;
+        }
+    }
+
+    public League() {
+        mTeams = new ConcurrentSkipListMap<>();
+        mTeamsLock = new ReentrantLock();
+        mStore = new PlayerStore();
+        mUnassigned = new Team(UNASSIGNED_POOL_NAME, "Not a real team.", mStore);
+        mPlayerCount = new AtomicInteger();
+        mVersion = new AtomicLong();
+        mListeners = new CopyOnWriteArrayList<>();
+    }
+
+    public void addListener(LeagueListener listener) {
+        mListeners.add(listener);
+    }
+
+    public void removeListener(LeagueListener listener) {
+        mListeners.remove(listener);
+    }
+
+    /**
+     * Add a player to the league's unassigned pool.
+     * @return false if the player was already registered
+     */
+    public boolean registerPlayer(Player player) {
+        long start = System.nanoTime();
+        mUnassigned.mLock.lock();
+        try {
+            if (mUnassigned.findPlayer(player) != null)
+                return false;
+            mUnassigned.addPlayer(player, mStore.add(player));
+            mPlayerCount.incrementAndGet();
+            mVersion.incrementAndGet();
+            for (LeagueListener listener : mListeners)
+                listener.playerRegistered(player);
+            return true;
+        } finally {
+            mUnassigned.mLock.unlock();
+            REGISTER.recordSince(start);
+        }
+    }
+
+    /**
+     * @return number of players registered this season, on a team or not
+     */
+    public int getPlayerCount() { return mPlayerCount.get(); }
+
+    /**
+     * Teams can't outnumber players.
+     */
+    public int getMaxTeams() { return mPlayerCount.get(); }
+
+    /**
+     * @return the new team, or null if a team already has the name
+     *   (names are not case sensitive)
+     */
+    public Team createTeam(String teamName, String coachName) {
+        long start = System.nanoTime();
+        String key = teamName.toLowerCase();
+        mTeamsLock.lock();
+        try {
+            if (mTeams.containsKey(key))
+                return null;
+            Team team = new Team(teamName, coachName, mStore);
+            mTeams.put(key, team);
+            mVersion.incrementAndGet();
+            for (LeagueListener listener : mListeners)
+                listener.teamCreated(team);
+            return team;
+        } finally {
+            mTeamsLock.unlock();
+            CREATE_TEAM.recordSince(start);
+        }
+    }
+
+    /**
+     * Take a team with no players out of the league.
+     * @return false if the team has players or isn't in the league
+     */
+    public boolean removeTeam(Team team) {
+        long start = System.nanoTime();
+        String key = team.getName().toLowerCase();
+        mTeamsLock.lock();
+        team.mLock.lock();
+        try {
+            if (mTeams.get(key) != team || team.getCount_AllPlayers() > 0)
+                return false;
+            mTeams.remove(key);
+            mVersion.incrementAndGet();
+            for (LeagueListener listener : mListeners)
+                listener.teamRemoved(team);
+            return true;
+        } finally {
+            team.mLock.unlock();
+            mTeamsLock.unlock();
+            REMOVE_TEAM.recordSince(start);
+        }
+    }
+
+    /**
+     * Put a team taken out by {@link #removeTeam} back in, as the same
+     * Team object, so anything still holding it (e.g. an undo history)
+     * finds it in the league again. Listeners see it created again.
+     * @return false if another team has taken its name meanwhile
+     */
+    boolean restoreTeam(Team team) {
+        String key = team.getName().toLowerCase();
+        mTeamsLock.lock();
+        try {
+            if (mTeams.containsKey(key))
+                return false;
+            mTeams.put(key, team);
+            mVersion.incrementAndGet();
+            for (LeagueListener listener : mListeners)
+                listener.teamCreated(team);
+            return true;
+        } finally {
+            mTeamsLock.unlock();
+        }
+    }
+
+    /**
+     * @return the team with the name (not case sensitive), or null
+     */
+    public Team getTeam(String teamName) {
+        return mTeams.get(teamName.toLowerCase());
+    }
+
+    /**
+     * @return all teams in order of their lower case name (read-only)
+     */
+    public Collection<Team> getTeams() {
+        return Collections.unmodifiableCollection(mTeams.values());
+    }
+
+    public int getTeamCount() { return mTeams.size(); }
+
+    /**
+     * Goes up by one with every change made to the league, so a copy
+     * taken at one version is out of date once this has moved on.
+     */
+    public long getVersion() { return mVersion.get(); }
+
+    /**
+     * @return players not on a team (read-only)
+     */
+    public Set<Player> getUnassignedPlayers() {
+        return mUnassigned.getPlayers();
+    }
+
+    /**
+     * The unassigned players kept as a pseudo team, so the pool has the
+     * same statistics and height index as a real team.
+     * Note: not part of getTeams(), and must not be changed directly.
+     */
+    public Team getUnassignedPool() {
+        return mUnassigned;
+    }
+
+    /**
+     * Move a player from the unassigned pool onto a team.
+     * @return false if the player was not in the unassigned pool
+     */
+    public boolean assignPlayer(Player player, Team team) {
+        long start = System.nanoTime();
+        Team.lockBoth(mUnassigned, team);
+        try {
+            int row = mUnassigned.rowOf(player);
+            if (!mUnassigned.removePlayer(player))
+                return false;
+            team.addPlayer(player, row);
+            mVersion.incrementAndGet();
+            for (LeagueListener listener : mListeners)
+                listener.playerAssigned(player, team);
+            return true;
+        } finally {
+            Team.unlockBoth(mUnassigned, team);
+            ASSIGN.recordSince(start);
+        }
+    }
+
+    /**
+     * Move a player off a team back into the unassigned pool.
+     * @return false if the player was not on the team
+     */
+    public boolean unassignPlayer(Player player, Team team) {
+        long start = System.nanoTime();
+        Team.lockBoth(mUnassigned, team);
+        try {
+            int row = team.rowOf(player);
+            if (!team.removePlayer(player))
+                return false;
+            mUnassigned.addPlayer(player, row);
+            mVersion.incrementAndGet();
+            for (LeagueListener listener : mListeners)
+                listener.playerUnassigned(player, team);
+            return true;
+        } finally {
+            Team.unlockBoth(mUnassigned, team);
+            UNASSIGN.recordSince(start);
+        }
+    }
+
+    /**
+     * Move a player straight from one team to another in one step, so no
+     * one sees the player on both teams, or on neither.
+     * @return false if the player was not on fromTeam, or the teams are the same
+     */
+    public boolean transferPlayer(Player player, Team fromTeam, Team toTeam) {
+        if (fromTeam == toTeam)
+            return false;
+        long start = System.nanoTime();
+        Team.lockBoth(fromTeam, toTeam);
+        try {
+            int row = fromTeam.rowOf(player);
+            if (!fromTeam.removePlayer(player))
+                return false;
+            toTeam.addPlayer(player, row);
+            mVersion.incrementAndGet();
+            for (LeagueListener listener : mListeners)
+                listener.playerTransferred(player, fromTeam, toTeam);
+            return true;
+        } finally {
+            Team.unlockBoth(fromTeam, toTeam);
+            TRANSFER.recordSince(start);
+        }
+    }
+
+    /**
+     * Make a batch of moves as one change: all of them, or none if any
+     * one of them can't be made. Either team of a move may be the
+     * unassigned pool, and each player may only be moved once.
+     *
+     * Every team involved is locked once, for the whole batch, and has
+     * its running totals updated once for all the players it gains and
+     * loses; listeners are told of the batch in one call. So rebalancing
+     * hundreds of players costs about what the roster changes themselves
+     * do, and no one sees the league with only some of them moved.
+     * @throws IllegalArgumentException naming a move that can't be made
+     *   (nothing has been changed)
+     */
+    public void movePlayers(List<PlayerMove> moves) {
+        if (moves.isEmpty())
+            return;
+        long start = System.nanoTime();
+        Set<Player> moving = new HashSet<>();
+        Map<Team, TeamChange> changes = new HashMap<>();
+        for (PlayerMove move : moves) {
+            if (move.getFromTeam() == move.getToTeam())
+                throw new IllegalArgumentException(String.format("%s: the teams are the same", move));
+            if (!moving.add(move.getPlayer()))
+                throw new IllegalArgumentException(String.format("%s: the player is moved more than once", move));
+            // Note: each team is looked up in the league once, not once per move
+            if (!changes.containsKey(move.getFromTeam()))
+                changes.put(checkTeam(move.getFromTeam(), move), new TeamChange(move));
+            if (!changes.containsKey(move.getToTeam()))
+                changes.put(checkTeam(move.getToTeam(), move), new TeamChange(move));
+        }
+        List<Team> teams = new ArrayList<>(changes.keySet());
+        teams.sort(Comparator.comparingLong(team -> team.mLockOrder));
+        int locked = 0;
+        try {
+            for (Team team : teams) {
+                team.mLock.lock();
+                locked++;
+            }
+            // Note: checked again now they're locked, removeTeam takes the
+            //    team's lock so it can't drop one between here and the moves
+            for (Map.Entry<Team, TeamChange> change : changes.entrySet())
+                checkTeam(change.getKey(), change.getValue().mNamedBy);
+            // Note: checked with the teams locked, so nothing can change
+            //    between checking a move and making it
+            List<PlayerMove> made = new ArrayList<>(moves.size());
+            for (PlayerMove move : moves) {
+                Player player = move.getFromTeam().findPlayer(move.getPlayer());
+                if (player == null)
+                    throw new IllegalArgumentException(String.format(
+                            "%s: the player is not on %s", move, move.getFromTeam().getName()));
+                changes.get(move.getFromTeam()).mRemoved.add(player);
+                changes.get(move.getToTeam()).mAdded.add(player);
+                changes.get(move.getToTeam()).mAddedRows.add(move.getFromTeam().rowOf(player));
+                made.add(new PlayerMove(player, move.getFromTeam(), move.getToTeam()));
+            }
+            for (Map.Entry<Team, TeamChange> change : changes.entrySet())
+                change.getKey().movePlayers(change.getValue().mRemoved, change.getValue().mAdded,
+                        change.getValue().mAddedRows);
+            mVersion.incrementAndGet();
+            for (LeagueListener listener : mListeners)
+                listener.playersMoved(made, mUnassigned);
+        } finally {
+            for (int i = locked - 1; i >= 0; i--)
+                teams.get(i).mLock.unlock();
+            MOVE.recordSince(start);
+        }
+    }
+
+    private Team checkTeam(Team team, PlayerMove move) {
+        if (team != mUnassigned && mTeams.get(team.getName().toLowerCase()) != team)
+            throw new IllegalArgumentException(String.format("%s: %s is not in this league", move, team.getName()));
+        return team;
+    }
+
+    /**
+     * Run with every team and the unassigned pool locked, so no changes
+     * can be made while it runs, e.g. to copy the whole league as it is
+     * at one moment. Keep the action short, every organizer waits for it.
+     * Note: must not be called while holding a team's lock (i.e. from a
+     *    LeagueListener), or the locks could be taken out of order.
+     */
+    public <T> T withLeagueLocked(Supplier<T> action) {
+        mTeamsLock.lock();
+        try {
+            List<Team> teams = new ArrayList<>(mTeams.values());
+            teams.add(mUnassigned);
+            teams.sort(Comparator.comparingLong(team -> team.mLockOrder));
+            int locked = 0;
+            try {
+                for (Team team : teams) {
+                    team.mLock.lock();
+                    locked++;
+                }
+                return action.get();
+            } finally {
+                for (int i = locked - 1; i >= 0; i--)
+                    teams.get(i).mLock.unlock();
+            }
+        } finally {
+            mTeamsLock.unlock();
+        }
+    }
+}
@@ -0,0 +1,486 @@
+package com.teamtreehouse.model;
+
+import com.teamtreehouse.metrics.Metrics;
+import com.teamtreehouse.metrics.OperationMetrics;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Undo and redo of the changes made to a league, and a read-only
+ * {@link LeagueState} of it that is always up to date, kept by listening
+ * to every change.
+ *
+ * Each team's roster is kept as a {@link PersistentTreeMap}, so a change
+ * makes new versions of the rosters it touches in O(log n) and shares
+ * the rest with the version before. Taking the state costs a step per
+ * team: it is the teams' current versions, which nothing changes
+ * afterwards.
+ *
+ * Changes are gathered into steps by {@link #endStep()}, e.g. one per
+ * menu action. Undoing a step makes the opposite changes through the
+ * league (so listeners, e.g. the journal, see them like any other),
+ * with the player moves between team changes made as one
+ * {@link League#movePlayers} batch. A step is made all or nothing: if
+ * one of its calls fails, the ones already made are taken back.
+ *
+ * Safe to read while the league changes. Keeping up with the league
+ * takes no lock of its own: a team's roster is only changed holding that
+ * team's lock, which the league already holds while telling listeners,
+ * so changes to different teams don't wait on each other. This object's
+ * lock is only taken by getState() and the undo and redo steps, and is
+ * not held while undoing or redoing, since the league calls back into it
+ * with team locks held.
+ */
+public class LeagueHistory implements LeagueListener {
+    public static final int DEFAULT_MAX_STEPS = 100;
+
+    private static final OperationMetrics UNDO = Metrics.operation("history.undo");
+    private static final OperationMetrics REDO = Metrics.operation("history.redo");
+    private static final NavigableMap<Integer, Integer> NO_HEIGHTS =
+            Collections.unmodifiableNavigableMap(new TreeMap<>(Comparator.<Integer>reverseOrder()));
+
+    private final League mLeague;
+    private final int mMaxSteps;
+    private final Map<Team, TeamHistory> mTeams = new ConcurrentHashMap<>(); // and the pool's
+    // Note: teams are created and removed holding the league's teams
+    //    lock, so one at a time
+    private volatile PersistentTreeMap<String, TeamHistory> mTeamsByName = PersistentTreeMap.empty(); // report order
+    private TeamHistory mUnassigned;
+    // Changes to the league started and finished being kept up with, so
+    //    getState() can tell when none is part way (see readState)
+    private final AtomicLong mChangesStarted = new AtomicLong();
+    private final AtomicLong mChangesDone = new AtomicLong();
+    private final AtomicLong mVersion = new AtomicLong(); // the league's, as of the latest change
+    private LeagueState mState; // as of mStateChanges changes
+    private long mStateChanges = -1;
+    private final Queue<Change> mPending = new ConcurrentLinkedQueue<>();
+    private final Deque<Step> mUndo = new ArrayDeque<>(); // latest first
+    private final Deque<Step> mRedo = new ArrayDeque<>();
+    private volatile Thread mApplying; // undoing or redoing, its changes aren't new steps
+
+    /**
+     * A team's (or the pool's) roster and state. Only changed holding
+     * the team's lock; the state is volatile so it can be read without.
+     */
+    private static class TeamHistory {
+        PersistentTreeMap<Player, Player> mRoster;
+        volatile LeagueState.TeamState mState;
+
+        TeamHistory(PersistentTreeMap<Player, Player> roster, LeagueState.TeamState state) {
+            mRoster = roster;
+            mState = state;
+        }
+    }
+
+    /**
+     * One change: a player moving between teams (either may be the
+     * pool), or a team created (no player or from) or removed (no player
+     * or to).
+     */
+    private static class Change {
+        final Player mPlayer;
+        final Team mFrom;
+        final Team mTo;
+
+        Change(Player player, Team from, Team to) {
+            mPlayer = player;
+            mFrom = from;
+            mTo = to;
+        }
+    }
+
+    private static class Step {
+        final List<Change> mChanges;
+        final String mDescription;
+
+        Step(List<Change> changes, String description) {
+            mChanges = changes;
+            mDescription = description;
+        }
+    }
+
+    public LeagueHistory(League league) {
+        this(league, DEFAULT_MAX_STEPS);
+    }
+
+    /**
+     * Start keeping the league's history from now on.
+     * @param maxSteps most steps kept to undo; the oldest are dropped
+     */
+    public LeagueHistory(League league, int maxSteps) {
+        mLeague = league;
+        mMaxSteps = maxSteps;
+        // Note: with the league locked, no change can be missed or
+        //    counted twice between copying it and listening to it
+        league.withLeagueLocked(() -> {
+            mUnassigned = copy(league.getUnassignedPool());
+            for (Team team : league.getTeams())
+                mTeamsByName = mTeamsByName.put(team.getName(), copy(team));
+            mVersion.set(league.getVersion());
+            league.addListener(this);
+            return null;
+        });
+    }
+
+    private TeamHistory copy(Team team) {
+        List<Player> players = new ArrayList<>(team.getPlayers()); // already in name order
+        PersistentTreeMap<Player, Player> roster = PersistentTreeMap.ofSorted(
+                Comparator.naturalOrder(), players, player -> player);
+        int experienced = 0;
+        long heightSum = 0;
+        NavigableMap<Integer, Integer> heightCounts = new TreeMap<>(Comparator.reverseOrder());
+        for (Player player : players) {
+            if (player.isPreviousExperience())
+                experienced++;
+            heightSum += player.getHeightInInches();
+            heightCounts.merge(player.getHeightInInches(), 1, Integer::sum);
+        }
+        TeamHistory history = new TeamHistory(roster, new LeagueState.TeamState(team.getName(), team.getCoach(),
+                roster.keys(), experienced, heightSum, Collections.unmodifiableNavigableMap(heightCounts)));
+        mTeams.put(team, history);
+        return history;
+    }
+
+    /**
+     * @return the league as of the last change, taken in a step per
+     *   team (or no steps, if nothing has changed since the last call)
+     */
+    public synchronized LeagueState getState() {
+        long changes = mChangesDone.get();
+        if (mState == null || mStateChanges != changes || mChangesStarted.get() != changes) {
+            LeagueState state = readState();
+            if (state == null) {
+                // Note: changes kept coming; taken with the league locked,
+                //    so not from a listener (see League.withLeagueLocked)
+                state = mLeague.withLeagueLocked(this::readState);
+            }
+            mState = state;
+        }
+        return mState;
+    }
+
+    /**
+     * Read every team's state while no change is part way, as a
+     * sequence lock: no change was started and not finished when the
+     * read began, and none started while it went on.
+     * @return null if changes kept coming and it was given up
+     */
+    private LeagueState readState() {
+        for (int attempt = 0; attempt < 10; attempt++) {
+            long changes = mChangesDone.get();
+            if (mChangesStarted.get() != changes) {
+                Thread.onSpinWait();
+                continue;
+            }
+            long version = mVersion.get();
+            List<LeagueState.TeamState> teams = new ArrayList<>();
+            Map<String, LeagueState.TeamState> teamsByKey = new HashMap<>();
+            for (TeamHistory team : mTeamsByName.values()) {
+                LeagueState.TeamState state = team.mState;
+                teams.add(state);
+                teamsByKey.put(state.getName().toLowerCase(), state);
+            }
+            LeagueState.TeamState unassigned = mUnassigned.mState;
+            if (mChangesStarted.get() == changes) {
+                mStateChanges = changes;
+                return new LeagueState(version, Collections.unmodifiableList(teams), teamsByKey::get, unassigned);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Make the changes since the last call one step to undo.
+     */
+    public synchronized void endStep() {
+        if (mPending.isEmpty())
+            return;
+        List<Change> changes = new ArrayList<>();
+        for (Change change = mPending.poll(); change != null; change = mPending.poll())
+            changes.add(change);
+        mRedo.clear(); // Note: a new change ends what can be redone
+        mUndo.push(new Step(changes, describe(changes)));
+        while (mUndo.size() > mMaxSteps)
+            mUndo.removeLast();
+    }
+
+    /**
+     * @return what undo() would undo, e.g. "add Smith, Joe to Sharks", or null
+     */
+    public synchronized String getUndoDescription() {
+        return mUndo.isEmpty() ? null : mUndo.peek().mDescription;
+    }
+
+    public synchronized String getRedoDescription() {
+        // Note: changes not yet made a step will end what can be redone
+        return mRedo.isEmpty() || !mPending.isEmpty() ? null : mRedo.peek().mDescription;
+    }
+
+    /**
+     * Undo the last step (ending the current one first).
+     * @return what was undone, or null if there was nothing to undo
+     * @throws IllegalStateException if the league has changed in a way
+     *   the step can't be undone from (e.g. another organizer moved one
+     *   of its players); whatever part of it was made is taken back and
+     *   the step is kept, so it can be tried again
+     */
+    public String undo() {
+        return UNDO.time(() -> apply(true));
+    }
+
+    /**
+     * Make the last step undone again.
+     * @return what was redone, or null if there was nothing to redo
+     * @throws IllegalStateException as for undo()
+     */
+    public String redo() {
+        return REDO.time(() -> apply(false));
+    }
+
+    private String apply(boolean undo) {
+        Step step;
+        synchronized (this) {
+            endStep();
+            step = undo ? mUndo.poll() : mRedo.poll();
+            if (step == null)
+                return null;
+            mApplying = Thread.currentThread();
+        }
+        Deque<Runnable> made = new ArrayDeque<>(); // takes back each call made, latest first
+        boolean applied = false;
+        boolean keep = false;
+        try {
+            apply(step.mChanges, undo, made);
+            applied = true;
+        } catch (IllegalArgumentException ex) {
+            keep = takeBack(made, ex);
+            throw new IllegalStateException(String.format("Can't %s \"%s\": %s",
+                    undo ? "undo" : "redo", step.mDescription, ex.getMessage()), ex);
+        } finally {
+            synchronized (this) {
+                mApplying = null;
+                if (applied)
+                    (undo ? mRedo : mUndo).push(step);
+                // Note: not back to redo if someone else has changed the
+                //    league meanwhile, a new change ends what can be redone
+                else if (keep && (undo || mPending.isEmpty()))
+                    (undo ? mUndo : mRedo).push(step);
+            }
+        }
+        return step.mDescription;
+    }
+
+    /**
+     * Take back the calls made of a step that failed part way.
+     * @return false if that failed too (only if someone else changed the
+     *   same teams meanwhile), so the league can't be put back as it was
+     */
+    private static boolean takeBack(Deque<Runnable> made, IllegalArgumentException failure) {
+        try {
+            while (!made.isEmpty())
+                made.pop().run();
+            return true;
+        } catch (IllegalArgumentException ex) {
+            failure.addSuppressed(ex);
+            return false;
+        }
+    }
+
+    private void apply(List<Change> changes, boolean backwards, Deque<Runnable> made) {
+        // each player's moves between two team changes, netted to one
+        Map<Player, PlayerMove> moves = new LinkedHashMap<>();
+        for (int i = 0; i < changes.size(); i++) {
+            Change change = changes.get(backwards ? changes.size() - 1 - i : i);
+            Team from = backwards ? change.mTo : change.mFrom;
+            Team to = backwards ? change.mFrom : change.mTo;
+            if (change.mPlayer != null) {
+                PlayerMove earlier = moves.remove(change.mPlayer);
+                Team start = earlier != null ? earlier.getFromTeam() : from;
+                if (start != to)
+                    moves.put(change.mPlayer, new PlayerMove(change.mPlayer, start, to));
+                continue;
+            }
+            makeMoves(moves, made);
+            if (to != null) {
+                restoreTeam(to);
+                made.push(() -> removeTeam(to));
+            } else {
+                removeTeam(from);
+                made.push(() -> restoreTeam(from));
+            }
+        }
+        makeMoves(moves, made);
+    }
+
+    private void makeMoves(Map<Player, PlayerMove> moves, Deque<Runnable> made) {
+        if (moves.isEmpty())
+            return;
+        List<PlayerMove> batch = new ArrayList<>(moves.values());
+        mLeague.movePlayers(batch);
+        moves.clear();
+        made.push(() -> {
+            List<PlayerMove> back = new ArrayList<>(batch.size());
+            for (PlayerMove move : batch)
+                back.add(new PlayerMove(move.getPlayer(), move.getToTeam(), move.getFromTeam()));
+            mLeague.movePlayers(back);
+        });
+    }
+
+    private void restoreTeam(Team team) {
+        if (!mLeague.restoreTeam(team))
+            throw new IllegalArgumentException(String.format("a team named %s is in the league", team.getName()));
+    }
+
+    private void removeTeam(Team team) {
+        if (!mLeague.removeTeam(team))
+            throw new IllegalArgumentException(String.format("%s has players", team.getName()));
+    }
+
+    private String describe(List<Change> changes) {
+        String first = describe(changes.get(0));
+        if (changes.size() == 1)
+            return first;
+        return String.format("%s and %d more change%s", first, changes.size() - 1, changes.size() == 2 ? "" : "s");
+    }
+
+    private String describe(Change change) {
+        Team pool = mLeague.getUnassignedPool();
+        if (change.mPlayer == null)
+            return String.format("%s team %s", change.mTo != null ? "create" : "remove",
+                    (change.mTo != null ? change.mTo : change.mFrom).getName());
+        String player = change.mPlayer.getLastName() + ", " + change.mPlayer.getFirstName();
+        if (change.mFrom == pool)
+            return String.format("add %s to %s", player, change.mTo.getName());
+        if (change.mTo == pool)
+            return String.format("remove %s from %s", player, change.mFrom.getName());
+        return String.format("move %s from %s to %s", player, change.mFrom.getName(), change.mTo.getName());
+    }
+
+    // ---------------------------------------------------------------
+    // Keeping up with the league
+    // ---------------------------------------------------------------
+
+    // Note: called holding the teams' locks, so a team's history is only
+    //    changed by one change at a time; each callback counts itself
+    //    started and done for readState()
+    private void record(Player player, Team from, Team to) {
+        if (mApplying == Thread.currentThread())
+            return;
+        mPending.add(new Change(player, from, to));
+    }
+
+    private void started() {
+        mChangesStarted.incrementAndGet();
+    }
+
+    private void done() {
+        mVersion.accumulateAndGet(mLeague.getVersion(), Math::max);
+        mChangesDone.incrementAndGet();
+    }
+
+    @Override
+    public void playerRegistered(Player player) {
+        started();
+        try {
+            move(player, null, mLeague.getUnassignedPool());
+        } finally {
+            done();
+        }
+    }
+
+    @Override
+    public void teamCreated(Team team) {
+        started();
+        try {
+            PersistentTreeMap<Player, Player> roster = PersistentTreeMap.empty();
+            TeamHistory history = new TeamHistory(roster,
+                    new LeagueState.TeamState(team.getName(), team.getCoach(), roster.keys(), 0, 0, NO_HEIGHTS));
+            mTeams.put(team, history);
+            mTeamsByName = mTeamsByName.put(team.getName(), history);
+            record(null, null, team);
+        } finally {
+            done();
+        }
+    }
+
+    @Override
+    public void teamRemoved(Team team) {
+        started();
+        try {
+            mTeams.remove(team);
+            mTeamsByName = mTeamsByName.remove(team.getName());
+            record(null, team, null);
+        } finally {
+            done();
+        }
+    }
+
+    @Override
+    public void playerAssigned(Player player, Team team) {
+        playerTransferred(player, mLeague.getUnassignedPool(), team);
+    }
+
+    @Override
+    public void playerUnassigned(Player player, Team team) {
+        playerTransferred(player, team, mLeague.getUnassignedPool());
+    }
+
+    @Override
+    public void playerTransferred(Player player, Team fromTeam, Team toTeam) {
+        started();
+        try {
+            move(player, fromTeam, toTeam);
+            record(player, fromTeam, toTeam);
+        } finally {
+            done();
+        }
+    }
+
+    @Override
+    public void playersMoved(List<PlayerMove> moves, Team unassignedPool) {
+        started();
+        try {
+            for (PlayerMove move : moves) {
+                move(move.getPlayer(), move.getFromTeam(), move.getToTeam());
+                record(move.getPlayer(), move.getFromTeam(), move.getToTeam());
+            }
+        } finally {
+            done();
+        }
+    }
+
+    private void move(Player player, Team from, Team to) {
+        if (from != null)
+            changeRoster(mTeams.get(from), player, -1);
+        changeRoster(mTeams.get(to), player, 1);
+    }
+
+    /**
+     * Add the player to the team's roster (change 1) or remove it (-1),
+     * and publish the team's new state.
+     */
+    private static void changeRoster(TeamHistory team, Player player, int change) {
+        team.mRoster = change > 0 ? team.mRoster.put(player, player) : team.mRoster.remove(player);
+        LeagueState.TeamState was = team.mState;
+        int height = player.getHeightInInches();
+        NavigableMap<Integer, Integer> heightCounts = new TreeMap<>(was.getHeightCounts());
+        if (heightCounts.merge(height, change, Integer::sum) == 0)
+            heightCounts.remove(height);
+        team.mState = new LeagueState.TeamState(was.getName(), was.getCoach(), team.mRoster.keys(),
+                was.getCount_ExperiencedPlayers() + (player.isPreviousExperience() ? change : 0),
+                was.getHeightSum() + (long) change * height, Collections.unmodifiableNavigableMap(heightCounts));
+    }
+}
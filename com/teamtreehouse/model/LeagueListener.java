@@ -0,0 +1,62 @@
+package com.teamtreehouse.model;
+
+import java.util.List;
+
+/**
+ * Notified of every change made to a {@link League}.
+ * Methods are called after the change has been applied, while the
+ * teams involved are still locked, so changes to the same player are
+ * always seen in the order they were made. Changes to different teams
+ * can be reported from several threads at once.
+ */
+public interface LeagueListener {
+
+    /**
+     * A player joined the league (and the unassigned pool).
+     */
+    default void playerRegistered(Player player) {}
+
+    default void teamCreated(Team team) {}
+
+    /**
+     * A team with no players was taken out of the league.
+     */
+    default void teamRemoved(Team team) {}
+
+    /**
+     * A player moved from the unassigned pool onto a team.
+     */
+    default void playerAssigned(Player player, Team team) {}
+
+    /**
+     * A player moved off a team back into the unassigned pool.
+     */
+    default void playerUnassigned(Player player, Team team) {}
+
+    /**
+     * A player moved straight from one team to another.
+     * By default reported as leaving one team and joining the other.
+     */
+    default void playerTransferred(Player player, Team fromTeam, Team toTeam) {
+        playerUnassigned(player, fromTeam);
+        playerAssigned(player, toTeam);
+    }
+
+    /**
+     * A batch of players moved together (see {@link League#movePlayers}),
+     * with every team involved locked. By default reported as one
+     * assign, unassign or transfer per player.
+     * @param unassignedPool the league's unassigned pool, which either
+     *   team of a move may be
+     */
+    default void playersMoved(List<PlayerMove> moves, Team unassignedPool) {
+        for (PlayerMove move : moves) {
+            if (move.getFromTeam() == unassignedPool)
+                playerAssigned(move.getPlayer(), move.getToTeam());
+            else if (move.getToTeam() == unassignedPool)
+                playerUnassigned(move.getPlayer(), move.getFromTeam());
+            else
+                playerTransferred(move.getPlayer(), move.getFromTeam(), move.getToTeam());
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package com.teamtreehouse.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+/**
+ * A read-only copy of a league's teams as they were at one moment
+ * ({@link League#getVersion()}). Nothing in it changes, so any number
+ * of threads can read it without locking while the league itself
+ * carries on changing.
+ *
+ * Taken either by {@link #capture}, which copies the league, or by a
+ * {@link LeagueHistory}, which keeps one up to date as the league
+ * changes and shares everything but the changed teams between versions.
+ */
+public class LeagueState {
+    private final long mVersion;
+    private final List<TeamState> mTeams; // report order (case sensitive)
+    private final Function<String, TeamState> mTeamsByKey; // by lower case team name
+    private final TeamState mUnassigned;
+
+    /**
+     * One team's players and totals.
+     */
+    public static class TeamState {
+        private final String mName;
+        private final String mCoach;
+        private final List<Player> mPlayers;
+        private final int mExperiencedCount;
+        private final long mHeightSum;
+        private final NavigableMap<Integer, Integer> mHeightCounts; // tallest first
+
+        /**
+         * @param players sorted by name, read-only and never changed
+         * @param heightCounts tallest first, read-only and never changed
+         */
+        TeamState(String name, String coach, List<Player> players, int experiencedCount, long heightSum,
+                NavigableMap<Integer, Integer> heightCounts) {
+            mName = name;
+            mCoach = coach;
+            mPlayers = players;
+            mExperiencedCount = experiencedCount;
+            mHeightSum = heightSum;
+            mHeightCounts = heightCounts;
+        }
+
+        private static TeamState of(String name, String coach, Player[] players) {
+            int experienced = 0;
+            long heightSum = 0;
+            NavigableMap<Integer, Integer> heightCounts = new TreeMap<>(Collections.reverseOrder());
+            for (Player player : players) {
+                if (player.isPreviousExperience())
+                    experienced++;
+                heightSum += player.getHeightInInches();
+                heightCounts.merge(player.getHeightInInches(), 1, Integer::sum);
+            }
+            return new TeamState(name, coach, Collections.unmodifiableList(Arrays.asList(players)), experienced,
+                    heightSum, Collections.unmodifiableNavigableMap(heightCounts));
+        }
+
+        public String getName() { return mName; }
+        public String getCoach() { return mCoach; }
+
+        /**
+         * @return the players sorted by name (read-only)
+         */
+        public List<Player> getPlayers() { return mPlayers; }
+
+        public int getCount_AllPlayers() { return mPlayers.size(); }
+        public int getCount_ExperiencedPlayers() { return mExperiencedCount; }
+        public int getCount_InexperiencedPlayers() { return mPlayers.size() - mExperiencedCount; }
+        long getHeightSum() { return mHeightSum; }
+
+        public double getAverageHeight() {
+            if (mPlayers.isEmpty())
+                return 0d;
+            return (double) mHeightSum / mPlayers.size();
+        }
+
+        /**
+         * @return number of players of each height, tallest first (read-only)
+         */
+        public NavigableMap<Integer, Integer> getHeightCounts() { return mHeightCounts; }
+    }
+
+    private LeagueState(long version, List<TeamState> teams, TeamState unassigned) {
+        Map<String, TeamState> teamsByKey = new HashMap<>();
+        for (TeamState team : teams)
+            teamsByKey.put(team.getName().toLowerCase(), team);
+        mVersion = version;
+        mTeams = Collections.unmodifiableList(teams);
+        mTeamsByKey = teamsByKey::get;
+        mUnassigned = unassigned;
+    }
+
+    /**
+     * @param teams in report order, read-only and never changed
+     * @param teamsByKey finds a team by its lower case name
+     */
+    LeagueState(long version, List<TeamState> teams, Function<String, TeamState> teamsByKey, TeamState unassigned) {
+        mVersion = version;
+        mTeams = teams;
+        mTeamsByKey = teamsByKey;
+        mUnassigned = unassigned;
+    }
+
+    /**
+     * Copy the league. The league is only locked while the player
+     * references are copied; the totals are worked out afterwards.
+     * Note: must not be called from a LeagueListener (see
+     *    {@link League#withLeagueLocked}).
+     */
+    public static LeagueState capture(League league) {
+        class Copy {
+            long mVersion;
+            List<Team> mTeams = new ArrayList<>();
+            List<Player[]> mPlayers = new ArrayList<>();
+        }
+        Copy copy = league.withLeagueLocked(() -> {
+            Copy locked = new Copy();
+            locked.mVersion = league.getVersion();
+            for (Team team : league.getTeams()) {
+                locked.mTeams.add(team);
+                locked.mPlayers.add(team.getPlayers().toArray(new Player[0]));
+            }
+            locked.mTeams.add(league.getUnassignedPool());
+            locked.mPlayers.add(league.getUnassignedPool().getPlayers().toArray(new Player[0]));
+            return locked;
+        });
+        List<TeamState> teams = new ArrayList<>(copy.mTeams.size());
+        for (int i = 0; i < copy.mTeams.size(); i++) {
+            Team team = copy.mTeams.get(i);
+            teams.add(TeamState.of(team.getName(), team.getCoach(), copy.mPlayers.get(i)));
+        }
+        TeamState unassigned = teams.remove(teams.size() - 1);
+        teams.sort((a, b) -> a.getName().compareTo(b.getName()));
+        return new LeagueState(copy.mVersion, teams, unassigned);
+    }
+
+    /**
+     * @return the league's version when this copy was taken
+     */
+    public long getVersion() { return mVersion; }
+
+    /**
+     * @return the teams in report order (case sensitive name)
+     */
+    public List<TeamState> getTeams() { return mTeams; }
+
+    /**
+     * @return the team with the name (not case sensitive), or null
+     */
+    public TeamState getTeam(String teamName) {
+        return mTeamsByKey.apply(teamName.toLowerCase());
+    }
+
+    public TeamState getUnassignedPool() { return mUnassigned; }
+
+    public int getCount_AllPlayers(boolean includeUnassigned) {
+        int count = includeUnassigned ? mUnassigned.getCount_AllPlayers() : 0;
+        for (TeamState team : mTeams)
+            count += team.getCount_AllPlayers();
+        return count;
+    }
+
+    public int getCount_ExperiencedPlayers(boolean includeUnassigned) {
+        int count = includeUnassigned ? mUnassigned.getCount_ExperiencedPlayers() : 0;
+        for (TeamState team : mTeams)
+            count += team.getCount_ExperiencedPlayers();
+        return count;
+    }
+
+    public double getAverageHeight(boolean includeUnassigned) {
+        long heightSum = includeUnassigned ? mUnassigned.getHeightSum() : 0;
+        for (TeamState team : mTeams)
+            heightSum += team.getHeightSum();
+        int count = getCount_AllPlayers(includeUnassigned);
+        if (count < 1)
+            return 0d;
+        return (double) heightSum / count;
+    }
+
+    /**
+     * @return number of players of each height across the league, tallest first
+     */
+    public NavigableMap<Integer, Integer> getHeightCounts(boolean includeUnassigned) {
+        NavigableMap<Integer, Integer> heightCounts = new TreeMap<>(Collections.reverseOrder());
+        if (includeUnassigned)
+            mUnassigned.getHeightCounts().forEach((height, count) -> heightCounts.merge(height, count, Integer::sum));
+        for (TeamState team : mTeams)
+            team.getHeightCounts().forEach((height, count) -> heightCounts.merge(height, count, Integer::sum));
+        return heightCounts;
+    }
+}
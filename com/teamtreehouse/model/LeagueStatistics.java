@@ -0,0 +1,180 @@
+package com.teamtreehouse.model;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * League wide totals for the League Balance Report, kept current by
+ * listening to every change made to the league.
+ *
+ * The team by height count matrix is made up of each team's own
+ * {@link HeightHistogram}, the unassigned pool's statistics come from
+ * {@link League#getUnassignedPool()}, and this class adds the totals
+ * across all teams, so viewing the report never has to scan players.
+ *
+ * Safe to read while the league changes. Totals are kept in atomics,
+ * not under a lock, so recording a change never waits on another one
+ * or on a reader, and transfers between teams aren't recorded at all.
+ * Each total is read on its own, so one read during a change may be
+ * from before it and another from after.
+ */
+public class LeagueStatistics implements LeagueListener {
+    private League mLeague;
+    private Set<Team> mTeamsByName; // report order (case sensitive)
+    private HeightHistogram mAssignedHeights;
+    private final AtomicInteger mAssignedCount = new AtomicInteger();
+    private final AtomicInteger mAssignedExperienced = new AtomicInteger();
+    private final AtomicLong mAssignedHeightSum = new AtomicLong();
+    private volatile int mMaxTeamNameLength; // Note: teams are created and removed one at a time
+
+    /**
+     * Start tracking a league, including any teams and players it
+     * already has.
+     */
+    public LeagueStatistics(League league) {
+        mLeague = league;
+        mTeamsByName = new ConcurrentSkipListSet<>();
+        mAssignedHeights = new HeightHistogram(false);
+        // Note: with the league locked, no change can be missed or
+        //    counted twice between counting it and listening to it
+        league.withLeagueLocked(() -> {
+            for (Team team : league.getTeams()) {
+                teamCreated(team);
+                for (Player player : team.getPlayers())
+                    playerAssigned(player, team);
+            }
+            league.addListener(this);
+            return null;
+        });
+    }
+
+    @Override
+    public void teamCreated(Team team) {
+        mTeamsByName.add(team);
+        mMaxTeamNameLength = Math.max(mMaxTeamNameLength, team.getName().length());
+    }
+
+    @Override
+    public void playerAssigned(Player player, Team team) {
+        mAssignedCount.incrementAndGet();
+        mAssignedHeightSum.addAndGet(player.getHeightInInches());
+        if (player.isPreviousExperience())
+            mAssignedExperienced.incrementAndGet();
+        mAssignedHeights.addCount(player.getHeightInInches(), 1);
+    }
+
+    @Override
+    public void playerUnassigned(Player player, Team team) {
+        mAssignedCount.decrementAndGet();
+        mAssignedHeightSum.addAndGet(-player.getHeightInInches());
+        if (player.isPreviousExperience())
+            mAssignedExperienced.decrementAndGet();
+        mAssignedHeights.addCount(player.getHeightInInches(), -1);
+    }
+
+    /**
+     * Moves between teams don't change the assigned totals.
+     */
+    @Override
+    public void playerTransferred(Player player, Team fromTeam, Team toTeam) {
+    }
+
+    // Note: a team is only removed once it has no players, so the
+    //    assigned totals don't change
+    @Override
+    public void teamRemoved(Team team) {
+        mTeamsByName.remove(team);
+        mMaxTeamNameLength = 0;
+        for (Team each : mTeamsByName)
+            mMaxTeamNameLength = Math.max(mMaxTeamNameLength, each.getName().length());
+    }
+
+    /**
+     * Only players joining or leaving the pool change the assigned
+     * totals; moves between teams cancel out.
+     */
+    @Override
+    public void playersMoved(List<PlayerMove> moves, Team unassignedPool) {
+        for (PlayerMove move : moves) {
+            if (move.getFromTeam() == unassignedPool)
+                playerAssigned(move.getPlayer(), move.getToTeam());
+            else if (move.getToTeam() == unassignedPool)
+                playerUnassigned(move.getPlayer(), move.getFromTeam());
+        }
+    }
+
+    /**
+     * @return teams sorted by name (read-only)
+     */
+    public Set<Team> getTeamsByName() {
+        return Collections.unmodifiableSet(mTeamsByName);
+    }
+
+    /**
+     * @return length of the longest team name (not counting the unassigned pool)
+     */
+    public int getMaxTeamNameLength() { return mMaxTeamNameLength; }
+
+    public Team getUnassignedPool() { return mLeague.getUnassignedPool(); }
+
+    public int getCount_AllPlayers(boolean includeUnassigned) {
+        return mAssignedCount.get() + (includeUnassigned ? getUnassignedPool().getCount_AllPlayers() : 0);
+    }
+
+    public int getCount_ExperiencedPlayers(boolean includeUnassigned) {
+        return mAssignedExperienced.get() + (includeUnassigned ? getUnassignedPool().getCount_ExperiencedPlayers() : 0);
+    }
+
+    public int getCount_InexperiencedPlayers(boolean includeUnassigned) {
+        return getCount_AllPlayers(includeUnassigned) - getCount_ExperiencedPlayers(includeUnassigned);
+    }
+
+    public double getAverageHeight(boolean includeUnassigned) {
+        double sum = mAssignedHeightSum.get();
+        int count = mAssignedCount.get();
+        if (includeUnassigned) {
+            Team pool = getUnassignedPool();
+            int poolCount = pool.getCount_AllPlayers();
+            sum += pool.getAverageHeight() * poolCount;
+            count += poolCount;
+        }
+        if (count < 1)
+            return 0d;
+        return sum / count;
+    }
+
+    /**
+     * @return number of players of the height, on any team
+     */
+    public int getCount_PlayersOfHeight(int heightInInches, boolean includeUnassigned) {
+        int count = mAssignedHeights.getCount(heightInInches);
+        if (includeUnassigned)
+            count += getUnassignedPool().getHeightHistogram().getCount(heightInInches);
+        return count;
+    }
+
+    /**
+     * @return tallest height of any player, or HeightHistogram.NONE
+     */
+    public int getTallest(boolean includeUnassigned) {
+        int tallest = mAssignedHeights.getTallest();
+        if (includeUnassigned)
+            tallest = Math.max(tallest, getUnassignedPool().getHeightHistogram().getTallest());
+        return tallest;
+    }
+
+    /**
+     * @return next height shorter than the one given that any player has,
+     *   or HeightHistogram.NONE
+     */
+    public int getNextShorter(int heightInInches, boolean includeUnassigned) {
+        int next = mAssignedHeights.getNextShorter(heightInInches);
+        if (includeUnassigned)
+            next = Math.max(next, getUnassignedPool().getHeightHistogram().getNextShorter(heightInInches));
+        return next;
+    }
+}
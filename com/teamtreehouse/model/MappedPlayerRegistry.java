@@ -0,0 +1,434 @@
+package com.teamtreehouse.model;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A player registry kept in a memory-mapped file instead of on the heap,
+ * for registries too large to hold as Player objects. Opening one only
+ * reads its header; the operating system pages the records in as they
+ * are read, and holds them in its page cache rather than the Java heap.
+ *
+ * Each player is a record id (0 to size() - 1) and a fixed width record,
+ * so any player is found by its id without an index. Names are stored
+ * once each after the records:
+ *
+ *   header   int magic "TTPM", byte version, 3 unused bytes,
+ *            int record count, 4 unused bytes, long names offset,
+ *            long names length
+ *   records  int first name, int last name (offsets into the names),
+ *            byte height, byte flags (1: previous experience)
+ *   names    byte UTF-8 length, bytes
+ *
+ * Players are read through {@link View}s, PlayerRecords holding only an
+ * id, or made into Player objects with {@link #toPlayer(int)} when one
+ * is needed (e.g. to register in a League). A group of players (e.g. a
+ * team) is kept as record ids in a {@link Roster}. Every record can also
+ * be streamed with {@link #forEach}.
+ *
+ * Write one with {@link #create} or {@link #convert} from another
+ * registry (LeagueManager --convert-registry does this).
+ * {@link PlayerRegistryLoader#load} reads this format too.
+ * Safe to read from several threads.
+ */
+public class MappedPlayerRegistry {
+    /** first bytes of a mapped registry file ("TTPM") */
+    static final int MAGIC = 0x5454504d;
+    private static final byte VERSION = 1;
+    private static final int HEADER_LENGTH = 32;
+    private static final int RECORD_LENGTH = 10;
+    private static final int HEIGHT = 8; // offsets within a record
+    private static final int FLAGS = 9;
+    private static final byte FLAG_EXPERIENCED = 1;
+    private static final int MAX_NAME_BYTES = 255;
+    // Note: each part is mapped as one buffer, so neither may reach 2GB
+    private static final int MAX_RECORDS = Integer.MAX_VALUE / RECORD_LENGTH;
+
+    private final Path mFile;
+    private final ByteBuffer mRecords;
+    private final ByteBuffer mNames;
+    private final int mSize;
+
+    private MappedPlayerRegistry(Path file, ByteBuffer records, ByteBuffer names, int size) {
+        mFile = file;
+        mRecords = records;
+        mNames = names;
+        mSize = size;
+    }
+
+    /**
+     * Map a registry file written by {@link #create}. Only the header
+     * is read.
+     * @throws IOException if the file can't be read or isn't a mapped registry
+     */
+    public static MappedPlayerRegistry open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+            while (header.hasRemaining() && channel.read(header, header.position()) > 0) {
+                // keep reading until the header is complete or the file ends
+            }
+            if (header.hasRemaining() || header.getInt(0) != MAGIC)
+                throw new IOException("Not a mapped player registry: " + file);
+            if (header.get(4) != VERSION)
+                throw new IOException(String.format("Unsupported mapped player registry version %d", header.get(4)));
+            int size = header.getInt(8);
+            long namesOffset = header.getLong(16);
+            long namesLength = header.getLong(24);
+            if (size < 0 || size > MAX_RECORDS || namesOffset != HEADER_LENGTH + (long) size * RECORD_LENGTH
+                    || namesLength < 0 || namesLength > Integer.MAX_VALUE || namesOffset + namesLength > fileSize)
+                throw new IOException("Truncated mapped player registry: " + file);
+            MappedByteBuffer records = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_LENGTH,
+                    (long) size * RECORD_LENGTH);
+            MappedByteBuffer names = channel.map(FileChannel.MapMode.READ_ONLY, namesOffset, namesLength);
+            // Note: the mappings stay valid once the channel is closed
+            return new MappedPlayerRegistry(file, records, names, size);
+        }
+    }
+
+    public Path getFile() { return mFile; }
+
+    /**
+     * @return number of players
+     */
+    public int size() { return mSize; }
+
+    public String getFirstName(int id) { return name(mRecords.getInt(offsetOf(id))); }
+    public String getLastName(int id) { return name(mRecords.getInt(offsetOf(id) + 4)); }
+    public int getHeightInInches(int id) { return mRecords.get(offsetOf(id) + HEIGHT) & 0xff; }
+    public boolean isPreviousExperience(int id) { return (mRecords.get(offsetOf(id) + FLAGS) & FLAG_EXPERIENCED) != 0; }
+
+    /**
+     * @return a new Player object holding the record's details
+     */
+    public Player toPlayer(int id) {
+        int offset = offsetOf(id);
+        return new Player(name(mRecords.getInt(offset)), name(mRecords.getInt(offset + 4)),
+                mRecords.get(offset + HEIGHT) & 0xff, (mRecords.get(offset + FLAGS) & FLAG_EXPERIENCED) != 0);
+    }
+
+    /**
+     * @return a view of the player with the id, see {@link View}
+     */
+    public View view(int id) {
+        return new View().moveTo(id);
+    }
+
+    /**
+     * Stream every record to a handler, e.g. to register them all in a
+     * League.
+     */
+    public void forEach(PlayerRegistryLoader.RowHandler handler) {
+        for (int id = 0; id < mSize; id++) {
+            int offset = id * RECORD_LENGTH;
+            handler.row(name(mRecords.getInt(offset)), name(mRecords.getInt(offset + 4)),
+                    mRecords.get(offset + HEIGHT) & 0xff, (mRecords.get(offset + FLAGS) & FLAG_EXPERIENCED) != 0);
+        }
+    }
+
+    private int offsetOf(int id) {
+        if (id < 0 || id >= mSize)
+            throw new IndexOutOfBoundsException("record " + id + " of " + mSize);
+        return id * RECORD_LENGTH;
+    }
+
+    private String name(int offset) {
+        int length = mNames.get(offset) & 0xff;
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++)
+            bytes[i] = mNames.get(offset + 1 + i);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * A PlayerRecord holding only a record id: the details are read from
+     * the file each time they are asked for. Views are small enough to
+     * make one per player as needed, or one can be moved from record to
+     * record.
+     */
+    public class View implements PlayerRecord {
+        private int mId = -1;
+
+        /**
+         * @return this view, now reading the record
+         */
+        public View moveTo(int id) {
+            offsetOf(id);
+            mId = id;
+            return this;
+        }
+
+        public int getId() { return mId; }
+
+        public Player toPlayer() { return MappedPlayerRegistry.this.toPlayer(mId); }
+
+        @Override public String getFirstName() { return MappedPlayerRegistry.this.getFirstName(mId); }
+        @Override public String getLastName() { return MappedPlayerRegistry.this.getLastName(mId); }
+        @Override public int getHeightInInches() { return MappedPlayerRegistry.this.getHeightInInches(mId); }
+        @Override public boolean isPreviousExperience() { return MappedPlayerRegistry.this.isPreviousExperience(mId); }
+    }
+
+    /**
+     * A group of players (e.g. a team) as record ids, with the same
+     * statistics as {@link Team} kept from the records' heights and
+     * flags (names are not read). Not safe to change from several threads.
+     */
+    public class Roster {
+        private int[] mIds = new int[16];
+        private int mCount;
+        private long mHeightSum;
+        private int mExperiencedCount;
+        private HeightHistogram mHeightCounts = new HeightHistogram(false);
+
+        public void add(int id) {
+            int height = getHeightInInches(id);
+            if (mCount == mIds.length)
+                mIds = Arrays.copyOf(mIds, mCount * 2);
+            mIds[mCount++] = id;
+            mHeightSum += height;
+            if (isPreviousExperience(id))
+                mExperiencedCount++;
+            mHeightCounts.addCount(height, 1);
+        }
+
+        /**
+         * @return false if the player was not on the roster
+         */
+        public boolean remove(int id) {
+            for (int i = 0; i < mCount; i++) {
+                if (mIds[i] == id) {
+                    mIds[i] = mIds[--mCount]; // order is not kept
+                    int height = getHeightInInches(id);
+                    mHeightSum -= height;
+                    if (isPreviousExperience(id))
+                        mExperiencedCount--;
+                    mHeightCounts.addCount(height, -1);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public int getCount_AllPlayers() { return mCount; }
+        public int getCount_ExperiencedPlayers() { return mExperiencedCount; }
+        public int getCount_InexperiencedPlayers() { return mCount - mExperiencedCount; }
+
+        public double getAverageHeight() {
+            if (mCount < 1)
+                return 0d;
+            return (double) mHeightSum / mCount;
+        }
+
+        /**
+         * @return count of the roster's players at each height
+         */
+        public HeightHistogram getHeightCounts() { return mHeightCounts; }
+
+        /**
+         * @return record id of the roster's n-th player
+         */
+        public int getId(int index) {
+            if (index >= mCount)
+                throw new IndexOutOfBoundsException("index " + index + " of " + mCount);
+            return mIds[index];
+        }
+
+        /**
+         * Note: every step of the iteration returns the same View,
+         *    moved to the next player, so records must not be kept.
+         * @return the roster's players, without creating an object per player
+         */
+        public Iterable<View> records() {
+            return () -> new Iterator<View>() {
+                private final View mView = new View();
+                private int mNext;
+
+                @Override
+                public boolean hasNext() { return mNext < mCount; }
+
+                @Override
+                public View next() {
+                    if (mNext >= mCount)
+                        throw new NoSuchElementException();
+                    return mView.moveTo(mIds[mNext++]);
+                }
+            };
+        }
+    }
+
+    public Roster newRoster() {
+        return new Roster();
+    }
+
+    // ---------------------------------------------------------------
+    // Writing
+    // ---------------------------------------------------------------
+
+    /**
+     * Write a mapped registry from any other registry file (CSV, binary
+     * or mapped).
+     * @return number of players written
+     * @throws IOException if the source can't be read or a player can't be stored
+     */
+    public static int convert(Path registry, Path file) throws IOException {
+        Writer writer = create(file);
+        try {
+            new PlayerRegistryLoader().load(registry, (firstName, lastName, height, experienced) -> {
+                try {
+                    writer.add(firstName, lastName, height, experienced);
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            });
+        } catch (UncheckedIOException ex) {
+            writer.discard();
+            throw ex.getCause();
+        } catch (IOException | RuntimeException ex) {
+            writer.discard();
+            throw ex;
+        }
+        writer.close();
+        return writer.size();
+    }
+
+    /**
+     * Start writing a mapped registry. It's written to a temporary file
+     * and renamed into place when the writer is closed, so the file is
+     * either complete or as it was.
+     */
+    public static Writer create(Path file) throws IOException {
+        return new Writer(file);
+    }
+
+    /**
+     * Appends players to a new mapped registry. The records are
+     * streamed to the file; the names are kept in memory (each once)
+     * and written after them on close().
+     */
+    public static class Writer implements Closeable {
+        private final Path mFile;
+        private final Path mTemp;
+        private final FileChannel mChannel;
+        private final DataOutputStream mOut;
+        private final NameDictionary mNameIds = new NameDictionary();
+        private int[] mNameOffsets = new int[1024]; // by id
+        private byte[] mNames = new byte[64 * 1024];
+        private int mNamesLength;
+        private int mSize;
+        private boolean mClosed;
+
+        private Writer(Path file) throws IOException {
+            mFile = file;
+            mTemp = file.resolveSibling(file.getFileName() + ".tmp");
+            mChannel = FileChannel.open(mTemp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            mChannel.position(HEADER_LENGTH);
+            mOut = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(mChannel), 64 * 1024));
+        }
+
+        /**
+         * @return record id of the new player
+         * @throws IOException if the file can't be written, a name is
+         *   longer than 255 UTF-8 bytes or the height isn't 0 to 255
+         */
+        public int add(String firstName, String lastName, int heightInInches, boolean previousExperience)
+                throws IOException {
+            if (heightInInches < 0 || heightInInches > 255)
+                throw new IOException(String.format("Height out of range for %s, %s", lastName, firstName));
+            if (mSize == MAX_RECORDS)
+                throw new IOException("A mapped player registry holds at most " + MAX_RECORDS + " players");
+            mOut.writeInt(nameOffset(firstName));
+            mOut.writeInt(nameOffset(lastName));
+            mOut.writeByte(heightInInches);
+            mOut.writeByte(previousExperience ? FLAG_EXPERIENCED : 0);
+            return mSize++;
+        }
+
+        public int add(PlayerRecord player) throws IOException {
+            return add(player.getFirstName(), player.getLastName(), player.getHeightInInches(),
+                    player.isPreviousExperience());
+        }
+
+        private int nameOffset(String name) throws IOException {
+            int names = mNameIds.size();
+            int id = mNameIds.idOf(name);
+            if (mNameIds.size() == names) // already stored
+                return mNameOffsets[id];
+            byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+            if (bytes.length > MAX_NAME_BYTES)
+                throw new IOException("Name too long for a mapped registry: " + name);
+            if ((long) mNamesLength + 1 + bytes.length > Integer.MAX_VALUE)
+                throw new IOException("Too many names for a mapped registry");
+            if (id == mNameOffsets.length)
+                mNameOffsets = Arrays.copyOf(mNameOffsets, id * 2);
+            if (mNamesLength + 1 + bytes.length > mNames.length)
+                mNames = Arrays.copyOf(mNames, (int) Math.min(Integer.MAX_VALUE,
+                        Math.max((long) mNames.length * 2, mNamesLength + 1 + bytes.length)));
+            mNameOffsets[id] = mNamesLength;
+            mNames[mNamesLength++] = (byte) bytes.length;
+            System.arraycopy(bytes, 0, mNames, mNamesLength, bytes.length);
+            mNamesLength += bytes.length;
+            return mNameOffsets[id];
+        }
+
+        public int size() { return mSize; }
+
+        /**
+         * Stop writing and delete what was written, leaving the file as
+         * it was.
+         */
+        public void discard() throws IOException {
+            if (mClosed)
+                return;
+            mClosed = true;
+            mChannel.close();
+            Files.deleteIfExists(mTemp);
+        }
+
+        /**
+         * Write the names and header, and move the file into place. If
+         * that fails, what was written is deleted, as by discard().
+         */
+        @Override
+        public void close() throws IOException {
+            if (mClosed)
+                return;
+            mClosed = true;
+            try {
+                mOut.write(mNames, 0, mNamesLength);
+                mOut.flush();
+                ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+                header.putInt(MAGIC).put(VERSION).put(new byte[3]).putInt(mSize).putInt(0)
+                        .putLong(HEADER_LENGTH + (long) mSize * RECORD_LENGTH).putLong(mNamesLength).flip();
+                while (header.hasRemaining())
+                    mChannel.write(header, header.position());
+                mChannel.force(true);
+                mChannel.close();
+                Files.move(mTemp, mFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException | RuntimeException ex) {
+                try {
+                    mChannel.close();
+                    Files.deleteIfExists(mTemp);
+                } catch (IOException deleteEx) {
+                    ex.addSuppressed(deleteEx);
+                }
+                throw ex;
+            }
+        }
+    }
+}
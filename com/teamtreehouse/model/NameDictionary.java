@@ -0,0 +1,92 @@
+package com.teamtreehouse.model;
+
+import java.util.Arrays;
+
+/**
+ * Gives each distinct name a small int id, so a name shared by many
+ * players ("Joe", "Smith") is only stored once.
+ *
+ * Looked up through an open addressing table of ids rather than a
+ * HashMap, so a million distinct names cost two int arrays instead of a
+ * million map entries and boxed ids.
+ */
+public class NameDictionary {
+    private int[] mSlots; // id + 1 of the name hashed there, 0 if empty
+    // Note: volatile and only replaced once filled, so nameOf() can be
+    //    called from other threads while names are added (see PlayerStore)
+    private volatile String[] mNames;
+    private int[] mHashes; // by id, so probing and growing needn't read the names
+    private int mSize;
+
+    public NameDictionary() {
+        mSlots = new int[32];
+        mNames = new String[16];
+        mHashes = new int[16];
+    }
+
+    /**
+     * @return id of the name, adding it if it's new
+     */
+    public int idOf(String name) {
+        int hash = hash(name);
+        int slot = slotOf(name, hash);
+        if (mSlots[slot] != 0)
+            return mSlots[slot] - 1;
+        String[] names = mNames;
+        if (mSize == names.length) {
+            names = Arrays.copyOf(names, mSize * 2);
+            mHashes = Arrays.copyOf(mHashes, mSize * 2);
+        }
+        names[mSize] = name;
+        mNames = names;
+        mHashes[mSize] = hash;
+        mSlots[slot] = ++mSize;
+        if (mSize * 2 > mSlots.length)
+            rehash();
+        return mSize - 1;
+    }
+
+    /**
+     * @return id of the name, or -1 if it has not been added
+     */
+    public int find(String name) {
+        return mSlots[slotOf(name, hash(name))] - 1;
+    }
+
+    public String nameOf(int id) {
+        return mNames[id];
+    }
+
+    /**
+     * @return number of distinct names
+     */
+    public int size() { return mSize; }
+
+    /**
+     * @return the name's slot, or the empty slot it would go in
+     */
+    private int slotOf(String name, int hash) {
+        int mask = mSlots.length - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int id = mSlots[slot];
+            if (id == 0 || mHashes[id - 1] == hash && mNames[id - 1].equals(name))
+                return slot;
+        }
+    }
+
+    private static int hash(String name) {
+        int hash = name.hashCode() * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    private void rehash() {
+        mSlots = new int[mSlots.length * 2];
+        int mask = mSlots.length - 1;
+        for (int id = 0; id < mSize; id++) {
+            int slot = mHashes[id] & mask;
+            while (mSlots[slot] != 0)
+                slot = (slot + 1) & mask;
+            mSlots[slot] = id + 1;
+        }
+    }
+}
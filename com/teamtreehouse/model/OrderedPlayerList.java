@@ -0,0 +1,81 @@
+package com.teamtreehouse.model;
+
+import java.util.AbstractList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NavigableSet;
+
+/**
+ * A team's players in one {@link PlayerOrder}, as a read-only list that
+ * reads straight from the team's index for that order: nothing is
+ * copied or sorted, and it shows the team as it is now, changes included.
+ *
+ * The index has no positions, so get() walks to the player from the
+ * start, the end or the player last got, whichever is nearest. Getting
+ * players one after another, e.g. a page of a menu, costs a step each.
+ */
+public class OrderedPlayerList extends AbstractList<Player> {
+    // Note: a skip list steps backwards by searching from the top, about
+    //    8 times the cost of a step forwards
+    private static final int BACKWARD_STEP_COST = 8;
+
+    private final Team mTeam;
+    private final NavigableSet<Player> mPlayers;
+    // the player last got and where it was, while the team is unchanged
+    private Player mCursor;
+    private int mCursorIndex;
+    private long mCursorVersion;
+
+    OrderedPlayerList(Team team, NavigableSet<Player> players) {
+        mTeam = team;
+        mPlayers = players;
+    }
+
+    @Override
+    public int size() {
+        return mTeam.getCount_AllPlayers();
+    }
+
+    @Override
+    public synchronized Player get(int index) {
+        long version = mTeam.getVersion();
+        int size = size();
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException(String.format("%d of %d players", index, size));
+        boolean useCursor = mCursor != null && mCursorVersion == version;
+        int fromCursor = useCursor ? Math.abs(index - mCursorIndex) : 0;
+        long cursorCost = !useCursor ? Long.MAX_VALUE
+                : index >= mCursorIndex ? fromCursor : (long) fromCursor * BACKWARD_STEP_COST;
+        int fromEnd = size - 1 - index;
+        long endCost = (long) fromEnd * BACKWARD_STEP_COST;
+        Iterator<Player> walk;
+        int steps;
+        if (cursorCost <= index && cursorCost <= endCost) {
+            walk = index >= mCursorIndex
+                    ? mPlayers.tailSet(mCursor, true).iterator()
+                    : mPlayers.headSet(mCursor, true).descendingIterator();
+            steps = fromCursor;
+        } else if (index <= endCost) {
+            walk = mPlayers.iterator();
+            steps = index;
+        } else {
+            walk = mPlayers.descendingIterator();
+            steps = fromEnd;
+        }
+        Player player = null;
+        for (int i = 0; i <= steps; i++) {
+            if (!walk.hasNext()) // Note: players removed since size() was read
+                throw new IndexOutOfBoundsException(String.format("%d of %d players", index, size()));
+            player = walk.next();
+        }
+        mCursor = player;
+        mCursorIndex = index;
+        mCursorVersion = version;
+        return player;
+    }
+
+    @Override
+    public Iterator<Player> iterator() {
+        return Collections.unmodifiableSet(mPlayers).iterator();
+    }
+}
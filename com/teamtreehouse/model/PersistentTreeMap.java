@@ -0,0 +1,269 @@
+package com.teamtreehouse.model;
+
+import java.util.AbstractList;
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Function;
+
+/**
+ * A sorted map that is never changed: put and remove return a new map
+ * and leave this one as it was. The new map shares all but the O(log n)
+ * nodes on the path to the key with the old one, so keeping every
+ * version (e.g. one per change made to a league) costs a few nodes per
+ * change rather than a copy of the whole map.
+ *
+ * A treap: a search tree by key that is also a heap by a priority worked
+ * out from each key's hash, which keeps it balanced on average. Each
+ * node counts the keys under it, so the i-th key is found in O(log n)
+ * and {@link #keys()} and {@link #values()} are lists.
+ *
+ * Safe to read from any number of threads; nothing in it ever changes.
+ */
+public final class PersistentTreeMap<K, V> {
+    // Note: nodes built by ofSorted() take priorities above any hash, by
+    //    depth, so the keys put later hang below the balanced part
+    private static final int MAX_HASH_PRIORITY = Integer.MAX_VALUE - 64;
+
+    private static final class Node<K, V> {
+        final K mKey;
+        final V mValue;
+        final int mPriority;
+        final Node<K, V> mLeft;
+        final Node<K, V> mRight;
+        final int mSize;
+
+        Node(K key, V value, int priority, Node<K, V> left, Node<K, V> right) {
+            mKey = key;
+            mValue = value;
+            mPriority = priority;
+            mLeft = left;
+            mRight = right;
+            mSize = 1 + size(left) + size(right);
+        }
+
+        Node<K, V> with(Node<K, V> left, Node<K, V> right) {
+            return new Node<>(mKey, mValue, mPriority, left, right);
+        }
+    }
+
+    private final Comparator<? super K> mComparator;
+    private final Node<K, V> mRoot;
+
+    private PersistentTreeMap(Comparator<? super K> comparator, Node<K, V> root) {
+        mComparator = comparator;
+        mRoot = root;
+    }
+
+    public static <K extends Comparable<? super K>, V> PersistentTreeMap<K, V> empty() {
+        return new PersistentTreeMap<>(Comparator.naturalOrder(), null);
+    }
+
+    public static <K, V> PersistentTreeMap<K, V> empty(Comparator<? super K> comparator) {
+        return new PersistentTreeMap<>(comparator, null);
+    }
+
+    /**
+     * Build a map in O(n), perfectly balanced, instead of putting the
+     * keys one at a time.
+     * @param keys distinct keys, already in the comparator's order
+     * @param valueOf value for each key
+     */
+    public static <K, V> PersistentTreeMap<K, V> ofSorted(Comparator<? super K> comparator, List<K> keys,
+            Function<? super K, ? extends V> valueOf) {
+        return new PersistentTreeMap<>(comparator, build(keys, valueOf, 0, keys.size(), 0));
+    }
+
+    private static <K, V> Node<K, V> build(List<K> keys, Function<? super K, ? extends V> valueOf,
+            int from, int to, int depth) {
+        if (from >= to)
+            return null;
+        int middle = (from + to) >>> 1;
+        K key = keys.get(middle);
+        return new Node<>(key, valueOf.apply(key), Integer.MAX_VALUE - depth,
+                build(keys, valueOf, from, middle, depth + 1), build(keys, valueOf, middle + 1, to, depth + 1));
+    }
+
+    public int size() { return size(mRoot); }
+
+    public boolean isEmpty() { return mRoot == null; }
+
+    public V get(K key) {
+        Node<K, V> node = mRoot;
+        while (node != null) {
+            int compare = mComparator.compare(key, node.mKey);
+            if (compare == 0)
+                return node.mValue;
+            node = compare < 0 ? node.mLeft : node.mRight;
+        }
+        return null;
+    }
+
+    public boolean containsKey(K key) {
+        return get(key) != null;
+    }
+
+    /**
+     * @return a map with the key set to the value (null values are not
+     *   allowed); this map if it already was
+     */
+    public PersistentTreeMap<K, V> put(K key, V value) {
+        if (value == null)
+            throw new NullPointerException("value");
+        Node<K, V> root = put(mRoot, key, value, priority(key));
+        return root == mRoot ? this : new PersistentTreeMap<>(mComparator, root);
+    }
+
+    /**
+     * @return a map without the key; this map if it didn't have it
+     */
+    public PersistentTreeMap<K, V> remove(K key) {
+        Node<K, V> root = remove(mRoot, key);
+        return root == mRoot ? this : new PersistentTreeMap<>(mComparator, root);
+    }
+
+    /**
+     * @param index 0 for the smallest key
+     */
+    public K keyAt(int index) {
+        return nodeAt(index).mKey;
+    }
+
+    public V valueAt(int index) {
+        return nodeAt(index).mValue;
+    }
+
+    /**
+     * @return the keys in order, as a read-only list
+     */
+    public List<K> keys() {
+        return new AbstractList<K>() {
+            @Override
+            public K get(int index) { return keyAt(index); }
+            @Override
+            public int size() { return PersistentTreeMap.this.size(); }
+            @Override
+            public Iterator<K> iterator() { return new InOrder<>(mRoot, node -> node.mKey); }
+        };
+    }
+
+    /**
+     * @return the values in the order of their keys, as a read-only list
+     */
+    public List<V> values() {
+        return new AbstractList<V>() {
+            @Override
+            public V get(int index) { return valueAt(index); }
+            @Override
+            public int size() { return PersistentTreeMap.this.size(); }
+            @Override
+            public Iterator<V> iterator() { return new InOrder<>(mRoot, node -> node.mValue); }
+        };
+    }
+
+    private Node<K, V> put(Node<K, V> node, K key, V value, int priority) {
+        if (node == null)
+            return new Node<>(key, value, priority, null, null);
+        int compare = mComparator.compare(key, node.mKey);
+        if (compare == 0) {
+            if (node.mValue == value)
+                return node;
+            return new Node<>(key, value, node.mPriority, node.mLeft, node.mRight);
+        }
+        if (compare < 0) {
+            Node<K, V> left = put(node.mLeft, key, value, priority);
+            if (left == node.mLeft)
+                return node;
+            if (left.mPriority > node.mPriority) // rotate right
+                return left.with(left.mLeft, node.with(left.mRight, node.mRight));
+            return node.with(left, node.mRight);
+        }
+        Node<K, V> right = put(node.mRight, key, value, priority);
+        if (right == node.mRight)
+            return node;
+        if (right.mPriority > node.mPriority) // rotate left
+            return right.with(node.with(node.mLeft, right.mLeft), right.mRight);
+        return node.with(node.mLeft, right);
+    }
+
+    private Node<K, V> remove(Node<K, V> node, K key) {
+        if (node == null)
+            return null;
+        int compare = mComparator.compare(key, node.mKey);
+        if (compare == 0)
+            return merge(node.mLeft, node.mRight);
+        if (compare < 0) {
+            Node<K, V> left = remove(node.mLeft, key);
+            return left == node.mLeft ? node : node.with(left, node.mRight);
+        }
+        Node<K, V> right = remove(node.mRight, key);
+        return right == node.mRight ? node : node.with(node.mLeft, right);
+    }
+
+    // every key in a is before every key in b
+    private static <K, V> Node<K, V> merge(Node<K, V> a, Node<K, V> b) {
+        if (a == null)
+            return b;
+        if (b == null)
+            return a;
+        if (a.mPriority >= b.mPriority)
+            return a.with(a.mLeft, merge(a.mRight, b));
+        return b.with(merge(a, b.mLeft), b.mRight);
+    }
+
+    private Node<K, V> nodeAt(int index) {
+        if (index < 0 || index >= size())
+            throw new IndexOutOfBoundsException(String.format("%d of %d", index, size()));
+        Node<K, V> node = mRoot;
+        while (true) {
+            int leftSize = size(node.mLeft);
+            if (index == leftSize)
+                return node;
+            if (index < leftSize) {
+                node = node.mLeft;
+            } else {
+                index -= leftSize + 1;
+                node = node.mRight;
+            }
+        }
+    }
+
+    private static int size(Node<?, ?> node) {
+        return node == null ? 0 : node.mSize;
+    }
+
+    private static int priority(Object key) {
+        int hash = key.hashCode() * 0x9E3779B9;
+        return Math.min(hash ^ (hash >>> 16), MAX_HASH_PRIORITY);
+    }
+
+    private static class InOrder<K, V, T> implements Iterator<T> {
+        private final Deque<Node<K, V>> mPath = new ArrayDeque<>();
+        private final Function<Node<K, V>, T> mPart;
+
+        InOrder(Node<K, V> root, Function<Node<K, V>, T> part) {
+            mPart = part;
+            pushLeft(root);
+        }
+
+        private void pushLeft(Node<K, V> node) {
+            for (; node != null; node = node.mLeft)
+                mPath.push(node);
+        }
+
+        @Override
+        public boolean hasNext() { return !mPath.isEmpty(); }
+
+        @Override
+        public T next() {
+            if (mPath.isEmpty())
+                throw new NoSuchElementException();
+            Node<K, V> node = mPath.pop();
+            pushLeft(node.mRight);
+            return mPart.apply(node);
+        }
+    }
+}
@@ -1,34 +1,71 @@
 package com.teamtreehouse.model;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 
-public class Player implements Comparable<Player>, Serializable {
+public class Player implements Comparable<Player>, PlayerRecord, Serializable {
   private static final long serialVersionUID = 1L;
 
   private String firstName;
   private String lastName;
   private int heightInInches;
   private boolean previousExperience;
+  // The first 4 chars of each name packed into a long, so most
+  //   comparisons are decided by comparing two numbers
+  private transient long lastNameKey;
+  private transient long firstNameKey;
 
   public Player(String firstName, String lastName, int heightInInches, boolean previousExperience) {
     this.firstName = firstName;
     this.lastName = lastName;
     this.heightInInches = heightInInches;
     this.previousExperience = previousExperience;
+    computeSortKeys();
   }
 
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    in.defaultReadObject();
+    computeSortKeys();
+  }
+
+  private void computeSortKeys() {
+    lastNameKey = sortKey(lastName);
+    firstNameKey = sortKey(firstName);
+  }
+
+  /**
+   * Packs the first 4 chars (16 bits each) into a long, padding short
+   * names with zeros. Compared unsigned, two keys that differ are in the
+   * same order as String.compareTo of the names; equal keys mean the
+   * names have to be compared in full.
+   */
+  static long sortKey(String name) {
+    long key = 0;
+    for (int i = 0; i < 4; i++) {
+      key <<= 16;
+      if (i < name.length())
+        key |= name.charAt(i);
+    }
+    return key;
+  }
+
+  @Override
   public String getFirstName() {
     return firstName;
   }
 
+  @Override
   public String getLastName() {
     return lastName;
   }
 
+  @Override
   public int getHeightInInches() {
     return heightInInches;
   }
 
+  @Override
   public boolean isPreviousExperience() {
     return previousExperience;
   }
@@ -36,13 +73,21 @@ public class Player implements Comparable<Player>, Serializable {
   @Override
   public int compareTo(Player other) {
     // We always want to sort by last name then first name
-    if (this.equals(other))
-        return 0;
+    if (lastNameKey != other.lastNameKey)
+        return Long.compareUnsigned(lastNameKey, other.lastNameKey);
     int lastNameCompare = this.lastName.compareTo(other.lastName);
     if (lastNameCompare != 0)
         return lastNameCompare;
-    else
-        return firstName.compareTo(other.firstName);
+    if (firstNameKey != other.firstNameKey)
+        return Long.compareUnsigned(firstNameKey, other.firstNameKey);
+    int firstNameCompare = firstName.compareTo(other.firstName);
+    if (firstNameCompare != 0)
+        return firstNameCompare;
+    // Same name: order by the other fields so different players who
+    //   share a name are not treated as duplicates (consistent with equals)
+    if (heightInInches != other.heightInInches)
+        return Integer.compare(heightInInches, other.heightInInches);
+    return Boolean.compare(previousExperience, other.previousExperience);
   }
 
   @Override
@@ -0,0 +1,410 @@
+package com.teamtreehouse.model;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.IntConsumer;
+
+/**
+ * A set of player numbers (ints from 0 up), compressed the way Roaring
+ * bitmaps are: numbers are grouped in blocks of 65536 by their top 16
+ * bits, and each block stores its low 16 bits either as a sorted array
+ * (up to 4096 numbers, 2 bytes each) or as a 65536 bit map (8 KB), so
+ * sparse and dense sets are both small.
+ *
+ * {@link #and} and {@link #or} combine whole blocks at once, a word of
+ * 64 numbers at a time where both are bit maps. They return new sets and
+ * leave both inputs as they were.
+ *
+ * Not safe to change from several threads at once.
+ */
+public class PlayerBitmap {
+    // Note: the most a block holds as an array; 4096 * 2 bytes = 8 KB,
+    //    the size of a bit map, so past this a bit map is smaller
+    static final int MAX_ARRAY_SIZE = 4096;
+
+    private char[] mKeys = new char[4]; // top 16 bits of each block, ascending
+    private Block[] mBlocks = new Block[4];
+    private int mBlockCount;
+
+    private static abstract class Block {
+        int mCardinality;
+
+        abstract boolean contains(char low);
+        abstract Block add(char low); // returns the block to keep, which may be a new one
+        abstract Block remove(char low);
+        abstract Block copy();
+        abstract void forEach(int high, IntConsumer action);
+    }
+
+    private static class ArrayBlock extends Block {
+        char[] mValues;
+
+        ArrayBlock(int capacity) {
+            mValues = new char[capacity];
+        }
+
+        ArrayBlock(char[] values, int cardinality) {
+            mValues = values;
+            mCardinality = cardinality;
+        }
+
+        @Override
+        boolean contains(char low) {
+            return Arrays.binarySearch(mValues, 0, mCardinality, low) >= 0;
+        }
+
+        @Override
+        Block add(char low) {
+            int at = Arrays.binarySearch(mValues, 0, mCardinality, low);
+            if (at >= 0)
+                return this;
+            if (mCardinality == MAX_ARRAY_SIZE)
+                return toBitmap().add(low);
+            at = -at - 1;
+            if (mCardinality == mValues.length)
+                mValues = Arrays.copyOf(mValues, Math.min(MAX_ARRAY_SIZE, Math.max(4, mCardinality * 2)));
+            System.arraycopy(mValues, at, mValues, at + 1, mCardinality - at);
+            mValues[at] = low;
+            mCardinality++;
+            return this;
+        }
+
+        @Override
+        Block remove(char low) {
+            int at = Arrays.binarySearch(mValues, 0, mCardinality, low);
+            if (at >= 0) {
+                System.arraycopy(mValues, at + 1, mValues, at, mCardinality - at - 1);
+                mCardinality--;
+            }
+            return this;
+        }
+
+        @Override
+        Block copy() {
+            return new ArrayBlock(Arrays.copyOf(mValues, mCardinality), mCardinality);
+        }
+
+        @Override
+        void forEach(int high, IntConsumer action) {
+            for (int i = 0; i < mCardinality; i++)
+                action.accept(high | mValues[i]);
+        }
+
+        BitmapBlock toBitmap() {
+            BitmapBlock bitmap = new BitmapBlock();
+            for (int i = 0; i < mCardinality; i++)
+                bitmap.mWords[mValues[i] >>> 6] |= 1L << mValues[i];
+            bitmap.mCardinality = mCardinality;
+            return bitmap;
+        }
+    }
+
+    private static class BitmapBlock extends Block {
+        final long[] mWords = new long[1024];
+
+        @Override
+        boolean contains(char low) {
+            return (mWords[low >>> 6] & (1L << low)) != 0;
+        }
+
+        @Override
+        Block add(char low) {
+            long before = mWords[low >>> 6];
+            mWords[low >>> 6] = before | (1L << low);
+            if (before != mWords[low >>> 6])
+                mCardinality++;
+            return this;
+        }
+
+        @Override
+        Block remove(char low) {
+            long before = mWords[low >>> 6];
+            mWords[low >>> 6] = before & ~(1L << low);
+            if (before != mWords[low >>> 6])
+                mCardinality--;
+            return mCardinality <= MAX_ARRAY_SIZE ? toArray() : this;
+        }
+
+        @Override
+        Block copy() {
+            BitmapBlock copy = new BitmapBlock();
+            System.arraycopy(mWords, 0, copy.mWords, 0, mWords.length);
+            copy.mCardinality = mCardinality;
+            return copy;
+        }
+
+        @Override
+        void forEach(int high, IntConsumer action) {
+            for (int i = 0; i < mWords.length; i++) {
+                long word = mWords[i];
+                while (word != 0) {
+                    action.accept(high | (i << 6) | Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+        }
+
+        ArrayBlock toArray() {
+            ArrayBlock array = new ArrayBlock(mCardinality);
+            int n = 0;
+            for (int i = 0; i < mWords.length; i++) {
+                long word = mWords[i];
+                while (word != 0) {
+                    array.mValues[n++] = (char) ((i << 6) | Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+            array.mCardinality = n;
+            return array;
+        }
+
+        /**
+         * @return the block's bit map or, if it holds few enough, an array
+         */
+        Block shrink() {
+            return mCardinality <= MAX_ARRAY_SIZE ? toArray() : this;
+        }
+    }
+
+    public void add(int number) {
+        char high = (char) (number >>> 16);
+        int at = find(high);
+        if (at < 0) {
+            at = -at - 1;
+            insertBlock(at, high, new ArrayBlock(4));
+        }
+        mBlocks[at] = mBlocks[at].add((char) number);
+    }
+
+    public void remove(int number) {
+        int at = find((char) (number >>> 16));
+        if (at < 0)
+            return;
+        mBlocks[at] = mBlocks[at].remove((char) number);
+        if (mBlocks[at].mCardinality == 0) {
+            System.arraycopy(mKeys, at + 1, mKeys, at, mBlockCount - at - 1);
+            System.arraycopy(mBlocks, at + 1, mBlocks, at, mBlockCount - at - 1);
+            mBlocks[--mBlockCount] = null;
+        }
+    }
+
+    public boolean contains(int number) {
+        int at = find((char) (number >>> 16));
+        return at >= 0 && mBlocks[at].contains((char) number);
+    }
+
+    /**
+     * @return how many numbers are in the set
+     */
+    public int cardinality() {
+        int cardinality = 0;
+        for (int i = 0; i < mBlockCount; i++)
+            cardinality += mBlocks[i].mCardinality;
+        return cardinality;
+    }
+
+    public boolean isEmpty() { return mBlockCount == 0; }
+
+    /**
+     * @return a new set of the same numbers
+     */
+    public PlayerBitmap copy() {
+        PlayerBitmap copy = new PlayerBitmap();
+        copy.mKeys = Arrays.copyOf(mKeys, Math.max(mBlockCount, 4));
+        copy.mBlocks = new Block[copy.mKeys.length];
+        for (int i = 0; i < mBlockCount; i++)
+            copy.mBlocks[i] = mBlocks[i].copy();
+        copy.mBlockCount = mBlockCount;
+        return copy;
+    }
+
+    /**
+     * Call the action with each number in the set, smallest first.
+     */
+    public void forEach(IntConsumer action) {
+        for (int i = 0; i < mBlockCount; i++)
+            mBlocks[i].forEach(mKeys[i] << 16, action);
+    }
+
+    /**
+     * @return a new set of the numbers in both this and the other set
+     */
+    public PlayerBitmap and(PlayerBitmap other) {
+        PlayerBitmap result = new PlayerBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < mBlockCount && j < other.mBlockCount) {
+            if (mKeys[i] < other.mKeys[j]) {
+                i++;
+            } else if (mKeys[i] > other.mKeys[j]) {
+                j++;
+            } else {
+                Block block = and(mBlocks[i], other.mBlocks[j]);
+                if (block.mCardinality > 0)
+                    result.insertBlock(result.mBlockCount, mKeys[i], block);
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return a new set of the numbers in this set, the other or both
+     */
+    public PlayerBitmap or(PlayerBitmap other) {
+        PlayerBitmap result = new PlayerBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < mBlockCount || j < other.mBlockCount) {
+            if (j == other.mBlockCount || (i < mBlockCount && mKeys[i] < other.mKeys[j])) {
+                result.insertBlock(result.mBlockCount, mKeys[i], mBlocks[i].copy());
+                i++;
+            } else if (i == mBlockCount || mKeys[i] > other.mKeys[j]) {
+                result.insertBlock(result.mBlockCount, other.mKeys[j], other.mBlocks[j].copy());
+                j++;
+            } else {
+                result.insertBlock(result.mBlockCount, mKeys[i], or(mBlocks[i], other.mBlocks[j]));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Same as or-ing the sets together one after another, but each block
+     * of the result is built once, in place, instead of being copied at
+     * every step (e.g. the players of each height in a range).
+     * @return a new set of the numbers in any of the sets
+     */
+    public static PlayerBitmap or(Collection<PlayerBitmap> sets) {
+        PlayerBitmap result = new PlayerBitmap();
+        TreeMap<Character, BitmapBlock> blocks = new TreeMap<>();
+        for (PlayerBitmap set : sets) {
+            for (int i = 0; i < set.mBlockCount; i++) {
+                BitmapBlock into = blocks.computeIfAbsent(set.mKeys[i], high -> new BitmapBlock());
+                Block block = set.mBlocks[i];
+                if (block instanceof BitmapBlock) {
+                    long[] words = ((BitmapBlock) block).mWords;
+                    for (int k = 0; k < words.length; k++)
+                        into.mWords[k] |= words[k];
+                } else {
+                    ArrayBlock array = (ArrayBlock) block;
+                    for (int k = 0; k < array.mCardinality; k++)
+                        into.mWords[array.mValues[k] >>> 6] |= 1L << array.mValues[k];
+                }
+            }
+        }
+        for (Map.Entry<Character, BitmapBlock> block : blocks.entrySet()) {
+            BitmapBlock bitmap = block.getValue();
+            int cardinality = 0;
+            for (long word : bitmap.mWords)
+                cardinality += Long.bitCount(word);
+            bitmap.mCardinality = cardinality;
+            result.insertBlock(result.mBlockCount, block.getKey(), bitmap.shrink());
+        }
+        return result;
+    }
+
+    private static Block and(Block a, Block b) {
+        if (a instanceof BitmapBlock && b instanceof BitmapBlock) {
+            BitmapBlock result = new BitmapBlock();
+            long[] x = ((BitmapBlock) a).mWords;
+            long[] y = ((BitmapBlock) b).mWords;
+            int cardinality = 0;
+            for (int k = 0; k < x.length; k++) {
+                result.mWords[k] = x[k] & y[k];
+                cardinality += Long.bitCount(result.mWords[k]);
+            }
+            result.mCardinality = cardinality;
+            return result.shrink();
+        }
+        if (a instanceof BitmapBlock) { // the array one first
+            Block swap = a;
+            a = b;
+            b = swap;
+        }
+        ArrayBlock array = (ArrayBlock) a;
+        char[] values = new char[Math.min(array.mCardinality, b.mCardinality)];
+        int n = 0;
+        if (b instanceof BitmapBlock) {
+            for (int k = 0; k < array.mCardinality; k++) {
+                if (b.contains(array.mValues[k]))
+                    values[n++] = array.mValues[k];
+            }
+        } else {
+            char[] other = ((ArrayBlock) b).mValues;
+            int k = 0;
+            int m = 0;
+            while (k < array.mCardinality && m < b.mCardinality) {
+                if (array.mValues[k] < other[m]) {
+                    k++;
+                } else if (array.mValues[k] > other[m]) {
+                    m++;
+                } else {
+                    values[n++] = array.mValues[k];
+                    k++;
+                    m++;
+                }
+            }
+        }
+        return new ArrayBlock(values, n);
+    }
+
+    private static Block or(Block a, Block b) {
+        if (a instanceof ArrayBlock && b instanceof ArrayBlock
+                && a.mCardinality + b.mCardinality <= MAX_ARRAY_SIZE) {
+            char[] x = ((ArrayBlock) a).mValues;
+            char[] y = ((ArrayBlock) b).mValues;
+            char[] values = new char[a.mCardinality + b.mCardinality];
+            int n = 0;
+            int k = 0;
+            int m = 0;
+            while (k < a.mCardinality || m < b.mCardinality) {
+                if (m == b.mCardinality || (k < a.mCardinality && x[k] < y[m]))
+                    values[n++] = x[k++];
+                else if (k == a.mCardinality || x[k] > y[m])
+                    values[n++] = y[m++];
+                else {
+                    values[n++] = x[k++];
+                    m++;
+                }
+            }
+            return new ArrayBlock(values, n);
+        }
+        BitmapBlock result = a instanceof BitmapBlock ? (BitmapBlock) a.copy() : ((ArrayBlock) a).toBitmap();
+        if (b instanceof BitmapBlock) {
+            long[] y = ((BitmapBlock) b).mWords;
+            int cardinality = 0;
+            for (int k = 0; k < y.length; k++) {
+                result.mWords[k] |= y[k];
+                cardinality += Long.bitCount(result.mWords[k]);
+            }
+            result.mCardinality = cardinality;
+        } else {
+            ArrayBlock array = (ArrayBlock) b;
+            for (int k = 0; k < array.mCardinality; k++)
+                result.add(array.mValues[k]);
+        }
+        return result;
+    }
+
+    private int find(char high) {
+        return Arrays.binarySearch(mKeys, 0, mBlockCount, high);
+    }
+
+    private void insertBlock(int at, char high, Block block) {
+        if (mBlockCount == mKeys.length) {
+            mKeys = Arrays.copyOf(mKeys, mBlockCount * 2);
+            mBlocks = Arrays.copyOf(mBlocks, mBlockCount * 2);
+        }
+        System.arraycopy(mKeys, at, mKeys, at + 1, mBlockCount - at);
+        System.arraycopy(mBlocks, at, mBlocks, at + 1, mBlockCount - at);
+        mKeys[at] = high;
+        mBlocks[at] = block;
+        mBlockCount++;
+    }
+}
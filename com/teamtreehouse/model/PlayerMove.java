@@ -0,0 +1,28 @@
+package com.teamtreehouse.model;
+
+/**
+ * One player moving from one team to another, as part of a batch of
+ * moves made together by {@link League#movePlayers}. Either team may be
+ * the league's unassigned pool.
+ */
+public class PlayerMove {
+    private final Player mPlayer;
+    private final Team mFromTeam;
+    private final Team mToTeam;
+
+    public PlayerMove(Player player, Team fromTeam, Team toTeam) {
+        mPlayer = player;
+        mFromTeam = fromTeam;
+        mToTeam = toTeam;
+    }
+
+    public Player getPlayer() { return mPlayer; }
+    public Team getFromTeam() { return mFromTeam; }
+    public Team getToTeam() { return mToTeam; }
+
+    @Override
+    public String toString() {
+        return String.format("%s, %s (%d\") from %s to %s", mPlayer.getLastName(), mPlayer.getFirstName(),
+                mPlayer.getHeightInInches(), mFromTeam.getName(), mToTeam.getName());
+    }
+}
@@ -0,0 +1,138 @@
+package com.teamtreehouse.model;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Players sorted by lower case last name and by lower case first name,
+ * so a name prefix is found with one tree lookup instead of a scan.
+ * Kept current by its {@link Team} as players are added and removed.
+ *
+ * Searches are not case sensitive and match the start of a name:
+ *   "smi"      players whose last or first name starts with smi
+ *   "smi, jo"  last name starts with smi and first name with jo
+ * Safe to search while another thread changes the team.
+ */
+public class PlayerNameIndex {
+    private static class Entry implements Comparable<Entry> {
+        final String mKey;
+        final Player mPlayer;
+
+        Entry(String key, Player player) {
+            mKey = key;
+            mPlayer = player;
+        }
+
+        @Override
+        public int compareTo(Entry that) {
+            int keyCompare = mKey.compareTo(that.mKey);
+            if (keyCompare != 0)
+                return keyCompare;
+            if (mPlayer == null || that.mPlayer == null) // range bound
+                return mPlayer == that.mPlayer ? 0 : mPlayer == null ? -1 : 1;
+            return mPlayer.compareTo(that.mPlayer);
+        }
+    }
+
+    private final TreeSet<Entry> mByLastName;
+    private final TreeSet<Entry> mByFirstName;
+
+    public PlayerNameIndex() {
+        mByLastName = new TreeSet<>();
+        mByFirstName = new TreeSet<>();
+    }
+
+    public PlayerNameIndex(Iterable<Player> players) {
+        this();
+        for (Player player : players)
+            add(player);
+    }
+
+    public synchronized void add(Player player) {
+        mByLastName.add(new Entry(key(player.getLastName()), player));
+        mByFirstName.add(new Entry(key(player.getFirstName()), player));
+    }
+
+    public synchronized void remove(Player player) {
+        mByLastName.remove(new Entry(key(player.getLastName()), player));
+        mByFirstName.remove(new Entry(key(player.getFirstName()), player));
+    }
+
+    /**
+     * Remove and add many players under one lock.
+     */
+    public synchronized void update(Iterable<Player> removed, Iterable<Player> added) {
+        for (Player player : removed)
+            remove(player);
+        for (Player player : added)
+            add(player);
+    }
+
+    public synchronized int size() { return mByLastName.size(); }
+
+    /**
+     * Players matching the search, last name matches first (in name
+     * order) followed by players matched only by their first name.
+     * Only walks as many entries as it returns, so the time taken
+     * depends on the limit rather than the number of players.
+     * @param query name prefix, or "last, first" prefixes
+     * @param limit most players to return; ask for one more than will
+     *   be shown to find out whether there are more matches
+     * @return matching players, empty for a blank query
+     */
+    public synchronized List<Player> search(String query, int limit) {
+        List<Player> results = new ArrayList<>();
+        int comma = query.indexOf(',');
+        if (comma >= 0) {
+            String last = key(query.substring(0, comma).trim());
+            String first = key(query.substring(comma + 1).trim());
+            if (last.isEmpty() && first.isEmpty())
+                return results;
+            // Note: walks the last name matches checking first names,
+            //    unless only a first name was given
+            boolean byLast = !last.isEmpty();
+            for (Entry entry : range(byLast ? mByLastName : mByFirstName, byLast ? last : first)) {
+                if (results.size() >= limit)
+                    break;
+                if (entry.mPlayer.getFirstName().regionMatches(true, 0, first, 0, first.length()))
+                    results.add(entry.mPlayer);
+            }
+            return results;
+        }
+
+        String prefix = key(query.trim());
+        if (prefix.isEmpty())
+            return results;
+        for (Entry entry : range(mByLastName, prefix)) {
+            if (results.size() >= limit)
+                return results;
+            results.add(entry.mPlayer);
+        }
+        // Note: a player can match by both names, skip the ones already found
+        Set<Player> found = new HashSet<>(results);
+        for (Entry entry : range(mByFirstName, prefix)) {
+            if (results.size() >= limit)
+                break;
+            if (!found.contains(entry.mPlayer))
+                results.add(entry.mPlayer);
+        }
+        return results;
+    }
+
+    /**
+     * @return entries whose key starts with the prefix (a view, not a copy)
+     */
+    private static NavigableSet<Entry> range(TreeSet<Entry> entries, String prefix) {
+        // every key starting with the prefix sorts before prefix + '\uffff'
+        return entries.subSet(new Entry(prefix, null), true, new Entry(prefix + '\uffff', null), false);
+    }
+
+    private static String key(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,31 @@
+package com.teamtreehouse.model;
+
+import java.util.Comparator;
+
+/**
+ * The orders a team's players can be listed in (see
+ * {@link Team#getPlayersInOrder}). Players who tie, e.g. are the same
+ * height, stay in name order.
+ */
+public enum PlayerOrder {
+    /** last name, then first name */
+    NAME(Comparator.naturalOrder()),
+    /** tallest first */
+    HEIGHT((a, b) -> {
+        int byHeight = Integer.compare(b.getHeightInInches(), a.getHeightInInches());
+        return byHeight != 0 ? byHeight : a.compareTo(b);
+    }),
+    /** experienced players first */
+    EXPERIENCE((a, b) -> {
+        int byExperience = Boolean.compare(b.isPreviousExperience(), a.isPreviousExperience());
+        return byExperience != 0 ? byExperience : a.compareTo(b);
+    });
+
+    private final Comparator<Player> mComparator;
+
+    PlayerOrder(Comparator<Player> comparator) {
+        mComparator = comparator;
+    }
+
+    public Comparator<Player> comparator() { return mComparator; }
+}
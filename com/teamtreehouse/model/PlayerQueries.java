@@ -0,0 +1,216 @@
+package com.teamtreehouse.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Answers questions like "unassigned, experienced, 42 to 45 inches"
+ * from {@link PlayerBitmap} indexes instead of scanning the players,
+ * kept current by listening to every change made to the league.
+ *
+ * Each player registered is given a number, and there is one bitmap of
+ * player numbers per height, one of experienced players and one per team
+ * (the unassigned pool included). A {@link Query} combines them with
+ * AND and OR:
+ *
+ *   queries.find(queries.onTeam(league.getUnassignedPool())
+ *           .and(queries.experienced(true))
+ *           .and(queries.heightBetween(42, 45)))
+ *
+ * Safe to query while the league changes. Each bitmap has its own lock
+ * (its monitor), held only to change it or to copy it for a query, so
+ * changes to different teams don't wait on each other or on queries.
+ * Each bitmap a query reads is as it was between two changes, but two
+ * of them may be a change apart.
+ */
+public class PlayerQueries implements LeagueListener {
+    private final Team mUnassigned;
+    // Note: players are only registered holding the unassigned pool's
+    //    lock, so one at a time; mPlayers is replaced once filled
+    private final Map<Player, Integer> mNumbers = new ConcurrentHashMap<>();
+    private volatile Player[] mPlayers = new Player[1024]; // by number
+    private int mPlayerCount;
+    private final PlayerBitmap mAll = new PlayerBitmap();
+    private final PlayerBitmap mExperienced = new PlayerBitmap();
+    private final PlayerBitmap mInexperienced = new PlayerBitmap();
+    private final ConcurrentSkipListMap<Integer, PlayerBitmap> mByHeight = new ConcurrentSkipListMap<>();
+    private final Map<Team, PlayerBitmap> mByTeam = new ConcurrentHashMap<>(); // and the unassigned pool
+
+    /**
+     * A set of players to look for, made from the index's bitmaps and
+     * worked out when it is run by {@link #find} or {@link #count}.
+     */
+    public interface Query {
+        // Note: returns a set of its own, the index's bitmaps are copied
+        //    holding their locks; it may be changed
+        PlayerBitmap evaluate();
+
+        /**
+         * @return players matching both queries
+         */
+        default Query and(Query other) {
+            return () -> evaluate().and(other.evaluate());
+        }
+
+        /**
+         * @return players matching either query
+         */
+        default Query or(Query other) {
+            return () -> evaluate().or(other.evaluate());
+        }
+    }
+
+    /**
+     * Start indexing a league, including the players and teams it
+     * already has.
+     */
+    public PlayerQueries(League league) {
+        mUnassigned = league.getUnassignedPool();
+        mByTeam.put(mUnassigned, new PlayerBitmap());
+        // Note: with the league locked, no change can be missed or
+        //    counted twice between indexing it and listening to it
+        league.withLeagueLocked(() -> {
+            for (Player player : league.getUnassignedPlayers())
+                playerRegistered(player);
+            for (Team team : league.getTeams()) {
+                teamCreated(team);
+                for (Player player : team.getPlayers()) {
+                    playerRegistered(player);
+                    playerAssigned(player, team);
+                }
+            }
+            league.addListener(this);
+            return null;
+        });
+    }
+
+    public Query all() {
+        return () -> copy(mAll);
+    }
+
+    public Query experienced(boolean previousExperience) {
+        return () -> copy(previousExperience ? mExperienced : mInexperienced);
+    }
+
+    public Query height(int heightInInches) {
+        return heightBetween(heightInInches, heightInInches);
+    }
+
+    /**
+     * @return players from the shortest to the tallest height given
+     */
+    public Query heightBetween(int shortest, int tallest) {
+        return () -> {
+            Collection<PlayerBitmap> heights = mByHeight.subMap(shortest, true, tallest, true).values();
+            List<PlayerBitmap> copies = new ArrayList<>(heights.size());
+            for (PlayerBitmap height : heights)
+                copies.add(copy(height));
+            return copies.size() == 1 ? copies.get(0) : PlayerBitmap.or(copies);
+        };
+    }
+
+    /**
+     * @param team a team, or the league's unassigned pool
+     */
+    public Query onTeam(Team team) {
+        return () -> {
+            PlayerBitmap players = mByTeam.get(team);
+            return players != null ? copy(players) : new PlayerBitmap();
+        };
+    }
+
+    /**
+     * @return the players matching the query, in the order they were
+     *   registered (sort them if they're to be shown in another order)
+     */
+    public List<Player> find(Query query) {
+        PlayerBitmap numbers = query.evaluate();
+        Player[] players = mPlayers;
+        List<Player> found = new ArrayList<>(numbers.cardinality());
+        numbers.forEach(number -> found.add(players[number]));
+        return found;
+    }
+
+    public int count(Query query) {
+        return query.evaluate().cardinality();
+    }
+
+    private static PlayerBitmap copy(PlayerBitmap bitmap) {
+        synchronized (bitmap) {
+            return bitmap.copy();
+        }
+    }
+
+    private static void add(PlayerBitmap bitmap, int number) {
+        synchronized (bitmap) {
+            bitmap.add(number);
+        }
+    }
+
+    private static void remove(PlayerBitmap bitmap, int number) {
+        synchronized (bitmap) {
+            bitmap.remove(number);
+        }
+    }
+
+    @Override
+    public void playerRegistered(Player player) {
+        if (mNumbers.containsKey(player))
+            return;
+        int number = mPlayerCount++;
+        Player[] players = mPlayers;
+        if (number == players.length)
+            players = Arrays.copyOf(players, number * 2);
+        players[number] = player;
+        mPlayers = players;
+        mNumbers.put(player, number);
+        add(mAll, number);
+        add(player.isPreviousExperience() ? mExperienced : mInexperienced, number);
+        add(mByHeight.computeIfAbsent(player.getHeightInInches(), height -> new PlayerBitmap()), number);
+        add(mByTeam.get(mUnassigned), number);
+    }
+
+    @Override
+    public void teamCreated(Team team) {
+        mByTeam.putIfAbsent(team, new PlayerBitmap());
+    }
+
+    @Override
+    public void teamRemoved(Team team) {
+        mByTeam.remove(team);
+    }
+
+    @Override
+    public void playerAssigned(Player player, Team team) {
+        move(player, mUnassigned, team);
+    }
+
+    @Override
+    public void playerUnassigned(Player player, Team team) {
+        move(player, team, mUnassigned);
+    }
+
+    @Override
+    public void playerTransferred(Player player, Team fromTeam, Team toTeam) {
+        move(player, fromTeam, toTeam);
+    }
+
+    @Override
+    public void playersMoved(List<PlayerMove> moves, Team unassignedPool) {
+        for (PlayerMove move : moves)
+            move(move.getPlayer(), move.getFromTeam(), move.getToTeam());
+    }
+
+    // Note: called holding both teams' locks, so a team's bitmap is only
+    //    changed by one move at a time
+    private void move(Player player, Team fromTeam, Team toTeam) {
+        int number = mNumbers.get(player);
+        remove(mByTeam.computeIfAbsent(fromTeam, team -> new PlayerBitmap()), number);
+        add(mByTeam.computeIfAbsent(toTeam, team -> new PlayerBitmap()), number);
+    }
+}
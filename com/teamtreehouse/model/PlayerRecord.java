@@ -0,0 +1,13 @@
+package com.teamtreehouse.model;
+
+/**
+ * Read access to one player's details, whether held in a {@link Player}
+ * object or read in place from some more compact form (e.g. a decoded
+ * league), so reports can print either without making Player objects.
+ */
+public interface PlayerRecord {
+    String getFirstName();
+    String getLastName();
+    int getHeightInInches();
+    boolean isPreviousExperience();
+}
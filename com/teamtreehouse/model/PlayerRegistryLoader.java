@@ -0,0 +1,374 @@
+package com.teamtreehouse.model;
+
+import com.teamtreehouse.metrics.Metrics;
+import com.teamtreehouse.metrics.OperationMetrics;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Streams player records out of a registry file without building an
+ * intermediate array of players.
+ * Three formats are supported:
+ *   - CSV: "firstName,lastName,heightInInches,previousExperience"
+ *     (one player per line, an optional header line is skipped)
+ *   - binary: the compact form written by {@link #writeBinary}
+ *   - mapped: the fixed width records of a {@link MappedPlayerRegistry}
+ * The format is detected from the first bytes of the file.
+ */
+public class PlayerRegistryLoader {
+
+    /** first bytes of a binary registry file ("TTPR") */
+    static final int BINARY_MAGIC = 0x54545052;
+    static final byte BINARY_VERSION = 1;
+    private static final int BINARY_HEADER_LENGTH = 5;
+    private static final int CSV_CHUNK_SIZE = 64 * 1024;
+    private static final int BINARY_WINDOW_SIZE = 64 * 1024 * 1024;
+    private static final int MAX_NAME_BYTES = 255;
+    private static final int MAX_HEIGHT = 255; // one byte in the binary and mapped formats
+    private static final OperationMetrics LOAD = Metrics.operation("registry.load");
+
+    private final int[] mFieldBounds = new int[8]; // start/end of each of the 4 csv fields
+
+    /**
+     * Receives each player record as it is read.
+     */
+    public interface RowHandler {
+        void row(String firstName, String lastName, int heightInInches, boolean previousExperience);
+    }
+
+    /**
+     * Throughput and memory figures for one load, used to size the JVM.
+     */
+    public static class Statistics {
+        private final long mRows;
+        private final long mElapsedNanos;
+        private final long mPeakHeapBytes;
+
+        Statistics(long rows, long elapsedNanos, long peakHeapBytes) {
+            mRows = rows;
+            mElapsedNanos = elapsedNanos;
+            mPeakHeapBytes = peakHeapBytes;
+        }
+
+        public long getRows() { return mRows; }
+        public long getElapsedNanos() { return mElapsedNanos; }
+        public long getPeakHeapBytes() { return mPeakHeapBytes; }
+
+        public double getRowsPerSecond() {
+            if (mElapsedNanos < 1)
+                return 0d;
+            return mRows * 1_000_000_000d / mElapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d players loaded in %.3f s (%.0f rows/sec, peak heap %.1f MB)",
+                    mRows, mElapsedNanos / 1_000_000_000d, getRowsPerSecond(),
+                    mPeakHeapBytes / (1024d * 1024d));
+        }
+    }
+
+    /**
+     * @param players collection to add each loaded player to
+     * @return a handler creating a Player for each row
+     */
+    public static RowHandler into(Collection<Player> players) {
+        return (firstName, lastName, height, experienced)
+                -> players.add(new Player(firstName, lastName, height, experienced));
+    }
+
+    /**
+     * Load a registry file, detecting its format.
+     * @param file CSV, binary or mapped registry file
+     * @param handler receives every record in file order
+     * @return statistics for the load
+     * @throws IOException if the file cannot be read or a record is malformed
+     */
+    public Statistics load(Path file, RowHandler handler) throws IOException {
+        return LOAD.time(() -> {
+            int magic = magicOf(file);
+            if (magic == BINARY_MAGIC)
+                return loadBinary(file, handler);
+            if (magic == MappedPlayerRegistry.MAGIC)
+                return loadMapped(file, handler);
+            return loadCsv(file, handler);
+        });
+    }
+
+    /**
+     * @return the file's first 4 bytes, or 0 if it is shorter
+     */
+    private int magicOf(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(4);
+            while (header.hasRemaining() && channel.read(header) > 0) {
+                // keep reading until the magic number is complete or the file ends
+            }
+            return header.hasRemaining() ? 0 : header.getInt(0);
+        }
+    }
+
+    /**
+     * Load a mapped registry, reading the records straight from the mapping.
+     * @param file registry file written by {@link MappedPlayerRegistry#create}
+     * @param handler receives every record in file order
+     * @return statistics for the load
+     * @throws IOException if the file cannot be read
+     */
+    public Statistics loadMapped(Path file, RowHandler handler) throws IOException {
+        resetPeakHeap();
+        long start = System.nanoTime();
+        MappedPlayerRegistry registry = MappedPlayerRegistry.open(file);
+        registry.forEach(handler);
+        return new Statistics(registry.size(), System.nanoTime() - start, peakHeap());
+    }
+
+    /**
+     * Load a CSV registry, reading the file through a fixed size buffer
+     * so memory use does not depend on the size of the file.
+     * @param file CSV registry file
+     * @param handler receives every record in file order
+     * @return statistics for the load
+     * @throws IOException if the file cannot be read or a record is malformed
+     */
+    public Statistics loadCsv(Path file, RowHandler handler) throws IOException {
+        resetPeakHeap();
+        long start = System.nanoTime();
+        long rows = 0;
+        long lineNumber = 0;
+        byte[] line = new byte[256];
+        int lineLength = 0;
+        ByteBuffer buffer = ByteBuffer.allocateDirect(CSV_CHUNK_SIZE);
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            boolean endOfFile = false;
+            while (!endOfFile) {
+                buffer.clear();
+                endOfFile = channel.read(buffer) < 0;
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    byte b = buffer.get();
+                    if (b == '\n') {
+                        lineNumber++;
+                        if (parseCsvLine(line, lineLength, lineNumber, handler))
+                            rows++;
+                        lineLength = 0;
+                    } else {
+                        if (lineLength == line.length)
+                            line = Arrays.copyOf(line, line.length * 2);
+                        line[lineLength++] = b;
+                    }
+                }
+            }
+            if (lineLength > 0 && parseCsvLine(line, lineLength, lineNumber + 1, handler))
+                rows++;
+        }
+        return new Statistics(rows, System.nanoTime() - start, peakHeap());
+    }
+
+    /**
+     * @return true if the line held a player, false for blank and header lines
+     */
+    private boolean parseCsvLine(byte[] line, int length, long lineNumber, RowHandler handler)
+            throws IOException {
+        if (length > 0 && line[length - 1] == '\r')
+            length--;
+        int[] bounds = mFieldBounds;
+        int field = 0;
+        int fieldStart = 0;
+        for (int i = 0; i <= length; i++) {
+            if (i == length || line[i] == ',') {
+                if (field == 4)
+                    throw malformed(lineNumber, "too many fields");
+                bounds[field * 2] = fieldStart;
+                bounds[field * 2 + 1] = i;
+                field++;
+                fieldStart = i + 1;
+            }
+        }
+        if (field == 1 && trimmedLength(line, bounds[0], bounds[1]) == 0)
+            return false; // blank line
+        if (field != 4)
+            throw malformed(lineNumber, "expected 4 fields");
+
+        String firstName = trimmedString(line, bounds[0], bounds[1]);
+        String lastName = trimmedString(line, bounds[2], bounds[3]);
+        String height = trimmedString(line, bounds[4], bounds[5]);
+        String experience = trimmedString(line, bounds[6], bounds[7]).toLowerCase();
+        int heightInInches;
+        try {
+            heightInInches = Integer.parseInt(height);
+        } catch (NumberFormatException ex) {
+            if (lineNumber == 1)
+                return false; // header line
+            throw malformed(lineNumber, "height is not a number");
+        }
+        if (heightInInches < 0 || heightInInches > MAX_HEIGHT)
+            throw malformed(lineNumber, "height must be from 0 to " + MAX_HEIGHT);
+        boolean previousExperience;
+        switch (experience) {
+            case "true": case "yes": case "y": case "1":
+                previousExperience = true;
+                break;
+            case "false": case "no": case "n": case "0":
+                previousExperience = false;
+                break;
+            default:
+                throw malformed(lineNumber, "previous experience must be true or false");
+        }
+        handler.row(firstName, lastName, heightInInches, previousExperience);
+        return true;
+    }
+
+    private static int trimmedLength(byte[] line, int start, int end) {
+        while (start < end && isSpace(line[start]))
+            start++;
+        while (end > start && isSpace(line[end - 1]))
+            end--;
+        return end - start;
+    }
+
+    private static String trimmedString(byte[] line, int start, int end) {
+        while (start < end && isSpace(line[start]))
+            start++;
+        while (end > start && isSpace(line[end - 1]))
+            end--;
+        return new String(line, start, end - start, StandardCharsets.UTF_8);
+    }
+
+    // Note: unsigned, the bytes of a multi-byte UTF-8 character are all
+    //    0x80 or more, which as signed bytes would compare below ' '
+    private static boolean isSpace(byte b) {
+        return (b & 0xff) <= ' ';
+    }
+
+    private static IOException malformed(long lineNumber, String reason) {
+        return new IOException(String.format("Malformed player record on line %d: %s", lineNumber, reason));
+    }
+
+    /**
+     * Load a binary registry, reading the file through a sliding
+     * memory-mapped window.
+     * @param file binary registry file written by {@link #writeBinary}
+     * @param handler receives every record in file order
+     * @return statistics for the load
+     * @throws IOException if the file cannot be read or a record is malformed
+     */
+    public Statistics loadBinary(Path file, RowHandler handler) throws IOException {
+        resetPeakHeap();
+        long start = System.nanoTime();
+        long rows = 0;
+        byte[] scratch = new byte[MAX_NAME_BYTES];
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            if (fileSize < BINARY_HEADER_LENGTH)
+                throw new IOException("Not a binary player registry: " + file);
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, BINARY_HEADER_LENGTH);
+            if (header.getInt() != BINARY_MAGIC)
+                throw new IOException("Not a binary player registry: " + file);
+            byte version = header.get();
+            if (version != BINARY_VERSION)
+                throw new IOException(String.format("Unsupported player registry version %d", version));
+
+            long position = BINARY_HEADER_LENGTH;
+            while (position < fileSize) {
+                long windowSize = Math.min(BINARY_WINDOW_SIZE, fileSize - position);
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, windowSize);
+                int recordStart = 0;
+                while (true) {
+                    // Record: [firstLen][first][lastLen][last][height][flags]
+                    int remaining = window.limit() - recordStart;
+                    if (remaining < 1)
+                        break;
+                    int firstLength = window.get(recordStart) & 0xff;
+                    if (remaining < firstLength + 2)
+                        break;
+                    int lastLength = window.get(recordStart + 1 + firstLength) & 0xff;
+                    int recordLength = firstLength + lastLength + 4;
+                    if (remaining < recordLength)
+                        break;
+                    window.position(recordStart + 1);
+                    window.get(scratch, 0, firstLength);
+                    String firstName = new String(scratch, 0, firstLength, StandardCharsets.UTF_8);
+                    window.get();
+                    window.get(scratch, 0, lastLength);
+                    String lastName = new String(scratch, 0, lastLength, StandardCharsets.UTF_8);
+                    int height = window.get() & 0xff;
+                    boolean experienced = (window.get() & 1) != 0;
+                    handler.row(firstName, lastName, height, experienced);
+                    rows++;
+                    recordStart += recordLength;
+                }
+                if (recordStart == 0)
+                    throw new IOException(String.format("Truncated player record at byte %d", position));
+                position += recordStart;
+            }
+        }
+        return new Statistics(rows, System.nanoTime() - start, peakHeap());
+    }
+
+    /**
+     * Write players in the compact binary registry format.
+     * @param players players to write
+     * @param file destination, replaced if it exists
+     * @throws IOException if the file cannot be written or a name is too long
+     */
+    public static void writeBinary(Iterable<Player> players, Path file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(file), CSV_CHUNK_SIZE))) {
+            out.writeInt(BINARY_MAGIC);
+            out.writeByte(BINARY_VERSION);
+            for (Player player : players) {
+                writeName(out, player.getFirstName());
+                writeName(out, player.getLastName());
+                if (player.getHeightInInches() < 0 || player.getHeightInInches() > MAX_HEIGHT)
+                    throw new IOException(String.format("Height out of range for %s, %s",
+                            player.getLastName(), player.getFirstName()));
+                out.writeByte(player.getHeightInInches());
+                out.writeByte(player.isPreviousExperience() ? 1 : 0);
+            }
+        }
+    }
+
+    private static void writeName(DataOutputStream out, String name) throws IOException {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_NAME_BYTES)
+            throw new IOException("Name too long for binary registry: " + name);
+        out.writeByte(bytes.length);
+        out.write(bytes);
+    }
+
+    private static void resetPeakHeap() {
+        for (MemoryPoolMXBean pool : heapPools())
+            pool.resetPeakUsage();
+    }
+
+    private static long peakHeap() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : heapPools())
+            peak += pool.getPeakUsage().getUsed();
+        return peak;
+    }
+
+    private static List<MemoryPoolMXBean> heapPools() {
+        List<MemoryPoolMXBean> pools = new ArrayList<>(ManagementFactory.getMemoryPoolMXBeans());
+        pools.removeIf(pool -> pool.getType() != MemoryType.HEAP);
+        return pools;
+    }
+}
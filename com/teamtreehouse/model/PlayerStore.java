@@ -0,0 +1,237 @@
+package com.teamtreehouse.model;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Players stored column by column (structure of arrays) instead of one
+ * object per player, for registries too large to hold as Player objects.
+ *
+ * Each player is a row number. Heights are an int[], previous experience
+ * is a bit set and names are ids into shared {@link NameDictionary}s,
+ * so a million players cost a few int arrays instead of a million
+ * objects and two million strings.
+ *
+ * Rows are read through a {@link Cursor}, a single reusable
+ * {@link PlayerRecord}, or turned into a Player on demand with
+ * {@link #toPlayer(int)}. A {@link League} keeps one with a row for
+ * every player registered, so its teams can list their players from
+ * the columns (see {@link Team#records}).
+ *
+ * Rows are only added by one thread at a time (a League adds them
+ * holding its unassigned pool's lock), and never changed once added.
+ * A row can be read from any thread that has seen it added, e.g. through
+ * a lock the adding thread has since released.
+ */
+public class PlayerStore implements PlayerRegistryLoader.RowHandler {
+    private final NameDictionary mFirstNames;
+    private final NameDictionary mLastNames;
+    // Note: volatile and only replaced once filled, so a row already
+    //    added can be read while the columns grow
+    private volatile int[] mFirstNameIds;
+    private volatile int[] mLastNameIds;
+    private volatile int[] mHeights;
+    private volatile long[] mExperienced; // a bit per row
+    private int mSize;
+
+    public PlayerStore() {
+        this(1024);
+    }
+
+    /**
+     * @param capacity number of players to make room for up front
+     */
+    public PlayerStore(int capacity) {
+        capacity = Math.max(capacity, 64);
+        mFirstNames = new NameDictionary();
+        mLastNames = new NameDictionary();
+        mFirstNameIds = new int[capacity];
+        mLastNameIds = new int[capacity];
+        mHeights = new int[capacity];
+        mExperienced = new long[(capacity + 63) / 64];
+    }
+
+    /**
+     * @return row number of the new player
+     */
+    public int add(String firstName, String lastName, int heightInInches, boolean previousExperience) {
+        int row = mSize;
+        int[] firstNameIds = mFirstNameIds;
+        int[] lastNameIds = mLastNameIds;
+        int[] heights = mHeights;
+        long[] experienced = mExperienced;
+        if (row == heights.length) {
+            int capacity = row * 2;
+            firstNameIds = Arrays.copyOf(firstNameIds, capacity);
+            lastNameIds = Arrays.copyOf(lastNameIds, capacity);
+            heights = Arrays.copyOf(heights, capacity);
+            experienced = Arrays.copyOf(experienced, (capacity + 63) / 64);
+        }
+        firstNameIds[row] = mFirstNames.idOf(firstName);
+        lastNameIds[row] = mLastNames.idOf(lastName);
+        heights[row] = heightInInches;
+        if (previousExperience)
+            experienced[row >>> 6] |= 1L << row;
+        mFirstNameIds = firstNameIds;
+        mLastNameIds = lastNameIds;
+        mHeights = heights;
+        mExperienced = experienced;
+        mSize = row + 1;
+        return row;
+    }
+
+    public int add(PlayerRecord player) {
+        return add(player.getFirstName(), player.getLastName(),
+                player.getHeightInInches(), player.isPreviousExperience());
+    }
+
+    /**
+     * Lets a {@link PlayerRegistryLoader} load straight into the store.
+     */
+    @Override
+    public void row(String firstName, String lastName, int heightInInches, boolean previousExperience) {
+        add(firstName, lastName, heightInInches, previousExperience);
+    }
+
+    /**
+     * Note: only up to date on the thread adding rows.
+     */
+    public int size() { return mSize; }
+
+    public String getFirstName(int row) { return mFirstNames.nameOf(mFirstNameIds[row]); }
+    public String getLastName(int row) { return mLastNames.nameOf(mLastNameIds[row]); }
+    public int getFirstNameId(int row) { return mFirstNameIds[row]; }
+    public int getLastNameId(int row) { return mLastNameIds[row]; }
+    public int getHeightInInches(int row) { return mHeights[row]; }
+    public boolean isPreviousExperience(int row) { return (mExperienced[row >>> 6] & 1L << row) != 0; }
+
+    public NameDictionary getFirstNames() { return mFirstNames; }
+    public NameDictionary getLastNames() { return mLastNames; }
+
+    /**
+     * @return a new Player object holding the row's details
+     */
+    public Player toPlayer(int row) {
+        return new Player(getFirstName(row), getLastName(row), getHeightInInches(row), isPreviousExperience(row));
+    }
+
+    /**
+     * @return a reusable view of the rows, see {@link Cursor}
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * A PlayerRecord that can be moved from row to row, so code written
+     * against PlayerRecord (e.g. roster printing) can walk the store
+     * without creating an object per player.
+     */
+    public class Cursor implements PlayerRecord {
+        private int mRow = -1;
+
+        /**
+         * @return this cursor, now reading the row
+         */
+        public Cursor moveTo(int row) {
+            if (row < 0 || row >= mHeights.length)
+                throw new IndexOutOfBoundsException("row " + row);
+            mRow = row;
+            return this;
+        }
+
+        public int getRow() { return mRow; }
+
+        @Override public String getFirstName() { return PlayerStore.this.getFirstName(mRow); }
+        @Override public String getLastName() { return PlayerStore.this.getLastName(mRow); }
+        @Override public int getHeightInInches() { return PlayerStore.this.getHeightInInches(mRow); }
+        @Override public boolean isPreviousExperience() { return PlayerStore.this.isPreviousExperience(mRow); }
+    }
+
+    /**
+     * Note: every step of the iteration returns the same Cursor,
+     *    moved to the next row, so records must not be kept.
+     * @param rows read-only while iterated
+     * @return the rows' players, without creating an object per player
+     */
+    public Iterable<PlayerRecord> records(int[] rows) {
+        return () -> new Iterator<PlayerRecord>() {
+            private final Cursor mCursor = new Cursor();
+            private int mNext;
+
+            @Override
+            public boolean hasNext() { return mNext < rows.length; }
+
+            @Override
+            public PlayerRecord next() {
+                if (mNext >= rows.length)
+                    throw new NoSuchElementException();
+                return mCursor.moveTo(rows[mNext++]);
+            }
+        };
+    }
+
+    /**
+     * Put rows in the order, the same order the order's comparator puts
+     * the rows' Players in. Names are compared by id first, so rows
+     * sharing a name don't compare the strings.
+     */
+    public void sort(int[] rows, PlayerOrder order) {
+        if (rows.length > 1)
+            mergeSort(rows.clone(), rows, 0, rows.length, order);
+    }
+
+    // Note: sorts from[start, end) into to[start, end), a stable sort
+    private void mergeSort(int[] from, int[] to, int start, int end, PlayerOrder order) {
+        if (end - start < 8) {
+            for (int i = start + 1; i < end; i++) {
+                int row = to[i];
+                int j = i;
+                for (; j > start && compare(to[j - 1], row, order) > 0; j--)
+                    to[j] = to[j - 1];
+                to[j] = row;
+            }
+            return;
+        }
+        int middle = (start + end) >>> 1;
+        mergeSort(to, from, start, middle, order);
+        mergeSort(to, from, middle, end, order);
+        for (int i = start, left = start, right = middle; i < end; i++) {
+            if (right >= end || left < middle && compare(from[left], from[right], order) <= 0)
+                to[i] = from[left++];
+            else
+                to[i] = from[right++];
+        }
+    }
+
+    private int compare(int a, int b, PlayerOrder order) {
+        switch (order) {
+            case HEIGHT:
+                int byHeight = Integer.compare(getHeightInInches(b), getHeightInInches(a));
+                return byHeight != 0 ? byHeight : compareNames(a, b);
+            case EXPERIENCE:
+                int byExperience = Boolean.compare(isPreviousExperience(b), isPreviousExperience(a));
+                return byExperience != 0 ? byExperience : compareNames(a, b);
+            default:
+                return compareNames(a, b);
+        }
+    }
+
+    // Note: the same order as Player.compareTo
+    private int compareNames(int a, int b) {
+        if (getLastNameId(a) != getLastNameId(b)) {
+            int byLastName = getLastName(a).compareTo(getLastName(b));
+            if (byLastName != 0)
+                return byLastName;
+        }
+        if (getFirstNameId(a) != getFirstNameId(b)) {
+            int byFirstName = getFirstName(a).compareTo(getFirstName(b));
+            if (byFirstName != 0)
+                return byFirstName;
+        }
+        if (getHeightInInches(a) != getHeightInInches(b))
+            return Integer.compare(getHeightInInches(a), getHeightInInches(b));
+        return Boolean.compare(isPreviousExperience(a), isPreviousExperience(b));
+    }
+}
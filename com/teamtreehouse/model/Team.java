@@ -1,47 +1,372 @@
 package com.teamtreehouse.model;
 
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.SortedSet;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 
 public class Team implements Comparable<Team> {
+    // Note: teams are always locked in the order they were created,
+    //    so two organizers moving players can't deadlock
+    private static final AtomicLong sNextLockOrder = new AtomicLong();
+    private static final int NO_ROW = -1;
+
     private String mName;
     private String mCoach;
-    private Set<Player> mPlayers;
+    // Note: a concurrent map so the roster can be read while another
+    //    organizer changes it; changes are only made holding mLock.
+    //    Each player maps to its row in mStore, or NO_ROW without one.
+    private ConcurrentSkipListMap<Player, Integer> mPlayers;
+    private Set<Player> mPlayersView;
+    // Running totals, kept in step with mPlayers by addPlayer/removePlayer
+    //    so the aggregate getters don't need to walk the roster
+    private int mCount; // the skip list's size() walks the whole list
+    private long mHeightSum;
+    private int mExperiencedCount;
+    private HeightHistogram mHeights;
+    private NameLengths mFirstNameLengths = new NameLengths();
+    private NameLengths mLastNameLengths = new NameLengths();
+    private PlayerNameIndex mNameIndex; // Note: isn't created unless it's needed
+    // The roster in PlayerOrder.HEIGHT and EXPERIENCE order, kept in step
+    //    with mPlayers once created (mPlayers itself is in name order)
+    private volatile ConcurrentSkipListSet<Player> mByHeight;
+    private volatile ConcurrentSkipListSet<Player> mByExperience;
+    // Note: only changed holding mLock, volatile so it can be read without it
+    private volatile long mVersion;
+    // The league's players, and which of its rows are on the team (null
+    //    for a team that isn't in a league), so reports can list the
+    //    players from the store's columns
+    private final PlayerStore mStore;
+    private final PlayerBitmap mRows;
+    final ReentrantLock mLock;
+    final long mLockOrder;
     
     public Team( String teamName, String coachName){
+        this(teamName, coachName, null);
+    }
+    
+    /**
+     * @param store the league's players, which every player added must
+     *   have a row in
+     */
+    Team( String teamName, String coachName, PlayerStore store){
         mName= teamName;
         mCoach = coachName;
-        mPlayers = new TreeSet();
+        mPlayers = new ConcurrentSkipListMap<>();
+        mPlayersView = Collections.unmodifiableSet(new AbstractSet<Player>() {
+            @Override
+            public Iterator<Player> iterator() { return mPlayers.keySet().iterator(); }
+            @Override
+            public int size() { return getCount_AllPlayers(); }
+            @Override
+            public boolean contains(Object o) { return mPlayers.containsKey(o); }
+        });
+        mStore = store;
+        mRows = store != null ? new PlayerBitmap() : null;
+        mHeights = new HeightHistogram(true);
+        mLock = new ReentrantLock();
+        mLockOrder = sNextLockOrder.getAndIncrement();
     }
 
     public String getName() { return mName; }
     public String getCoach() { return mCoach; }
-    public Set<Player> getPlayers() { return mPlayers; }
+    // Note: read-only, all changes must go through addPlayer/removePlayer
+    //    to keep the running totals correct. Safe to iterate while the
+    //    team changes (the iterator may or may not see the change).
+    public Set<Player> getPlayers() { return mPlayersView; }
+    
+    /**
+     * @return the team's player equal to the one given, or null
+     *   (e.g. to find the instance on the team from a copy)
+     */
+    public Player findPlayer( Player player){
+        Player found = mPlayers.ceilingKey(player);
+        return player.equals(found) ? found : null;
+    }
     
+    /**
+     * @return the team's players with exactly this name, in order of
+     *   height (read-only view, usually of a single player)
+     */
+    public SortedSet<Player> findPlayersNamed( String firstName, String lastName){
+        return Collections.unmodifiableSortedSet(mPlayers.navigableKeySet().subSet(
+                new Player(firstName, lastName, Integer.MIN_VALUE, false), true,
+                new Player(firstName, lastName, Integer.MAX_VALUE, true), true));
+    }
+    
+    /**
+     * Note: only for a team that isn't in a league, a league's teams
+     *    are changed through the League.
+     */
     public boolean addPlayer( Player newPlayer){
-        return mPlayers.add(newPlayer);
+        if (mStore != null)
+            throw new IllegalStateException(mName + " is in a league, add players through the league");
+        return addPlayer(newPlayer, NO_ROW);
+    }
+    
+    /**
+     * @param row the player's row in the league's store
+     */
+    boolean addPlayer( Player newPlayer, int row){
+        mLock.lock();
+        try {
+            if (mPlayers.putIfAbsent(newPlayer, row) != null)
+                return false;
+            if (mRows != null)
+                mRows.add(row);
+            mCount++;
+            mHeightSum += newPlayer.getHeightInInches();
+            if (newPlayer.isPreviousExperience())
+                mExperiencedCount++;
+            mHeights.add(newPlayer);
+            mFirstNameLengths.add(newPlayer.getFirstName(), 1);
+            mLastNameLengths.add(newPlayer.getLastName(), 1);
+            if (mNameIndex != null)
+                mNameIndex.add(newPlayer);
+            addToOrders(newPlayer);
+            mVersion++;
+            return true;
+        } finally {
+            mLock.unlock();
+        }
     }
     public boolean removePlayer( Player player){
-        return mPlayers.remove(player);        
+        mLock.lock();
+        try {
+            Integer row = mPlayers.remove(player);
+            if (row == null)
+                return false;
+            if (mRows != null)
+                mRows.remove(row);
+            mCount--;
+            mHeightSum -= player.getHeightInInches();
+            if (player.isPreviousExperience())
+                mExperiencedCount--;
+            mHeights.remove(player);
+            mFirstNameLengths.add(player.getFirstName(), -1);
+            mLastNameLengths.add(player.getLastName(), -1);
+            if (mNameIndex != null)
+                mNameIndex.remove(player);
+            removeFromOrders(player);
+            mVersion++;
+            return true;
+        } finally {
+            mLock.unlock();
+        }
     }
     
-    public Map<Integer,Set<Player>> getPlayersGroupedByHeight(){
-        Map<Integer,Set<Player>> results = new TreeMap<>();
-        int height;
-        Set<Player> playerSet;
-        
-        for( Player player : mPlayers){
-            height = player.getHeightInInches();
-            playerSet = results.get(height);
-            if (playerSet == null){
-                playerSet = new TreeSet<>();
-                results.put(height, playerSet);
+    /**
+     * Take some players off the team and put others on, as one change:
+     * the running totals and indexes are updated once for the lot, and
+     * the version goes up by one. Used by {@link League#movePlayers},
+     * which has already checked every player removed is on the team and
+     * every player added isn't.
+     * @param addedRows the added players' rows in the league's store
+     */
+    void movePlayers( List<Player> removed, List<Player> added, List<Integer> addedRows){
+        mLock.lock();
+        try {
+            // Note: League has checked them, but only the players actually
+            //    taken off or put on change the totals and indexes
+            List<Player> taken = new ArrayList<>(removed.size());
+            List<Player> put = new ArrayList<>(added.size());
+            int heightDelta = 0;
+            int experiencedDelta = 0;
+            for (Player player : removed) {
+                Integer row = mPlayers.remove(player);
+                if (row == null)
+                    continue;
+                taken.add(player);
+                if (mRows != null)
+                    mRows.remove(row);
+                removeFromOrders(player);
+                heightDelta -= player.getHeightInInches();
+                mFirstNameLengths.add(player.getFirstName(), -1);
+                mLastNameLengths.add(player.getLastName(), -1);
+                if (player.isPreviousExperience())
+                    experiencedDelta--;
             }
-            playerSet.add(player);
+            for (int i = 0; i < added.size(); i++) {
+                Player player = added.get(i);
+                if (mPlayers.putIfAbsent(player, addedRows.get(i)) != null)
+                    continue;
+                put.add(player);
+                if (mRows != null)
+                    mRows.add(addedRows.get(i));
+                addToOrders(player);
+                heightDelta += player.getHeightInInches();
+                mFirstNameLengths.add(player.getFirstName(), 1);
+                mLastNameLengths.add(player.getLastName(), 1);
+                if (player.isPreviousExperience())
+                    experiencedDelta++;
+            }
+            mCount += put.size() - taken.size();
+            mHeightSum += heightDelta;
+            mExperiencedCount += experiencedDelta;
+            mHeights.update(taken, put);
+            if (mNameIndex != null)
+                mNameIndex.update(taken, put);
+            mVersion++;
+            assert taken.size() == removed.size() && put.size() == added.size() : mName + ": moves not checked";
+        } finally {
+            mLock.unlock();
+        }
+    }
+    
+    /**
+     * @return the player's row in the league's store, or -1 if the
+     *   player isn't on the team (or the team isn't in a league)
+     */
+    int rowOf( Player player){
+        Integer row = mPlayers.get(player);
+        return row != null ? row : NO_ROW;
+    }
+    
+    /**
+     * Goes up by one every time players are added or removed, so a
+     * report rendered at one version is out of date once this changes.
+     */
+    public long getVersion(){
+        return mVersion;
+    }
+    
+    /**
+     * Lock two teams (in the global order) so a player can be moved
+     * between them in one step.
+     */
+    static void lockBoth(Team a, Team b) {
+        Team first = a.mLockOrder < b.mLockOrder ? a : b;
+        Team second = first == a ? b : a;
+        first.mLock.lock();
+        second.mLock.lock();
+    }
+    
+    static void unlockBoth(Team a, Team b) {
+        a.mLock.unlock();
+        b.mLock.unlock();
+    }
+    
+    /**
+     * @return players on the team counted and grouped by height,
+     *   kept up to date as players are added and removed (read-only)
+     */
+    public HeightHistogram getHeightHistogram(){
+        return mHeights;
+    }
+    
+    /**
+     * @return the team's players indexed for searching by name, built on
+     *   the first call and then kept up to date as players are added
+     *   and removed (read-only)
+     */
+    public PlayerNameIndex getNameIndex(){
+        mLock.lock();
+        try {
+            if (mNameIndex == null)
+                mNameIndex = new PlayerNameIndex(mPlayers.keySet());
+            return mNameIndex;
+        } finally {
+            mLock.unlock();
+        }
+    }
+    
+    /**
+     * @return the team's players in the order, as a read-only view of an
+     *   index kept up to date as players are added and removed (built on
+     *   the first call for an order other than name)
+     */
+    public OrderedPlayerList getPlayersInOrder( PlayerOrder order){
+        switch (order) {
+            case HEIGHT:
+                return new OrderedPlayerList(this, mByHeight != null ? mByHeight : createOrder(order));
+            case EXPERIENCE:
+                return new OrderedPlayerList(this, mByExperience != null ? mByExperience : createOrder(order));
+            default:
+                return new OrderedPlayerList(this, mPlayers.keySet());
         }
+    }
+    
+    private ConcurrentSkipListSet<Player> createOrder( PlayerOrder order){
+        mLock.lock();
+        try {
+            ConcurrentSkipListSet<Player> players = order == PlayerOrder.HEIGHT ? mByHeight : mByExperience;
+            if (players == null) {
+                players = new ConcurrentSkipListSet<>(order.comparator());
+                players.addAll(mPlayers.keySet());
+                if (order == PlayerOrder.HEIGHT)
+                    mByHeight = players;
+                else
+                    mByExperience = players;
+            }
+            return players;
+        } finally {
+            mLock.unlock();
+        }
+    }
+    
+    // Note: called holding mLock
+    private void addToOrders( Player player){
+        if (mByHeight != null)
+            mByHeight.add(player);
+        if (mByExperience != null)
+            mByExperience.add(player);
+    }
+    
+    private void removeFromOrders( Player player){
+        if (mByHeight != null)
+            mByHeight.remove(player);
+        if (mByExperience != null)
+            mByExperience.remove(player);
+    }
+    
+    /**
+     * The team's players in the order, as they are now. For a team in a
+     * league they're read from the league's {@link PlayerStore}, one
+     * reused record at a time (so records must not be kept), rather
+     * than from the Player objects.
+     */
+    public Iterable<? extends PlayerRecord> records( PlayerOrder order){
+        if (mStore == null)
+            return getPlayersInOrder(order);
+        int[] rows;
+        mLock.lock();
+        try {
+            rows = new int[mCount];
+            int[] next = new int[1];
+            mRows.forEach(row -> rows[next[0]++] = row);
+        } finally {
+            mLock.unlock();
+        }
+        mStore.sort(rows, order);
+        return mStore.records(rows);
+    }
+    
+    public List<Player> getPlayersSortedByName(){
+        return getPlayersInOrder(PlayerOrder.NAME);
+    }
+
+    // Note: tallest first, players of the same height stay in name order
+    public List<Player> getPlayersSortedByHeight(){
+        return getPlayersInOrder(PlayerOrder.HEIGHT);
+    }
+
+    // Note: builds a new map and sets on every call, prefer getHeightHistogram()
+    public Map<Integer,Set<Player>> getPlayersGroupedByHeight(){
+        Map<Integer,Set<Player>> results = new TreeMap<>();
+        for( int height = mHeights.getTallest(); height != HeightHistogram.NONE; height = mHeights.getNextShorter(height))
+            results.put(height, new TreeSet<>(mHeights.getPlayers(height)));
         return results;
     }
 
@@ -53,26 +378,83 @@ public class Team implements Comparable<Team> {
     }
     
     public double getAverageHeight(){
-        if (mPlayers.size() < 1 )
-            return 0d;
-        double sum = 0d;
-        for( Player player : mPlayers)
-            sum += player.getHeightInInches();
-        return sum / mPlayers.size();
+        mLock.lock();
+        try {
+            if (mCount < 1 )
+                return 0d;
+            return (double) mHeightSum / mCount;
+        } finally {
+            mLock.unlock();
+        }
+    }
+    
+    /**
+     * @return length of the longest first name on the team, e.g. to size
+     *   a column, kept up to date so no players are read
+     */
+    public int getMaxFirstNameLength(){
+        mLock.lock();
+        try {
+            return mFirstNameLengths.max();
+        } finally {
+            mLock.unlock();
+        }
+    }
+    
+    public int getMaxLastNameLength(){
+        mLock.lock();
+        try {
+            return mLastNameLengths.max();
+        } finally {
+            mLock.unlock();
+        }
+    }
+    
+    /**
+     * How many of the team's names are of each length, so the longest
+     * is known after the longest name leaves. Changed holding mLock.
+     */
+    private static class NameLengths {
+        private int[] mCounts = new int[16];
+        private int mMax;
+        
+        void add(String name, int delta) {
+            int length = name.length();
+            if (length >= mCounts.length)
+                mCounts = Arrays.copyOf(mCounts, Math.max(length + 1, mCounts.length * 2));
+            mCounts[length] += delta;
+            if (delta > 0 && length > mMax)
+                mMax = length;
+            while (mMax > 0 && mCounts[mMax] == 0)
+                mMax--;
+        }
+        
+        int max() { return mMax; }
     }
     
     public int getCount_AllPlayers(){
-        return mPlayers.size();
+        mLock.lock();
+        try {
+            return mCount;
+        } finally {
+            mLock.unlock();
+        }
     }
     
     public int getCount_ExperiencedPlayers(){
-        int count = 0;
-        for( Player player : mPlayers)
-            if (player.isPreviousExperience())
-                count++;
-        return count;
+        mLock.lock();
+        try {
+            return mExperiencedCount;
+        } finally {
+            mLock.unlock();
+        }
     }
     public int getCount_InexperiencedPlayers(){
-        return mPlayers.size() - getCount_ExperiencedPlayers();
+        mLock.lock();
+        try {
+            return mCount - mExperiencedCount;
+        } finally {
+            mLock.unlock();
+        }
     }
 }
@@ -0,0 +1,434 @@
+package com.teamtreehouse.persistence;
+
+import com.teamtreehouse.model.League;
+import com.teamtreehouse.model.NameDictionary;
+import com.teamtreehouse.model.Player;
+import com.teamtreehouse.model.PlayerMove;
+import com.teamtreehouse.model.PlayerRecord;
+import com.teamtreehouse.model.Team;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * A compact binary form of teams and their players, for saving a whole
+ * league (or one team) or sending it elsewhere: a few bytes a player
+ * where Java serialization takes dozens.
+ *
+ * Every name (players', teams' and coaches') is stored once in a string
+ * table and referred to by its number, heights are varints and previous
+ * experience is one bit a player:
+ *
+ *   int     magic "TTLC"
+ *   byte    version
+ *   byte    flags (1: the first team is the unassigned pool)
+ *   varint  string count, then each string: varint UTF-8 length, bytes
+ *   varint  team count, then each team: varint name, varint coach,
+ *             varint player count, varint length of its players in bytes
+ *   players, team by team: varint first name, varint last name,
+ *             zigzag varint height
+ *   bits    previous experience, one per player in the same order
+ *
+ * Varints are 7 bits a byte, low bits first, with the top bit set on
+ * every byte but the last.
+ *
+ * {@link #decode} reads straight from the buffer it is given, e.g. a
+ * file mapped with {@link #map}: nothing is copied up front, a name is
+ * only made a String the first time it is read, and a team's players
+ * can be walked with one reusable {@link PlayerRecord}.
+ */
+public final class LeagueCodec {
+    private static final int MAGIC = 0x54544c43; // "TTLC"
+    private static final byte VERSION = 1;
+    private static final byte FLAG_UNASSIGNED_POOL = 1;
+
+    private LeagueCodec() {}
+
+    /**
+     * Encode the unassigned pool and every team, with the league locked
+     * so they are all as of one moment.
+     */
+    public static ByteBuffer encode(League league) {
+        return league.withLeagueLocked(() -> {
+            Encoder encoder = new Encoder();
+            encoder.addUnassignedPool(league.getUnassignedPlayers());
+            for (Team team : league.getTeams())
+                encoder.addTeam(team.getName(), team.getCoach(), team.getPlayers());
+            return encoder.toByteBuffer();
+        });
+    }
+
+    public static ByteBuffer encode(Team team) {
+        return new Encoder().addTeam(team.getName(), team.getCoach(), team.getPlayers()).toByteBuffer();
+    }
+
+    /**
+     * Builds the encoded form one team at a time.
+     */
+    public static class Encoder {
+        private final NameDictionary mStrings = new NameDictionary();
+        private final List<int[]> mTeams = new ArrayList<>(); // name, coach, players, bytes
+        private byte[] mPlayers = new byte[1024];
+        private int mPlayersLength;
+        private long[] mExperience = new long[16];
+        private int mPlayerCount;
+        private boolean mHasUnassignedPool;
+        // Note: players come in name order, so the last name is mostly
+        //    the one before and needn't be looked up again
+        private String mLastName;
+        private int mLastNameId;
+
+        /**
+         * Add the league's unassigned players, before any team.
+         */
+        public Encoder addUnassignedPool(Iterable<? extends PlayerRecord> players) {
+            if (!mTeams.isEmpty())
+                throw new IllegalStateException("The unassigned pool must be added before any team");
+            mHasUnassignedPool = true;
+            return addTeam(League.UNASSIGNED_POOL_NAME, "", players);
+        }
+
+        public Encoder addTeam(String name, String coach, Iterable<? extends PlayerRecord> players) {
+            int nameId = mStrings.idOf(name);
+            int coachId = mStrings.idOf(coach);
+            int start = mPlayersLength;
+            int count = 0;
+            for (PlayerRecord player : players) {
+                ensureCapacity(15);
+                mPlayersLength = putVarint(mPlayers, mPlayersLength, mStrings.idOf(player.getFirstName()));
+                mPlayersLength = putVarint(mPlayers, mPlayersLength, lastNameId(player.getLastName()));
+                mPlayersLength = putVarint(mPlayers, mPlayersLength, zigzag(player.getHeightInInches()));
+                if (mPlayerCount >>> 6 == mExperience.length)
+                    mExperience = Arrays.copyOf(mExperience, mExperience.length * 2);
+                if (player.isPreviousExperience())
+                    mExperience[mPlayerCount >>> 6] |= 1L << mPlayerCount;
+                mPlayerCount++;
+                count++;
+            }
+            mTeams.add(new int[] {nameId, coachId, count, mPlayersLength - start});
+            return this;
+        }
+
+        private int lastNameId(String lastName) {
+            if (!lastName.equals(mLastName)) {
+                mLastName = lastName;
+                mLastNameId = mStrings.idOf(lastName);
+            }
+            return mLastNameId;
+        }
+
+        private void ensureCapacity(int more) {
+            if (mPlayersLength + more > mPlayers.length)
+                mPlayers = Arrays.copyOf(mPlayers, Math.max(mPlayers.length * 2, mPlayersLength + more));
+        }
+
+        /**
+         * @return the encoded teams, from position 0 to the limit
+         */
+        public ByteBuffer toByteBuffer() {
+            // Note: most names are ASCII, written a char a byte; only
+            //    the others are encoded to UTF-8 up front
+            byte[][] nonAscii = new byte[mStrings.size()][];
+            int length = 4 + 1 + 1 + 5;
+            for (int i = 0; i < mStrings.size(); i++) {
+                String string = mStrings.nameOf(i);
+                if (!isAscii(string))
+                    nonAscii[i] = string.getBytes(StandardCharsets.UTF_8);
+                length += 5 + (nonAscii[i] != null ? nonAscii[i].length : string.length());
+            }
+            length += 5 + mTeams.size() * 20 + mPlayersLength + (mPlayerCount + 7) / 8;
+            byte[] bytes = new byte[length];
+            ByteBuffer out = ByteBuffer.wrap(bytes);
+            out.putInt(MAGIC).put(VERSION).put(mHasUnassignedPool ? FLAG_UNASSIGNED_POOL : 0);
+            int position = putVarint(bytes, out.position(), mStrings.size());
+            for (int i = 0; i < mStrings.size(); i++) {
+                if (nonAscii[i] != null) {
+                    position = putVarint(bytes, position, nonAscii[i].length);
+                    System.arraycopy(nonAscii[i], 0, bytes, position, nonAscii[i].length);
+                    position += nonAscii[i].length;
+                    continue;
+                }
+                String string = mStrings.nameOf(i);
+                position = putVarint(bytes, position, string.length());
+                for (int c = 0; c < string.length(); c++)
+                    bytes[position++] = (byte) string.charAt(c);
+            }
+            position = putVarint(bytes, position, mTeams.size());
+            for (int[] team : mTeams)
+                for (int field : team)
+                    position = putVarint(bytes, position, field);
+            System.arraycopy(mPlayers, 0, bytes, position, mPlayersLength);
+            position += mPlayersLength;
+            for (int i = 0; i < mPlayerCount; i += 8)
+                bytes[position++] = (byte) (mExperience[i >>> 6] >>> (i & 63));
+            return ByteBuffer.wrap(bytes, 0, position).slice();
+        }
+    }
+
+    /**
+     * Map a file of encoded teams into memory, to {@link #decode} it
+     * without reading it all first.
+     */
+    public static ByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    /**
+     * Read the header and team table of encoded teams. The buffer is
+     * read from its position to its limit, neither of which is changed,
+     * and must not be changed while the result is in use.
+     * @throws IOException if the buffer doesn't hold encoded teams
+     */
+    public static Decoded decode(ByteBuffer buffer) throws IOException {
+        return new Decoded(buffer.slice());
+    }
+
+    /**
+     * Encoded teams, read from the buffer as they are asked for.
+     * Safe to read from several threads.
+     */
+    public static class Decoded {
+        private final ByteBuffer mBuffer;
+        private final boolean mHasUnassignedPool;
+        private final int[] mStringStarts;
+        private final int[] mStringLengths;
+        private final String[] mStrings; // Note: filled in as they're first read
+        private final int[] mTeamNames;
+        private final int[] mCoaches;
+        private final int[] mPlayerCounts;
+        private final int[] mPlayersStarts;
+        private final int[] mFirstPlayers; // number of the team's first player, across teams
+        private final int mExperienceStart;
+
+        private Decoded(ByteBuffer buffer) throws IOException {
+            mBuffer = buffer;
+            if (buffer.limit() < 6 || buffer.getInt(0) != MAGIC)
+                throw new IOException("Not an encoded league");
+            byte version = buffer.get(4);
+            if (version != VERSION)
+                throw new IOException(String.format("Unsupported encoded league version %d", version));
+            mHasUnassignedPool = (buffer.get(5) & FLAG_UNASSIGNED_POOL) != 0;
+            try {
+                int[] position = {6};
+                int stringCount = readVarint(buffer, position);
+                mStringStarts = new int[stringCount];
+                mStringLengths = new int[stringCount];
+                mStrings = new String[stringCount];
+                for (int i = 0; i < stringCount; i++) {
+                    mStringLengths[i] = readVarint(buffer, position);
+                    mStringStarts[i] = position[0];
+                    position[0] += mStringLengths[i];
+                }
+                int teamCount = readVarint(buffer, position);
+                mTeamNames = new int[teamCount];
+                mCoaches = new int[teamCount];
+                mPlayerCounts = new int[teamCount];
+                mPlayersStarts = new int[teamCount];
+                mFirstPlayers = new int[teamCount];
+                int[] playersLengths = new int[teamCount];
+                for (int i = 0; i < teamCount; i++) {
+                    mTeamNames[i] = readString(buffer, position, stringCount);
+                    mCoaches[i] = readString(buffer, position, stringCount);
+                    mPlayerCounts[i] = readVarint(buffer, position);
+                    playersLengths[i] = readVarint(buffer, position);
+                }
+                int playerCount = 0;
+                for (int i = 0; i < teamCount; i++) {
+                    mPlayersStarts[i] = position[0];
+                    mFirstPlayers[i] = playerCount;
+                    position[0] += playersLengths[i];
+                    playerCount += mPlayerCounts[i];
+                }
+                mExperienceStart = position[0];
+                if (mExperienceStart < 0 || (long) mExperienceStart + (playerCount + 7) / 8 > buffer.limit())
+                    throw new IOException("Truncated encoded league");
+            } catch (IndexOutOfBoundsException ex) {
+                throw new IOException("Truncated encoded league", ex);
+            }
+        }
+
+        private static int readString(ByteBuffer buffer, int[] position, int stringCount) throws IOException {
+            int id = readVarint(buffer, position);
+            if (id >= stringCount)
+                throw new IOException(String.format("No string %d in an encoded league of %d", id, stringCount));
+            return id;
+        }
+
+        /**
+         * @return whether team 0 is the league's unassigned pool
+         */
+        public boolean hasUnassignedPool() { return mHasUnassignedPool; }
+
+        public int getTeamCount() { return mTeamNames.length; }
+
+        public String getTeamName(int team) { return string(mTeamNames[team]); }
+
+        public String getCoach(int team) { return string(mCoaches[team]); }
+
+        public int getPlayerCount(int team) { return mPlayerCounts[team]; }
+
+        /**
+         * Note: every step of the iteration returns the same record,
+         *    moved to the next player, so records must not be kept.
+         * @return the team's players in the order they were added
+         */
+        public Iterable<PlayerRecord> records(int team) {
+            return () -> new Iterator<PlayerRecord>() {
+                private final Cursor mCursor = new Cursor(mPlayersStarts[team], mFirstPlayers[team]);
+                private int mNext;
+
+                @Override
+                public boolean hasNext() { return mNext < mPlayerCounts[team]; }
+
+                @Override
+                public PlayerRecord next() {
+                    if (mNext >= mPlayerCounts[team])
+                        throw new NoSuchElementException();
+                    mNext++;
+                    return mCursor.next();
+                }
+            };
+        }
+
+        /**
+         * @return the team's players as new Player objects
+         */
+        public Player[] getPlayers(int team) {
+            Player[] players = new Player[mPlayerCounts[team]];
+            int i = 0;
+            for (PlayerRecord record : records(team))
+                players[i++] = new Player(record.getFirstName(), record.getLastName(),
+                        record.getHeightInInches(), record.isPreviousExperience());
+            return players;
+        }
+
+        /**
+         * @return a new league with every player registered and on their
+         *   team, each team's players moved there as one batch
+         * @throws IllegalArgumentException if two teams have the same name
+         */
+        public League toLeague() {
+            League league = new League();
+            List<Player[]> rosters = new ArrayList<>(getTeamCount());
+            for (int i = 0; i < getTeamCount(); i++) {
+                Player[] players = getPlayers(i);
+                rosters.add(players);
+                for (Player player : players)
+                    league.registerPlayer(player);
+            }
+            for (int i = mHasUnassignedPool ? 1 : 0; i < getTeamCount(); i++) {
+                Team team = league.createTeam(getTeamName(i), getCoach(i));
+                if (team == null)
+                    throw new IllegalArgumentException(String.format("Two teams are named %s", getTeamName(i)));
+                List<PlayerMove> moves = new ArrayList<>(rosters.get(i).length);
+                for (Player player : rosters.get(i))
+                    moves.add(new PlayerMove(player, league.getUnassignedPool(), team));
+                if (!moves.isEmpty())
+                    league.movePlayers(moves);
+            }
+            return league;
+        }
+
+        private String string(int id) {
+            String string = mStrings[id];
+            if (string == null) {
+                if (mBuffer.hasArray()) {
+                    string = new String(mBuffer.array(), mBuffer.arrayOffset() + mStringStarts[id],
+                            mStringLengths[id], StandardCharsets.UTF_8);
+                } else {
+                    byte[] bytes = new byte[mStringLengths[id]];
+                    ByteBuffer in = mBuffer.duplicate();
+                    in.position(mStringStarts[id]);
+                    in.get(bytes);
+                    string = new String(bytes, StandardCharsets.UTF_8);
+                }
+                mStrings[id] = string; // Note: a race only decodes it twice
+            }
+            return string;
+        }
+
+        /**
+         * One player at a time, read from the buffer in order.
+         */
+        private class Cursor implements PlayerRecord {
+            private final int[] mPosition;
+            private int mPlayer;
+            private int mFirstName;
+            private int mLastName;
+            private int mHeight;
+
+            Cursor(int start, int firstPlayer) {
+                mPosition = new int[] {start};
+                mPlayer = firstPlayer - 1;
+            }
+
+            Cursor next() {
+                mFirstName = readVarint(mBuffer, mPosition);
+                mLastName = readVarint(mBuffer, mPosition);
+                mHeight = unzigzag(readVarint(mBuffer, mPosition));
+                mPlayer++;
+                return this;
+            }
+
+            @Override public String getFirstName() { return string(mFirstName); }
+            @Override public String getLastName() { return string(mLastName); }
+            @Override public int getHeightInInches() { return mHeight; }
+
+            @Override
+            public boolean isPreviousExperience() {
+                return (mBuffer.get(mExperienceStart + (mPlayer >>> 3)) & (1 << (mPlayer & 7))) != 0;
+            }
+        }
+    }
+
+    private static boolean isAscii(String string) {
+        for (int i = 0; i < string.length(); i++)
+            if (string.charAt(i) >= 0x80)
+                return false;
+        return true;
+    }
+
+    private static int putVarint(byte[] bytes, int position, int value) {
+        while ((value & ~0x7f) != 0) {
+            bytes[position++] = (byte) (value | 0x80);
+            value >>>= 7;
+        }
+        bytes[position++] = (byte) value;
+        return position;
+    }
+
+    /**
+     * @param position where to read, moved past the varint
+     */
+    private static int readVarint(ByteBuffer buffer, int[] position) {
+        int at = position[0];
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = buffer.get(at++);
+            value |= (b & 0x7f) << shift;
+            if (b >= 0 || shift == 28)
+                break;
+        }
+        position[0] = at;
+        return value;
+    }
+
+    // small negative numbers as small varints: 0, -1, 1, -2 ... become 0, 1, 2, 3 ...
+    private static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,579 @@
+package com.teamtreehouse.persistence;
+
+import com.teamtreehouse.metrics.Metrics;
+import com.teamtreehouse.metrics.OperationMetrics;
+import com.teamtreehouse.model.League;
+import com.teamtreehouse.model.LeagueListener;
+import com.teamtreehouse.model.Player;
+import com.teamtreehouse.model.PlayerMove;
+import com.teamtreehouse.model.Team;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * Saves a league's teams and roster changes to a directory so they
+ * survive a restart.
+ *
+ * Every create-team/remove-team/assign/unassign is appended to a journal segment.
+ * A single writer thread drains all pending records at once and fsyncs
+ * them together (group commit), so many changes share one fsync.
+ * Every {@link #DEFAULT_SNAPSHOT_INTERVAL} changes a snapshot of all
+ * teams is written in the background and the journal segments it covers
+ * are deleted, so startup replays at most one interval of changes.
+ *
+ * Players are not stored, only which team they are on; the league must
+ * already have its players registered when it is opened.
+ *
+ * Changes can come from several threads. Each is encoded without a lock
+ * and put in the writer's queue, and the writer numbers records in the
+ * order it takes them, so changes to unrelated teams never wait for one
+ * another here. A snapshot is taken with the whole league locked, when
+ * no change is being recorded, so it matches one sequence number
+ * exactly.
+ */
+public class LeagueJournal implements LeagueListener, Closeable {
+    public static final int DEFAULT_SNAPSHOT_INTERVAL = 10_000;
+
+    static final byte OP_CREATE_TEAM = 1;
+    static final byte OP_ASSIGN = 2;
+    static final byte OP_UNASSIGN = 3;
+    static final byte OP_TRANSFER = 4;
+    static final byte OP_MOVE_PLAYERS = 5;
+    static final byte OP_REMOVE_TEAM = 6;
+
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final Object CLOSE = new Object();
+    private static final OperationMetrics SNAPSHOT = Metrics.operation("journal.snapshot");
+
+    private final Path mDirectory;
+    private final League mLeague;
+    private final int mSnapshotInterval;
+    private final BlockingQueue<Object> mQueue;
+    private final Thread mWriter;
+    private final ExecutorService mCompactor;
+    private final Object mDurableLock;
+    private final AtomicLong mNextSequence = new AtomicLong(); // after the last queued record
+    private long mWriterSequence; // of the writer's next record, only used by the writer thread
+    private long mDurableSequence; // guarded by mDurableLock
+    private final AtomicLong mChangesSinceSnapshot = new AtomicLong();
+    private volatile IOException mFailure;
+    private volatile IOException mSnapshotFailure;
+    private FileChannel mSegment; // only used by the writer thread
+    private RecoveryResult mRecovery;
+
+    /**
+     * Marks the start of a new journal segment in the writer's queue.
+     */
+    private static class Roll {
+        final long mFirstSequence;
+        Roll(long firstSequence) { mFirstSequence = firstSequence; }
+    }
+
+    /**
+     * A journal record waiting to be written; the writer fills in its
+     * sequence number.
+     */
+    private static class Record {
+        final byte[] mBytes;
+        Record(byte[] bytes) {
+            mBytes = bytes;
+        }
+    }
+
+    /**
+     * What was restored when the journal was opened.
+     */
+    public static class RecoveryResult {
+        private long mSnapshotSequence;
+        private int mReplayedRecords;
+        private int mSkippedRecords;
+        private long mElapsedNanos;
+
+        public long getSnapshotSequence() { return mSnapshotSequence; }
+        public int getReplayedRecords() { return mReplayedRecords; }
+        /** records naming a team or player this league doesn't have */
+        public int getSkippedRecords() { return mSkippedRecords; }
+        public long getElapsedNanos() { return mElapsedNanos; }
+
+        @Override
+        public String toString() {
+            return String.format("League restored in %.3f s (snapshot #%d, %d changes replayed, %d skipped)",
+                    mElapsedNanos / 1_000_000_000d, mSnapshotSequence, mReplayedRecords, mSkippedRecords);
+        }
+    }
+
+    private LeagueJournal(Path directory, League league, int snapshotInterval) {
+        mDirectory = directory;
+        mLeague = league;
+        mSnapshotInterval = snapshotInterval;
+        mQueue = new LinkedBlockingQueue<>();
+        mDurableLock = new Object();
+        mWriter = new Thread(this::writeLoop, "league-journal-writer");
+        mWriter.setDaemon(true);
+        mCompactor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "league-journal-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Restore the league from the directory, then record every further
+     * change to it.
+     * @param directory where the journal and snapshots are kept (created if needed)
+     * @param league league with its players registered and no teams yet
+     * @return the open journal, close it to make sure every change is saved
+     * @throws IOException if the saved state cannot be read
+     */
+    public static LeagueJournal open(Path directory, League league) throws IOException {
+        return open(directory, league, DEFAULT_SNAPSHOT_INTERVAL);
+    }
+
+    public static LeagueJournal open(Path directory, League league, int snapshotInterval) throws IOException {
+        Files.createDirectories(directory);
+        LeagueJournal journal = new LeagueJournal(directory, league, snapshotInterval);
+        journal.recover();
+        journal.mWriterSequence = journal.mNextSequence.get();
+        journal.mSegment = journal.openSegment(journal.mWriterSequence);
+        journal.mWriter.start();
+        league.addListener(journal);
+        return journal;
+    }
+
+    public RecoveryResult getRecoveryResult() { return mRecovery; }
+
+    /**
+     * @return why the last background snapshot failed, or null
+     */
+    public IOException getSnapshotFailure() { return mSnapshotFailure; }
+
+    // ---------------------------------------------------------------
+    // Recovery
+    // ---------------------------------------------------------------
+
+    private void recover() throws IOException {
+        long start = System.nanoTime();
+        mRecovery = new RecoveryResult();
+        LeagueSnapshot snapshot = LeagueSnapshot.readLatest(mDirectory);
+        long lastSequence = 0;
+        if (snapshot != null) {
+            lastSequence = snapshot.getSequence();
+            mRecovery.mSkippedRecords += snapshot.restoreInto(mLeague);
+            mRecovery.mSnapshotSequence = lastSequence;
+        }
+        for (Path segment : listSegments()) {
+            lastSequence = Math.max(lastSequence, replaySegment(segment, mRecovery.mSnapshotSequence));
+        }
+        mNextSequence.set(lastSequence + 1);
+        mDurableSequence = lastSequence;
+        mRecovery.mElapsedNanos = System.nanoTime() - start;
+    }
+
+    /**
+     * @return sequence number of the last good record in the segment
+     */
+    private long replaySegment(Path segment, long snapshotSequence) throws IOException {
+        long lastSequence = 0;
+        long goodLength = 0;
+        CRC32 crc = new CRC32();
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(
+                    Channels.newInputStream(channel)));
+            while (true) {
+                byte[] body;
+                try {
+                    int length = in.readInt();
+                    int checksum = in.readInt();
+                    if (length < 9 || length > channel.size() - goodLength - 8)
+                        break; // torn write from a crash
+                    body = new byte[length];
+                    in.readFully(body);
+                    crc.reset();
+                    crc.update(body, 0, length);
+                    if ((int) crc.getValue() != checksum)
+                        break; // torn write from a crash
+                    goodLength += 8 + length;
+                } catch (EOFException ex) {
+                    break;
+                }
+                DataInputStream record = new DataInputStream(new ByteArrayInputStream(body));
+                long sequence = record.readLong();
+                lastSequence = sequence;
+                if (sequence <= snapshotSequence)
+                    continue;
+                if (apply(record.readByte(), record))
+                    mRecovery.mReplayedRecords++;
+                else
+                    mRecovery.mSkippedRecords++;
+            }
+            if (goodLength < channel.size())
+                channel.truncate(goodLength); // drop the torn tail
+        }
+        return lastSequence;
+    }
+
+    private boolean apply(byte op, DataInputStream record) throws IOException {
+        switch (op) {
+            case OP_CREATE_TEAM: {
+                String teamName = record.readUTF();
+                String coachName = record.readUTF();
+                return mLeague.createTeam(teamName, coachName) != null;
+            }
+            case OP_REMOVE_TEAM: {
+                Team team = mLeague.getTeam(record.readUTF());
+                return team != null && mLeague.removeTeam(team);
+            }
+            case OP_ASSIGN: {
+                Team team = mLeague.getTeam(record.readUTF());
+                Player player = mLeague.getUnassignedPool().findPlayer(readPlayer(record));
+                return team != null && player != null && mLeague.assignPlayer(player, team);
+            }
+            case OP_UNASSIGN: {
+                Team team = mLeague.getTeam(record.readUTF());
+                Player key = readPlayer(record);
+                Player player = team == null ? null : team.findPlayer(key);
+                return player != null && mLeague.unassignPlayer(player, team);
+            }
+            case OP_TRANSFER: {
+                Team fromTeam = mLeague.getTeam(record.readUTF());
+                Team toTeam = mLeague.getTeam(record.readUTF());
+                Player key = readPlayer(record);
+                Player player = fromTeam == null ? null : fromTeam.findPlayer(key);
+                return player != null && toTeam != null && mLeague.transferPlayer(player, fromTeam, toTeam);
+            }
+            case OP_MOVE_PLAYERS: {
+                int count = record.readInt();
+                List<PlayerMove> moves = new ArrayList<>(count);
+                boolean valid = true;
+                for (int i = 0; i < count; i++) {
+                    Team fromTeam = readTeam(record);
+                    Team toTeam = readTeam(record);
+                    Player key = readPlayer(record);
+                    Player player = fromTeam == null ? null : fromTeam.findPlayer(key);
+                    if (player == null || toTeam == null)
+                        valid = false; // Note: read on to the end of the record regardless
+                    else
+                        moves.add(new PlayerMove(player, fromTeam, toTeam));
+                }
+                if (!valid)
+                    return false;
+                try {
+                    mLeague.movePlayers(moves);
+                    return true;
+                } catch (IllegalArgumentException ex) {
+                    return false;
+                }
+            }
+            default:
+                throw new IOException("Unknown journal record type " + op);
+        }
+    }
+
+    static void writePlayer(DataOutputStream out, Player player) throws IOException {
+        out.writeUTF(player.getFirstName());
+        out.writeUTF(player.getLastName());
+        out.writeInt(player.getHeightInInches());
+        out.writeBoolean(player.isPreviousExperience());
+    }
+
+    static Player readPlayer(DataInputStream in) throws IOException {
+        return new Player(in.readUTF(), in.readUTF(), in.readInt(), in.readBoolean());
+    }
+
+    /**
+     * A team, or the unassigned pool (which a real team can share a name with).
+     */
+    private void writeTeam(DataOutputStream out, Team team) throws IOException {
+        boolean isPool = team == mLeague.getUnassignedPool();
+        out.writeBoolean(isPool);
+        if (!isPool)
+            out.writeUTF(team.getName());
+    }
+
+    private Team readTeam(DataInputStream in) throws IOException {
+        return in.readBoolean() ? mLeague.getUnassignedPool() : mLeague.getTeam(in.readUTF());
+    }
+
+    // ---------------------------------------------------------------
+    // Recording changes
+    // ---------------------------------------------------------------
+
+    @Override
+    public void teamCreated(Team team) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = startRecord(bytes, OP_CREATE_TEAM);
+        try {
+            out.writeUTF(team.getName());
+            out.writeUTF(team.getCoach());
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex); // writes to memory don't fail
+        }
+        append(bytes);
+    }
+
+    @Override
+    public void teamRemoved(Team team) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = startRecord(bytes, OP_REMOVE_TEAM);
+        try {
+            out.writeUTF(team.getName());
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex); // writes to memory don't fail
+        }
+        append(bytes);
+    }
+
+    @Override
+    public void playerAssigned(Player player, Team team) {
+        appendMove(OP_ASSIGN, player, team, null);
+    }
+
+    @Override
+    public void playerUnassigned(Player player, Team team) {
+        appendMove(OP_UNASSIGN, player, team, null);
+    }
+
+    /**
+     * One record, so a crash can't leave the player between teams.
+     */
+    @Override
+    public void playerTransferred(Player player, Team fromTeam, Team toTeam) {
+        appendMove(OP_TRANSFER, player, fromTeam, toTeam);
+    }
+
+    /**
+     * One record for the whole batch, so it's replayed all or nothing
+     * like it was made.
+     */
+    @Override
+    public void playersMoved(List<PlayerMove> moves, Team unassignedPool) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(32 + 40 * moves.size());
+        DataOutputStream out = startRecord(bytes, OP_MOVE_PLAYERS);
+        try {
+            out.writeInt(moves.size());
+            for (PlayerMove move : moves) {
+                writeTeam(out, move.getFromTeam());
+                writeTeam(out, move.getToTeam());
+                writePlayer(out, move.getPlayer());
+            }
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex); // writes to memory don't fail
+        }
+        append(bytes);
+    }
+
+    private void appendMove(byte op, Player player, Team team, Team toTeam) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = startRecord(bytes, op);
+        try {
+            out.writeUTF(team.getName());
+            if (toTeam != null)
+                out.writeUTF(toTeam.getName());
+            writePlayer(out, player);
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex); // writes to memory don't fail
+        }
+        append(bytes);
+    }
+
+    private DataOutputStream startRecord(ByteArrayOutputStream bytes, byte op) {
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeLong(0); // the writer's to fill in
+            out.writeByte(op);
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex); // writes to memory don't fail
+        }
+        return out;
+    }
+
+    private void append(ByteArrayOutputStream bytes) {
+        // Note: counted before it's queued, so sync() never waits for
+        //    fewer records than have been queued
+        mNextSequence.incrementAndGet();
+        mQueue.add(new Record(bytes.toByteArray()));
+        if (mChangesSinceSnapshot.incrementAndGet() % mSnapshotInterval == 0) {
+            // Note: not taken here, the caller holds team locks and
+            //    taking the snapshot needs every team's lock
+            mCompactor.execute(this::writeSnapshot);
+        }
+    }
+
+    /**
+     * Wait until every change made so far is on disk.
+     * @throws IOException if the journal could not be written
+     */
+    public void sync() throws IOException {
+        long target = mNextSequence.get() - 1;
+        synchronized (mDurableLock) {
+            while (mDurableSequence < target && mFailure == null) {
+                try {
+                    mDurableLock.wait();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted waiting for the journal", ex);
+                }
+            }
+        }
+        if (mFailure != null)
+            throw mFailure;
+    }
+
+    /**
+     * Save every pending change and stop the background threads.
+     */
+    @Override
+    public void close() throws IOException {
+        mLeague.removeListener(this);
+        mQueue.add(CLOSE);
+        try {
+            mWriter.join();
+            mCompactor.shutdown();
+            mCompactor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        if (mFailure != null)
+            throw mFailure;
+    }
+
+    private void writeLoop() {
+        List<Object> batch = new ArrayList<>();
+        CRC32 crc = new CRC32();
+        ByteBuffer header = ByteBuffer.allocate(8);
+        boolean closing = false;
+        while (!closing) {
+            batch.clear();
+            try {
+                batch.add(mQueue.take());
+            } catch (InterruptedException ex) {
+                continue;
+            }
+            mQueue.drainTo(batch);
+            long lastSequence = -1;
+            try {
+                for (Object item : batch) {
+                    if (item == CLOSE) {
+                        closing = true;
+                    } else if (item instanceof Roll) {
+                        mSegment.force(false);
+                        mSegment.close();
+                        mSegment = openSegment(((Roll) item).mFirstSequence);
+                    } else {
+                        Record record = (Record) item;
+                        lastSequence = mWriterSequence++;
+                        ByteBuffer.wrap(record.mBytes).putLong(0, lastSequence);
+                        crc.reset();
+                        crc.update(record.mBytes, 0, record.mBytes.length);
+                        header.clear();
+                        header.putInt(record.mBytes.length).putInt((int) crc.getValue()).flip();
+                        writeFully(header);
+                        writeFully(ByteBuffer.wrap(record.mBytes));
+                    }
+                }
+                // one fsync for the whole batch
+                mSegment.force(false);
+                if (closing)
+                    mSegment.close();
+            } catch (IOException ex) {
+                mFailure = ex;
+                closing = true;
+            }
+            synchronized (mDurableLock) {
+                if (lastSequence > mDurableSequence)
+                    mDurableSequence = lastSequence;
+                mDurableLock.notifyAll();
+            }
+        }
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining())
+            mSegment.write(buffer);
+    }
+
+    // ---------------------------------------------------------------
+    // Snapshots and compaction
+    // ---------------------------------------------------------------
+
+    /**
+     * Copy the teams with the league locked (cheap, players are not
+     * copied), then write the copy and delete the journal segments and
+     * snapshots it replaces. Runs on the compactor thread.
+     */
+    private void writeSnapshot() {
+        SNAPSHOT.time(this::compact);
+    }
+
+    private void compact() {
+        // Note: changes are recorded with their teams locked, so with the
+        //    whole league locked every change so far has been queued, and
+        //    the writer will number them up to mNextSequence - 1
+        LeagueSnapshot snapshot = mLeague.withLeagueLocked(() -> {
+            long sequence = mNextSequence.get() - 1;
+            // later records go in a new segment, so the old ones can be deleted
+            mQueue.add(new Roll(sequence + 1));
+            return LeagueSnapshot.capture(mLeague, sequence);
+        });
+        long sequence = snapshot.getSequence();
+        try {
+            snapshot.write(mDirectory);
+            for (Path segment : listSegments())
+                if (segmentFirstSequence(segment) <= sequence)
+                    Files.deleteIfExists(segment);
+            LeagueSnapshot.deleteOlderThan(mDirectory, sequence);
+        } catch (IOException ex) {
+            // Note: the journal still has every change, so a failed
+            //    snapshot only means a longer replay on the next start
+            mSnapshotFailure = ex;
+        }
+    }
+
+    private FileChannel openSegment(long firstSequence) throws IOException {
+        Path path = mDirectory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, firstSequence, SEGMENT_SUFFIX));
+        return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+    }
+
+    /**
+     * @return journal segments oldest first
+     */
+    private List<Path> listSegments() throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(mDirectory,
+                SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path path : stream)
+                segments.add(path);
+        }
+        segments.sort(null); // names are zero padded so sort numerically
+        return segments;
+    }
+
+    private static long segmentFirstSequence(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+}
@@ -0,0 +1,408 @@
+package com.teamtreehouse.persistence;
+
+import com.teamtreehouse.metrics.Metrics;
+import com.teamtreehouse.metrics.OperationMetrics;
+import com.teamtreehouse.model.League;
+import com.teamtreehouse.model.LeagueStatistics;
+import com.teamtreehouse.model.Player;
+import com.teamtreehouse.model.PlayerRegistryLoader;
+import com.teamtreehouse.model.Players;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hosts many leagues, and each league's seasons, in one process. Every
+ * season is kept in its own directory under the root:
+ *   {root}/{league}/{season}/players   player registry (CSV, binary or
+ *                                      mapped), the built in players if
+ *                                      missing
+ *   {root}/{league}/{season}/...       its journal and snapshots
+ *
+ * Seasons don't share anything: each is loaded the first time work is
+ * submitted for it, and its work runs one task at a time on its own
+ * thread, so a busy season never holds up another. A season nobody has
+ * used for the idle time is saved and dropped from memory, and loaded
+ * again from its journal when next used; its thread stops whenever it
+ * has nothing to do.
+ */
+public class LeagueRegistry implements Closeable {
+    public static final String PLAYERS_FILE_NAME = "players";
+    public static final long DEFAULT_IDLE_MILLIS = 10 * 60 * 1000;
+
+    private static final OperationMetrics LOAD = Metrics.operation("leagueRegistry.load");
+    private static final OperationMetrics EVICT = Metrics.operation("leagueRegistry.evict");
+
+    private final Path mRoot;
+    private final long mIdleNanos;
+    // Note: keyed by the season's real directory, so names that only
+    //    differ in case share a partition where the disk ignores case
+    private final ConcurrentMap<Path, Partition> mPartitions = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService mSweeper;
+    private volatile boolean mClosed;
+    private volatile IOException mEvictFailure;
+
+    /**
+     * Names one season of one league.
+     */
+    public static class Key implements Comparable<Key> {
+        private final String mLeague;
+        private final String mSeason;
+
+        /**
+         * @throws IllegalArgumentException if either name can't be a directory name
+         */
+        public Key(String league, String season) {
+            mLeague = checkName("league", league);
+            mSeason = checkName("season", season);
+        }
+
+        /**
+         * @param text "{league}/{season}"
+         * @throws IllegalArgumentException if the text isn't in that form
+         */
+        public static Key parse(String text) {
+            int slash = text.indexOf('/');
+            if (slash < 0)
+                throw new IllegalArgumentException(String.format("\"%s\" is not in the form league/season", text));
+            return new Key(text.substring(0, slash), text.substring(slash + 1));
+        }
+
+        public String getLeague() { return mLeague; }
+        public String getSeason() { return mSeason; }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key))
+                return false;
+            Key that = (Key) o;
+            return mLeague.equals(that.mLeague) && mSeason.equals(that.mSeason);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(mLeague, mSeason);
+        }
+
+        @Override
+        public int compareTo(Key that) {
+            int result = mLeague.compareTo(that.mLeague);
+            return result != 0 ? result : mSeason.compareTo(that.mSeason);
+        }
+
+        @Override
+        public String toString() {
+            return mLeague + "/" + mSeason;
+        }
+
+        private static String checkName(String what, String name) {
+            if (name.isEmpty() || name.equals(".") || name.equals("..") || name.trim().length() != name.length())
+                throw new IllegalArgumentException(String.format("\"%s\" is not a valid %s name", name, what));
+            for (int i = 0; i < name.length(); i++) {
+                char c = name.charAt(i);
+                if (c == '/' || c == '\\' || c == ':' || c < 0x20)
+                    throw new IllegalArgumentException(String.format("\"%s\" is not a valid %s name", name, what));
+            }
+            return name;
+        }
+    }
+
+    /**
+     * A loaded season, handed to the tasks run for it. Only use it from
+     * those tasks: once they finish it may be saved and dropped.
+     */
+    public static class HostedLeague {
+        private final Key mKey;
+        private final League mLeague;
+        private final LeagueStatistics mStatistics;
+        private final LeagueJournal mJournal;
+
+        HostedLeague(Key key, League league, LeagueStatistics statistics, LeagueJournal journal) {
+            mKey = key;
+            mLeague = league;
+            mStatistics = statistics;
+            mJournal = journal;
+        }
+
+        public Key getKey() { return mKey; }
+        public League getLeague() { return mLeague; }
+        public LeagueStatistics getStatistics() { return mStatistics; }
+
+        /**
+         * @return the season's journal, owned by the registry (don't close it)
+         */
+        public LeagueJournal getJournal() { return mJournal; }
+    }
+
+    /**
+     * Work to run on a season's thread.
+     */
+    public interface LeagueTask<T> {
+        T run(HostedLeague league) throws Exception;
+    }
+
+    /**
+     * One season: its thread, and the season itself while it's loaded.
+     */
+    private class Partition {
+        final Key mKey;
+        final Path mDirectory;
+        final ThreadPoolExecutor mExecutor;
+        final AtomicInteger mPending = new AtomicInteger(); // tasks submitted and not yet finished
+        final AtomicBoolean mEvictQueued = new AtomicBoolean();
+        volatile long mLastUsedNanos = System.nanoTime();
+        volatile HostedLeague mHosted; // only changed on mExecutor's thread
+
+        Partition(Key key, Path directory) {
+            mKey = key;
+            mDirectory = directory;
+            // Note: the thread stops when idle, so an unused season costs
+            //    no thread even before it's evicted
+            mExecutor = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), task -> {
+                Thread thread = new Thread(task, "league-" + key);
+                thread.setDaemon(true);
+                return thread;
+            });
+            mExecutor.allowCoreThreadTimeOut(true);
+        }
+
+        <T> CompletableFuture<T> submit(LeagueTask<T> task) {
+            CompletableFuture<T> result = new CompletableFuture<>();
+            mPending.incrementAndGet();
+            mLastUsedNanos = System.nanoTime();
+            mExecutor.execute(() -> {
+                try {
+                    if (mHosted == null)
+                        mHosted = load();
+                    result.complete(task.run(mHosted));
+                } catch (Throwable ex) {
+                    result.completeExceptionally(ex);
+                } finally {
+                    mLastUsedNanos = System.nanoTime();
+                    mPending.decrementAndGet();
+                }
+            });
+            return result;
+        }
+
+        private HostedLeague load() throws IOException {
+            return LOAD.time(() -> {
+                League league = new League();
+                LeagueStatistics statistics = new LeagueStatistics(league);
+                Path playersFile = mDirectory.resolve(PLAYERS_FILE_NAME);
+                if (Files.exists(playersFile)) {
+                    new PlayerRegistryLoader().load(playersFile,
+                            (firstName, lastName, height, experienced) ->
+                                    league.registerPlayer(new Player(firstName, lastName, height, experienced)));
+                } else {
+                    for (Player player : Players.load())
+                        league.registerPlayer(player);
+                }
+                LeagueJournal journal = LeagueJournal.open(mDirectory, league);
+                return new HostedLeague(mKey, league, statistics, journal);
+            });
+        }
+
+        /**
+         * Queue a task to save and drop the season, if it's still idle
+         * when the task runs. Being on the season's own thread, it can't
+         * overlap a task using the season, or a load after it.
+         */
+        void evictIfIdle(long idleNanos) {
+            if (mHosted == null || mPending.get() > 0 || !mEvictQueued.compareAndSet(false, true))
+                return;
+            mExecutor.execute(() -> {
+                mEvictQueued.set(false);
+                if (mPending.get() > 0 || System.nanoTime() - mLastUsedNanos < idleNanos)
+                    return;
+                try {
+                    unload();
+                } catch (IOException ex) {
+                    // Note: the season is loaded again from whatever
+                    //    reached the disk
+                    mEvictFailure = ex;
+                }
+            });
+        }
+
+        /**
+         * Save the season and drop it. Only call on mExecutor's thread.
+         */
+        void unload() throws IOException {
+            HostedLeague hosted = mHosted;
+            if (hosted == null)
+                return;
+            mHosted = null;
+            EVICT.time(() -> hosted.getJournal().close());
+        }
+    }
+
+    public LeagueRegistry(Path root) throws IOException {
+        this(root, DEFAULT_IDLE_MILLIS);
+    }
+
+    /**
+     * @param root directory holding a directory for each league (created if needed)
+     * @param idleMillis how long a season may go unused before it's saved and dropped
+     * @throws IOException if the root directory can't be created
+     */
+    public LeagueRegistry(Path root, long idleMillis) throws IOException {
+        Files.createDirectories(root);
+        mRoot = root;
+        mIdleNanos = TimeUnit.MILLISECONDS.toNanos(idleMillis);
+        mSweeper = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "league-registry-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(10, idleMillis / 4);
+        mSweeper.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return every season in the registry, loaded or not, by league then season
+     * @throws IOException if the root directory can't be read
+     */
+    public List<Key> list() throws IOException {
+        List<Key> keys = new ArrayList<>();
+        try (DirectoryStream<Path> leagues = Files.newDirectoryStream(mRoot, Files::isDirectory)) {
+            for (Path league : leagues) {
+                try (DirectoryStream<Path> seasons = Files.newDirectoryStream(league, Files::isDirectory)) {
+                    for (Path season : seasons)
+                        keys.add(new Key(league.getFileName().toString(), season.getFileName().toString()));
+                }
+            }
+        }
+        Collections.sort(keys);
+        return keys;
+    }
+
+    public boolean exists(Key key) {
+        return Files.isDirectory(directoryOf(key));
+    }
+
+    /**
+     * Add a season, with its players copied from a player registry file.
+     * @param playersFile CSV, binary or mapped player registry, or null
+     *   for the built in players
+     * @throws IllegalArgumentException if the season already exists
+     * @throws IOException if the season can't be created
+     */
+    public void create(Key key, Path playersFile) throws IOException {
+        Path directory = directoryOf(key);
+        if (Files.exists(directory))
+            throw new IllegalArgumentException(String.format("league %s already exists", key));
+        Files.createDirectories(directory);
+        if (playersFile != null)
+            Files.copy(playersFile, directory.resolve(PLAYERS_FILE_NAME), StandardCopyOption.COPY_ATTRIBUTES);
+    }
+
+    /**
+     * Run a task on the season's thread, loading the season first if
+     * it isn't loaded.
+     * @return the task's result, or its exception (a failed load included)
+     * @throws IllegalArgumentException if there's no such season
+     * @throws IllegalStateException if the registry is closed
+     */
+    public <T> CompletableFuture<T> submit(Key key, LeagueTask<T> task) {
+        if (mClosed)
+            throw new IllegalStateException("the league registry is closed");
+        Path directory;
+        try {
+            directory = directoryOf(key).toRealPath();
+        } catch (IOException ex) {
+            throw new IllegalArgumentException(String.format("there is no league %s", key));
+        }
+        return mPartitions.computeIfAbsent(directory, path -> new Partition(key, path)).submit(task);
+    }
+
+    /**
+     * @return number of seasons in memory now
+     */
+    public int getLoadedCount() {
+        int count = 0;
+        for (Partition partition : mPartitions.values())
+            if (partition.mHosted != null)
+                count++;
+        return count;
+    }
+
+    public boolean isLoaded(Key key) {
+        for (Partition partition : mPartitions.values())
+            if (partition.mKey.equals(key))
+                return partition.mHosted != null;
+        return false;
+    }
+
+    /**
+     * @return why the last save of an idle season failed, or null
+     */
+    public IOException getEvictFailure() { return mEvictFailure; }
+
+    /**
+     * Wait for the tasks already submitted, then save every loaded season.
+     * @throws IOException if a season could not be saved (the first failure)
+     */
+    @Override
+    public void close() throws IOException {
+        mClosed = true;
+        mSweeper.shutdown();
+        List<CompletableFuture<Void>> saves = new ArrayList<>();
+        for (Partition partition : mPartitions.values()) {
+            CompletableFuture<Void> saved = new CompletableFuture<>();
+            partition.mExecutor.execute(() -> {
+                try {
+                    partition.unload();
+                    saved.complete(null);
+                } catch (IOException ex) {
+                    saved.completeExceptionally(ex);
+                }
+            });
+            partition.mExecutor.shutdown();
+            saves.add(saved);
+        }
+        IOException failure = null;
+        for (CompletableFuture<Void> saved : saves) {
+            try {
+                saved.get();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException ex) {
+                if (failure == null)
+                    failure = (IOException) ex.getCause();
+            }
+        }
+        if (failure != null)
+            throw failure;
+    }
+
+    private void evictIdle() {
+        long now = System.nanoTime();
+        for (Partition partition : mPartitions.values())
+            if (now - partition.mLastUsedNanos >= mIdleNanos)
+                partition.evictIfIdle(mIdleNanos);
+    }
+
+    private Path directoryOf(Key key) {
+        return mRoot.resolve(key.getLeague()).resolve(key.getSeason());
+    }
+}
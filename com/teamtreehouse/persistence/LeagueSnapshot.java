@@ -0,0 +1,177 @@
+package com.teamtreehouse.persistence;
+
+import com.teamtreehouse.model.League;
+import com.teamtreehouse.model.Player;
+import com.teamtreehouse.model.Team;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Every team and its players as of one journal sequence number.
+ * Written to a temporary file and renamed into place, so a snapshot
+ * file is either complete or absent.
+ *
+ * Version 2 files hold the teams in {@link LeagueCodec}'s form after
+ * the header; version 1 files (a UTF name and coach, then each player
+ * in full) can still be read.
+ */
+class LeagueSnapshot {
+    private static final int MAGIC = 0x54544c53; // "TTLS"
+    private static final int VERSION = 2;
+    private static final int HEADER_LENGTH = 16;
+    private static final String PREFIX = "snapshot-";
+    private static final String SUFFIX = ".snap";
+
+    private final long mSequence;
+    private final List<TeamState> mTeams;
+
+    private static class TeamState {
+        final String mName;
+        final String mCoach;
+        final Player[] mPlayers;
+
+        TeamState(String name, String coach, Player[] players) {
+            mName = name;
+            mCoach = coach;
+            mPlayers = players;
+        }
+    }
+
+    private LeagueSnapshot(long sequence, List<TeamState> teams) {
+        mSequence = sequence;
+        mTeams = teams;
+    }
+
+    long getSequence() { return mSequence; }
+
+    /**
+     * Copy the league's teams. Players are immutable so only the
+     * references are copied.
+     */
+    static LeagueSnapshot capture(League league, long sequence) {
+        List<TeamState> teams = new ArrayList<>(league.getTeamCount());
+        for (Team team : league.getTeams())
+            teams.add(new TeamState(team.getName(), team.getCoach(),
+                    team.getPlayers().toArray(new Player[0])));
+        return new LeagueSnapshot(sequence, teams);
+    }
+
+    /**
+     * Create the teams and assign their players.
+     * @return number of players or teams which could not be restored
+     */
+    int restoreInto(League league) {
+        int skipped = 0;
+        for (TeamState state : mTeams) {
+            Team team = league.createTeam(state.mName, state.mCoach);
+            if (team == null) {
+                skipped++;
+                continue;
+            }
+            for (Player key : state.mPlayers) {
+                Player player = league.getUnassignedPool().findPlayer(key);
+                if (player == null || !league.assignPlayer(player, team))
+                    skipped++;
+            }
+        }
+        return skipped;
+    }
+
+    void write(Path directory) throws IOException {
+        Path target = directory.resolve(fileName(mSequence));
+        Path temp = directory.resolve(fileName(mSequence) + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            LeagueCodec.Encoder encoder = new LeagueCodec.Encoder();
+            for (TeamState team : mTeams)
+                encoder.addTeam(team.mName, team.mCoach, Arrays.asList(team.mPlayers));
+            ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+            header.putInt(MAGIC).putInt(VERSION).putLong(mSequence).flip();
+            ByteBuffer teams = encoder.toByteBuffer();
+            while (header.hasRemaining() || teams.hasRemaining())
+                channel.write(new ByteBuffer[] {header, teams});
+            channel.force(true);
+        }
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * @return the newest snapshot in the directory, or null if there is none
+     */
+    static LeagueSnapshot readLatest(Path directory) throws IOException {
+        List<Path> snapshots = list(directory);
+        if (snapshots.isEmpty())
+            return null;
+        Path latest = snapshots.get(snapshots.size() - 1);
+        ByteBuffer file = ByteBuffer.wrap(Files.readAllBytes(latest));
+        if (file.limit() < HEADER_LENGTH || file.getInt(0) != MAGIC)
+            throw new IOException("Not a league snapshot: " + latest);
+        if (file.getInt(4) == 1)
+            return readVersion1(new DataInputStream(new ByteArrayInputStream(file.array())));
+        if (file.getInt(4) != VERSION)
+            throw new IOException(String.format("Unsupported league snapshot version %d", file.getInt(4)));
+        long sequence = file.getLong(8);
+        file.position(HEADER_LENGTH);
+        LeagueCodec.Decoded decoded = LeagueCodec.decode(file);
+        List<TeamState> teams = new ArrayList<>(decoded.getTeamCount());
+        for (int i = 0; i < decoded.getTeamCount(); i++)
+            teams.add(new TeamState(decoded.getTeamName(i), decoded.getCoach(i), decoded.getPlayers(i)));
+        return new LeagueSnapshot(sequence, teams);
+    }
+
+    private static LeagueSnapshot readVersion1(DataInputStream in) throws IOException {
+        in.readInt(); // magic
+        in.readInt(); // version
+        long sequence = in.readLong();
+        int teamCount = in.readInt();
+        List<TeamState> teams = new ArrayList<>(teamCount);
+        for (int i = 0; i < teamCount; i++) {
+            String name = in.readUTF();
+            String coach = in.readUTF();
+            Player[] players = new Player[in.readInt()];
+            for (int p = 0; p < players.length; p++)
+                players[p] = LeagueJournal.readPlayer(in);
+            teams.add(new TeamState(name, coach, players));
+        }
+        return new LeagueSnapshot(sequence, teams);
+    }
+
+    static void deleteOlderThan(Path directory, long sequence) throws IOException {
+        for (Path snapshot : list(directory))
+            if (sequenceOf(snapshot) < sequence)
+                Files.deleteIfExists(snapshot);
+    }
+
+    /**
+     * @return complete snapshot files oldest first
+     */
+    private static List<Path> list(Path directory) throws IOException {
+        List<Path> snapshots = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            for (Path path : stream)
+                snapshots.add(path);
+        }
+        snapshots.sort(null); // names are zero padded so sort numerically
+        return snapshots;
+    }
+
+    private static String fileName(long sequence) {
+        return String.format("%s%020d%s", PREFIX, sequence, SUFFIX);
+    }
+
+    private static long sequenceOf(Path snapshot) {
+        String name = snapshot.getFileName().toString();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+}
@@ -0,0 +1,137 @@
+package com.teamtreehouse.view;
+
+/**
+ * Writes JSON text into a StringBuilder, adding the commas and escapes.
+ *
+ * Example, writing {"name":"Sharks","players":[1,2]}:
+ *   new JsonWriter(sb).beginObject()
+ *           .name("name").value("Sharks")
+ *           .name("players").beginArray().value(1).value(2).endArray()
+ *           .endObject();
+ *
+ * Only checks what is needed to keep the commas right; it is up to the
+ * caller to pair names with values and begin with end.
+ */
+public class JsonWriter {
+    private final StringBuilder mOut;
+    // Note: true once the current object/array has a value, so the next
+    //    one needs a comma; one entry per level of nesting
+    private boolean[] mHasValue = new boolean[16];
+    private int mDepth;
+    private boolean mAfterName;
+
+    public JsonWriter(StringBuilder out) {
+        mOut = out;
+    }
+
+    public JsonWriter beginObject() {
+        beforeValue();
+        mOut.append('{');
+        push();
+        return this;
+    }
+
+    public JsonWriter endObject() {
+        mDepth--;
+        mOut.append('}');
+        return this;
+    }
+
+    public JsonWriter beginArray() {
+        beforeValue();
+        mOut.append('[');
+        push();
+        return this;
+    }
+
+    public JsonWriter endArray() {
+        mDepth--;
+        mOut.append(']');
+        return this;
+    }
+
+    /**
+     * Name of the next value in an object.
+     */
+    public JsonWriter name(String name) {
+        if (mHasValue[mDepth])
+            mOut.append(',');
+        mHasValue[mDepth] = true;
+        appendString(name);
+        mOut.append(':');
+        mAfterName = true;
+        return this;
+    }
+
+    public JsonWriter value(String value) {
+        beforeValue();
+        if (value == null)
+            mOut.append("null");
+        else
+            appendString(value);
+        return this;
+    }
+
+    public JsonWriter value(long value) {
+        beforeValue();
+        mOut.append(value);
+        return this;
+    }
+
+    /**
+     * Rounded to 2 decimal places, like the console reports.
+     */
+    public JsonWriter value(double value) {
+        beforeValue();
+        if (Double.isNaN(value) || Double.isInfinite(value))
+            mOut.append("null"); // not valid in JSON
+        else
+            mOut.append(Math.round(value * 100d) / 100d);
+        return this;
+    }
+
+    public JsonWriter value(boolean value) {
+        beforeValue();
+        mOut.append(value);
+        return this;
+    }
+
+    private void beforeValue() {
+        if (mAfterName) {
+            mAfterName = false;
+            return;
+        }
+        if (mDepth > 0) {
+            if (mHasValue[mDepth])
+                mOut.append(',');
+            mHasValue[mDepth] = true;
+        }
+    }
+
+    private void push() {
+        mDepth++;
+        if (mDepth == mHasValue.length)
+            mHasValue = java.util.Arrays.copyOf(mHasValue, mDepth * 2);
+        mHasValue[mDepth] = false;
+    }
+
+    private void appendString(String text) {
+        mOut.append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '"': mOut.append("\\\""); break;
+                case '\\': mOut.append("\\\\"); break;
+                case '\n': mOut.append("\\n"); break;
+                case '\r': mOut.append("\\r"); break;
+                case '\t': mOut.append("\\t"); break;
+                default:
+                    if (c < 0x20)
+                        mOut.append(String.format("\\u%04x", (int) c));
+                    else
+                        mOut.append(c);
+            }
+        }
+        mOut.append('"');
+    }
+}
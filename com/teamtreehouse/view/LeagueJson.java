@@ -0,0 +1,168 @@
+package com.teamtreehouse.view;
+
+import com.teamtreehouse.model.LeagueState;
+import com.teamtreehouse.model.Player;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * The league's reports as JSON, with the same figures as the console
+ * reports in LeagueManager.
+ */
+public class LeagueJson {
+
+    private LeagueJson() {}
+
+    /**
+     * Every team with its totals.
+     */
+    public static String teams(LeagueState state) {
+        StringBuilder sb = new StringBuilder();
+        JsonWriter json = new JsonWriter(sb);
+        json.beginObject().name("version").value(state.getVersion());
+        json.name("teams").beginArray();
+        for (LeagueState.TeamState team : state.getTeams()) {
+            json.beginObject();
+            writeTeamTotals(json, team);
+            json.endObject();
+        }
+        json.endArray();
+        json.name("unassignedPlayers").value(state.getUnassignedPool().getCount_AllPlayers());
+        json.endObject();
+        return sb.toString();
+    }
+
+    /**
+     * A team's coach and players, sorted by name.
+     */
+    public static String roster(LeagueState state, LeagueState.TeamState team) {
+        StringBuilder sb = new StringBuilder(64 + 96 * team.getCount_AllPlayers());
+        appendRoster(sb, state, team);
+        return sb.toString();
+    }
+
+    public static void appendRoster(StringBuilder sb, LeagueState state, LeagueState.TeamState team) {
+        JsonWriter json = new JsonWriter(sb);
+        json.beginObject().name("version").value(state.getVersion());
+        json.name("name").value(team.getName());
+        json.name("coach").value(team.getCoach());
+        json.name("players").beginArray();
+        for (Player player : team.getPlayers())
+            writePlayer(json, player);
+        json.endArray();
+        json.endObject();
+    }
+
+    /**
+     * A team's totals and its players grouped by height, tallest first.
+     */
+    public static String heightReport(LeagueState state, LeagueState.TeamState team) {
+        // players are sorted by name, so each height's list stays sorted by name
+        NavigableMap<Integer, List<Player>> byHeight = new TreeMap<>(team.getHeightCounts().comparator());
+        for (Player player : team.getPlayers())
+            byHeight.computeIfAbsent(player.getHeightInInches(), height -> new ArrayList<>()).add(player);
+
+        StringBuilder sb = new StringBuilder(256 + 96 * team.getCount_AllPlayers());
+        JsonWriter json = new JsonWriter(sb);
+        json.beginObject().name("version").value(state.getVersion());
+        writeTeamTotals(json, team);
+        json.name("heights").beginArray();
+        for (Map.Entry<Integer, List<Player>> height : byHeight.entrySet()) {
+            json.beginObject()
+                    .name("inches").value(height.getKey())
+                    .name("count").value(height.getValue().size());
+            json.name("players").beginArray();
+            for (Player player : height.getValue())
+                writePlayer(json, player);
+            json.endArray();
+            json.endObject();
+        }
+        json.endArray();
+        json.endObject();
+        return sb.toString();
+    }
+
+    /**
+     * Each team's totals and height breakdown, plus the league totals.
+     * Like the console report, the unassigned pool (if included) comes first.
+     */
+    public static String balanceReport(LeagueState state, boolean includeUnassigned) {
+        StringBuilder sb = new StringBuilder();
+        appendBalanceReport(sb, state, includeUnassigned);
+        return sb.toString();
+    }
+
+    public static void appendBalanceReport(StringBuilder sb, LeagueState state, boolean includeUnassigned) {
+        List<LeagueState.TeamState> teams = new ArrayList<>(state.getTeams().size() + 1);
+        if (includeUnassigned)
+            teams.add(state.getUnassignedPool());
+        teams.addAll(state.getTeams());
+
+        JsonWriter json = new JsonWriter(sb);
+        json.beginObject().name("version").value(state.getVersion());
+        json.name("includesUnassigned").value(includeUnassigned);
+        json.name("teams").beginArray();
+        for (LeagueState.TeamState team : teams) {
+            json.beginObject();
+            writeTeamTotals(json, team);
+            writeHeightCounts(json, team.getHeightCounts());
+            json.endObject();
+        }
+        json.endArray();
+
+        int numPlayers = state.getCount_AllPlayers(includeUnassigned);
+        int experienced = state.getCount_ExperiencedPlayers(includeUnassigned);
+        json.name("total").beginObject()
+                .name("players").value(numPlayers)
+                .name("averageHeight").value(state.getAverageHeight(includeUnassigned))
+                .name("experienced").value(experienced)
+                .name("inexperienced").value(numPlayers - experienced)
+                .name("percentExperienced").value(numPlayers < 1 ? 0 : 100 * experienced / numPlayers);
+        writeHeightCounts(json, state.getHeightCounts(includeUnassigned));
+        json.endObject();
+        json.endObject();
+    }
+
+    public static String error(int status, String message) {
+        StringBuilder sb = new StringBuilder();
+        new JsonWriter(sb).beginObject()
+                .name("status").value(status)
+                .name("error").value(message)
+                .endObject();
+        return sb.toString();
+    }
+
+    private static void writeTeamTotals(JsonWriter json, LeagueState.TeamState team) {
+        int numPlayers = team.getCount_AllPlayers();
+        json.name("name").value(team.getName())
+                .name("coach").value(team.getCoach())
+                .name("players").value(numPlayers)
+                .name("averageHeight").value(team.getAverageHeight())
+                .name("experienced").value(team.getCount_ExperiencedPlayers())
+                .name("inexperienced").value(team.getCount_InexperiencedPlayers())
+                .name("percentExperienced").value(
+                        numPlayers < 1 ? 0 : 100 * team.getCount_ExperiencedPlayers() / numPlayers);
+    }
+
+    private static void writeHeightCounts(JsonWriter json, NavigableMap<Integer, Integer> heightCounts) {
+        json.name("heights").beginArray();
+        for (Map.Entry<Integer, Integer> height : heightCounts.entrySet())
+            json.beginObject()
+                    .name("inches").value(height.getKey())
+                    .name("count").value(height.getValue())
+                    .endObject();
+        json.endArray();
+    }
+
+    private static void writePlayer(JsonWriter json, Player player) {
+        json.beginObject()
+                .name("lastName").value(player.getLastName())
+                .name("firstName").value(player.getFirstName())
+                .name("heightInInches").value(player.getHeightInInches())
+                .name("experienced").value(player.isPreviousExperience())
+                .endObject();
+    }
+}
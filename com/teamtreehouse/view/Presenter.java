@@ -1,6 +1,7 @@
 package com.teamtreehouse.view;
 
 import java.io.BufferedReader;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.PrintWriter;
@@ -12,8 +13,22 @@ import java.util.Arrays;
  * for handling menus and numerical input
  */
 public class Presenter {
+    /** number of options shown per page by presentPagedMenu */
+    public static final int DEFAULT_PAGE_SIZE = 20;
+
+    /**
+     * Supplies menu options on demand, so a long menu only has to build
+     * the display text of the options actually shown.
+     */
+    public interface MenuSource {
+        int size();
+        String getOption(int index);
+    }
+
     private BufferedReader mInput;
     private PrintWriter mOutput;
+    private boolean mInteractive = true;
+    private long mInputWaitNanos; // total time spent waiting for the user to type
 
     public Presenter() {
         mInput = new BufferedReader(new InputStreamReader(System.in));
@@ -22,6 +37,13 @@ public class Presenter {
     
     public void flush(){ mOutput.flush(); }
 
+    /**
+     * @param interactive false when no one is at the console (e.g. running
+     *   a batch script), so waitForUser returns straight away
+     */
+    public void setInteractive(boolean interactive) { mInteractive = interactive; }
+    public boolean isInteractive() { return mInteractive; }
+
     /**
      * Print the start of a new screen.
      * Intended to help prevent user's disorientation when many lines are 
@@ -67,6 +89,17 @@ public class Presenter {
      * @throws IOException from underlying input stream
      */
     public int presentMenu(String menuTitle, String[] menuOptions) throws IOException {
+        return presentMenu(menuTitle, menuOptions, 0);
+    }
+
+    /**
+     * Same as {@link #presentMenu(String, String[])}, also accepting the
+     * numbers just past the listed options, for options which aren't
+     * shown (e.g. maintenance screens).
+     * @param hiddenOptions how many unlisted option numbers to accept
+     * @return index of option chosen, menuOptions.length + i for hidden option i
+     */
+    public int presentMenu(String menuTitle, String[] menuOptions, int hiddenOptions) throws IOException {
         int optionChosen;
         int numOptions = menuOptions.length;
 
@@ -88,12 +121,97 @@ public class Presenter {
             optionChosen = readInt(msg);
             if (optionChosen < 1)
                 continue;
-            if (optionChosen > numOptions)
+            if (optionChosen > numOptions + hiddenOptions)
                 continue;
             return optionChosen - 1;
         } // loop
     }
 
+    /**
+     * returns the index of the option chosen by user, showing the options
+     * one page at a time. Options are numbered across all pages, so any
+     * option can be chosen by number from any page.
+     * The fixed options (e.g. "Cancel") are shown below every page.
+     * @param menuTitle text to display before menu options
+     * @param menuOptions options to page through, only the visible page is requested
+     * @param fixedOptions options to display on every page
+     * @return index of option chosen: 0 to menuOptions.size()-1 for a paged option,
+     *   menuOptions.size() + i for fixedOptions[i]
+     * @throws IOException from underlying input stream
+     */
+    public int presentPagedMenu(String menuTitle, MenuSource menuOptions, String[] fixedOptions) throws IOException {
+        return presentPagedMenu(menuTitle, menuOptions, fixedOptions, DEFAULT_PAGE_SIZE);
+    }
+
+    /**
+     * Same as {@link #presentPagedMenu(String, MenuSource, String[])}
+     * with a given number of options per page.
+     */
+    public int presentPagedMenu(String menuTitle, MenuSource menuOptions, String[] fixedOptions, int pageSize)
+            throws IOException {
+        int numOptions = menuOptions.size();
+        int numChoices = numOptions + fixedOptions.length;
+        int pageCount = Math.max(1, (numOptions + pageSize - 1) / pageSize);
+        int numberWidth = Math.max(2, Integer.toString(numChoices).length());
+        RowTemplate optionRow = RowTemplate.builder().integer(numberWidth).text(") ").string(0).build();
+        String msg = String.format("Please select an option(1-%d): ", numChoices);
+        int page = 0;
+
+        while (true) {
+            mOutput.printf("%s\n", menuTitle);
+            printDashes(menuTitle.length());
+            int first = page * pageSize;
+            int last = Math.min(numOptions, first + pageSize);
+            for (int i = first; i < last; i++)
+                printRow(optionRow.begin().put(i + 1).put(menuOptions.getOption(i)));
+            if (last > first && fixedOptions.length > 0)
+                mOutput.println(); // space between the list and the fixed options
+            for (int i = 0; i < fixedOptions.length; i++)
+                printRow(optionRow.begin().put(numOptions + i + 1).put(fixedOptions[i]));
+            if (pageCount > 1)
+                mOutput.printf("\nPage %d of %d  (n = next page, p = previous page, g# = go to page #)\n",
+                        page + 1, pageCount);
+            mOutput.println();
+
+            int newPage = page;
+            while (newPage == page) {
+                mOutput.print(msg);
+                mOutput.flush();
+                String result = readLine();
+                if (result == null)
+                    throw new EOFException("No more input while waiting for a menu option");
+                result = result.trim().toLowerCase();
+                if (pageCount > 1) {
+                    if (result.equals("n")) {
+                        newPage = Math.min(page + 1, pageCount - 1);
+                        continue;
+                    }
+                    if (result.equals("p")) {
+                        newPage = Math.max(page - 1, 0);
+                        continue;
+                    }
+                    if (result.startsWith("g")) {
+                        try {
+                            newPage = Math.max(0, Math.min(pageCount - 1, Integer.parseInt(result.substring(1).trim()) - 1));
+                        } catch (NumberFormatException ex) {
+                            // not a page number, ask again
+                        }
+                        continue;
+                    }
+                }
+                try {
+                    int optionChosen = Integer.parseInt(result);
+                    if (optionChosen >= 1 && optionChosen <= numChoices)
+                        return optionChosen - 1;
+                } catch (NumberFormatException ex) {
+                    // not a number, ask again
+                }
+            }
+            page = newPage;
+            mOutput.println();
+        } // loop
+    }
+
     /**
      * Will print text to the screen
      * @param msg text to be printed
@@ -110,6 +228,16 @@ public class Presenter {
         mOutput.println(msg);
     }
 
+    /**
+     * Will print a row filled in from a compiled template, ending with a
+     * new line. The row's chars are written directly, no String is created.
+     * @param row template holding the row to print
+     */
+    public void printRow(RowTemplate row) {
+        row.writeTo(mOutput);
+        mOutput.println();
+    }
+
     /**
      * Will start a new line
      */
@@ -125,6 +253,23 @@ public class Presenter {
         waitForUser(true);
     }
 
+    /**
+     * @return total time spent waiting for input so far, so a caller
+     *   timing a menu action can leave out the user's thinking time
+     */
+    public long getInputWaitNanos() {
+        return mInputWaitNanos;
+    }
+
+    private String readLine() throws IOException {
+        long start = System.nanoTime();
+        try {
+            return mInput.readLine();
+        } finally {
+            mInputWaitNanos += System.nanoTime() - start;
+        }
+    }
+
     /**
      * Wait for user to respond.
      * (i.e. pause until user presses [Enter])
@@ -133,12 +278,16 @@ public class Presenter {
      * False to pause without showing a prompt
      */
     public void waitForUser(boolean showPrompt) {
+        if (!mInteractive) {
+            mOutput.flush();
+            return;
+        }
         if (showPrompt) {
             mOutput.print("\n(press [Enter] to continue)");
         }
         mOutput.flush();
         try {
-            mInput.readLine();
+            readLine();
         } catch (IOException e) {
             mOutput.println("An IOException was thrown while waiting for user input.\n\n");
             mOutput.println(e);
@@ -153,14 +302,17 @@ public class Presenter {
      *   will loop until valid input is received
      * @param msg prompt to show for user
      * @return response entered by user
-     * @throws IOException 
+     * @throws IOException from underlying input stream, or EOFException
+     *   if the input ends
      */
     public String readString(String msg) throws IOException {
         String result;
         do {
             mOutput.print(msg);
             mOutput.flush();
-            result = mInput.readLine();
+            result = readLine();
+            if (result == null)
+                throw new EOFException("No more input while waiting for text");
         } while (result.length() < 1);
         return result;
     }
@@ -173,14 +325,17 @@ public class Presenter {
      *   will loop until valid input is received
      * @param msg prompt to show for user
      * @return number entered by user
-     * @throws IOException 
+     * @throws IOException from underlying input stream, or EOFException
+     *   if the input ends
      */
     public int readInt(String msg) throws IOException {
         String result;
         while (true) {
             mOutput.print(msg);
             mOutput.flush();
-            result = mInput.readLine();
+            result = readLine();
+            if (result == null)
+                throw new EOFException("No more input while waiting for a number");
             try {
                 return Integer.parseInt(result);
             } catch (Exception ex) {
@@ -0,0 +1,81 @@
+package com.teamtreehouse.view;
+
+import com.teamtreehouse.model.MappedPlayerRegistry;
+import java.io.IOException;
+
+/**
+ * Renders a mapped player registry as text in the form of the Team
+ * Height Report: totals, then players grouped by height, tallest first.
+ *
+ * The registry's players are kept as record ids in
+ * {@link MappedPlayerRegistry.Roster}s (one per height) and printed
+ * through a reused View, so a registry far larger than the heap is
+ * reported without a Player object per player.
+ */
+public class RegistryReport {
+
+    private RegistryReport() {}
+
+    /**
+     * @param out written a height at a time, so the whole report is
+     *   never held in memory
+     */
+    public static void writeHeightReport(MappedPlayerRegistry registry, Appendable out) throws IOException {
+        MappedPlayerRegistry.Roster[] byHeight = new MappedPlayerRegistry.Roster[256];
+        for (int id = 0; id < registry.size(); id++) {
+            int height = registry.getHeightInInches(id);
+            if (byHeight[height] == null)
+                byHeight[height] = registry.newRoster();
+            byHeight[height].add(id);
+        }
+        int experienced = 0;
+        long heightSum = 0;
+        for (int height = 0; height < byHeight.length; height++) {
+            if (byHeight[height] != null) {
+                experienced += byHeight[height].getCount_ExperiencedPlayers();
+                heightSum += (long) height * byHeight[height].getCount_AllPlayers();
+            }
+        }
+        int players = registry.size();
+
+        StringBuilder text = new StringBuilder();
+        text.append(String.format("Registry: %s\n", registry.getFile()));
+        text.append(String.format("Average Player Height: %.2f\"\n", players > 0 ? (double) heightSum / players : 0d));
+        text.append("Experience:\n");
+        text.append(String.format(" %2d experienced players\n", experienced));
+        text.append(String.format(" %2d inexperienced players\n", players - experienced));
+        text.append('\n');
+        if (players == 0) {
+            text.append("  (no players in this registry)\n");
+            out.append(text);
+            return;
+        }
+
+        RowTemplate overviewRow = RowTemplate.builder()
+                .text("inches ").integer(3).text(" -").integer(2).text(" player").string(0).text("\n")
+                .build();
+        RowTemplate heightRow = RowTemplate.builder().integer(0).text(" inches\n").build();
+        text.append("Heights:\n");
+        text.append("---------\n");
+        for (int height = byHeight.length - 1; height >= 0; height--) {
+            if (byHeight[height] == null)
+                continue;
+            int count = byHeight[height].getCount_AllPlayers();
+            overviewRow.begin().put(height).put(count).put(count == 1 ? "" : "s").appendTo(text);
+        }
+        text.append('\n');
+        text.append("Players:\n");
+        text.append("---------\n");
+        out.append(text);
+
+        for (int height = byHeight.length - 1; height >= 0; height--) {
+            if (byHeight[height] == null)
+                continue;
+            text.setLength(0);
+            heightRow.begin().put(height).appendTo(text);
+            TeamReports.appendRosterLines(text, byHeight[height].records());
+            text.append('\n');
+            out.append(text);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.teamtreehouse.view;
+
+import com.teamtreehouse.metrics.Metrics;
+import com.teamtreehouse.metrics.OperationMetrics;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+/**
+ * Rendered report text, kept so a report on a team that hasn't changed
+ * since it was last shown is printed straight from here.
+ *
+ * Each report is stored with the version of what it reports on (e.g.
+ * {@link com.teamtreehouse.model.Team#getVersion()}) and is rendered
+ * again once that version moves on. The least recently shown reports
+ * are dropped when the total text would exceed the size limit.
+ *
+ * Safe to use from several threads; reports are rendered outside the
+ * cache's lock, so a slow render doesn't hold up other lookups.
+ */
+public class ReportCache {
+    public static final long DEFAULT_MAX_CHARS = 8L * 1024 * 1024;
+
+    private static final OperationMetrics HIT = Metrics.operation("reportCache.hit");
+    private static final OperationMetrics MISS = Metrics.operation("reportCache.miss");
+
+    private final long mMaxChars;
+    private final Map<Key, Entry> mEntries = new LinkedHashMap<>(16, 0.75f, true); // least recently used first
+    private long mChars;
+    private long mHits;
+    private long mMisses;
+
+    private static class Key {
+        final String mReport;
+        final Object mSubject;
+
+        Key(String report, Object subject) {
+            mReport = report;
+            mSubject = subject;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key))
+                return false;
+            Key that = (Key) o;
+            return mReport.equals(that.mReport) && mSubject.equals(that.mSubject);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(mReport, mSubject);
+        }
+    }
+
+    private static class Entry {
+        final long mVersion;
+        final String mText;
+
+        Entry(long version, String text) {
+            mVersion = version;
+            mText = text;
+        }
+    }
+
+    public ReportCache() {
+        this(DEFAULT_MAX_CHARS);
+    }
+
+    /**
+     * @param maxChars most text to keep across all reports; a report
+     *   longer than this is rendered every time
+     */
+    public ReportCache(long maxChars) {
+        mMaxChars = maxChars;
+    }
+
+    /**
+     * @param report which report, e.g. "roster"
+     * @param subject what it reports on, e.g. the team
+     * @param version the subject's version now; read it before rendering,
+     *   so a change made during the render makes the text out of date
+     * @param renderer renders the report if it isn't cached at this version
+     * @return the report's text
+     */
+    public String get(String report, Object subject, long version, Supplier<String> renderer) {
+        long start = System.nanoTime();
+        Key key = new Key(report, subject);
+        synchronized (this) {
+            Entry entry = mEntries.get(key);
+            if (entry != null && entry.mVersion == version) {
+                mHits++;
+                HIT.recordSince(start);
+                return entry.mText;
+            }
+            mMisses++;
+        }
+        String text = renderer.get();
+        synchronized (this) {
+            Entry entry = mEntries.get(key);
+            // Note: another thread may have rendered a newer version meanwhile
+            if ((entry == null || entry.mVersion <= version) && text.length() <= mMaxChars) {
+                if (entry != null)
+                    mChars -= entry.mText.length();
+                mEntries.put(key, new Entry(version, text));
+                mChars += text.length();
+                evict();
+            }
+        }
+        MISS.recordSince(start);
+        return text;
+    }
+
+    public synchronized long getHitCount() { return mHits; }
+    public synchronized long getMissCount() { return mMisses; }
+
+    /**
+     * @return characters of report text being kept
+     */
+    public synchronized long getCachedChars() { return mChars; }
+
+    public synchronized void clear() {
+        mEntries.clear();
+        mChars = 0;
+    }
+
+    private void evict() {
+        Iterator<Entry> entries = mEntries.values().iterator();
+        while (mChars > mMaxChars && entries.hasNext()) {
+            mChars -= entries.next().mText.length();
+            entries.remove();
+        }
+    }
+}
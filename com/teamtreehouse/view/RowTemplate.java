@@ -0,0 +1,301 @@
+package com.teamtreehouse.view;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A row layout (fixed text, column widths, alignment and precision)
+ * compiled once and then filled in row after row.
+ * Values are written straight into a reusable char buffer, so unlike
+ * String.format nothing is parsed or allocated per row or per cell.
+ *
+ * Widths follow printf: positive is right aligned, negative is left
+ * aligned, and values wider than the column are not cut off.
+ *
+ * Example, the same as String.format("%-10s  Height: %2d\"", name, height):
+ *   RowTemplate row = RowTemplate.builder()
+ *           .string(-10).text("  Height: ").integer(2).text("\"")
+ *           .build();
+ *   presenter.printRow(row.begin().put(name).put(height));
+ *
+ * A template holds the row being filled in, so it must only be used by
+ * one thread at a time.
+ */
+public class RowTemplate {
+    private static final int TEXT = 0;
+    private static final int STRING = 1;
+    private static final int INTEGER = 2;
+    private static final int DECIMAL = 3;
+    private static final double HALF_TOLERANCE = 1e-12;
+    private static final long[] POWERS_OF_TEN = {
+        1L, 10L, 100L, 1_000L, 10_000L, 100_000L, 1_000_000L
+    };
+
+    private static class Column {
+        int mKind;
+        char[] mText; // TEXT only
+        int mWidth; // of the value itself (printf width)
+        int mPrecision; // DECIMAL only
+        char[] mPrefix = new char[0];
+        char[] mSuffix = new char[0];
+        int mOuterWidth; // of prefix + value + suffix, 0 for none
+    }
+
+    private final Column[] mColumns;
+    private char[] mBuffer;
+    private int mLength;
+    private int mNextColumn;
+    private final char[] mDigits = new char[20];
+
+    private RowTemplate(List<Column> columns) {
+        mColumns = columns.toArray(new Column[0]);
+        mBuffer = new char[128];
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Describes the columns of a row, left to right.
+     */
+    public static class Builder {
+        private final List<Column> mColumns = new ArrayList<>();
+
+        /**
+         * Fixed text printed on every row.
+         */
+        public Builder text(String text) {
+            Column column = new Column();
+            column.mKind = TEXT;
+            column.mText = text.toCharArray();
+            mColumns.add(column);
+            return this;
+        }
+
+        /** a String value, like %{width}s */
+        public Builder string(int width) {
+            return value(STRING, width, 0);
+        }
+
+        /** an int value, like %{width}d */
+        public Builder integer(int width) {
+            return value(INTEGER, width, 0);
+        }
+
+        /** a double value, like %{width}.{precision}f */
+        public Builder decimal(int width, int precision) {
+            if (precision < 0 || precision >= POWERS_OF_TEN.length)
+                throw new IllegalArgumentException("precision must be 0 to " + (POWERS_OF_TEN.length - 1));
+            return value(DECIMAL, width, precision);
+        }
+
+        /**
+         * Surround the previous value with fixed text and size the whole
+         * as one column, e.g. integer(2).wrap("(", "%)", 6) is the same
+         * as formatting String.format("(%2d%%)", value) with %6s.
+         * @param outerWidth printf style width of prefix + value + suffix
+         */
+        public Builder wrap(String prefix, String suffix, int outerWidth) {
+            if (mColumns.isEmpty() || mColumns.get(mColumns.size() - 1).mKind == TEXT)
+                throw new IllegalStateException("wrap must follow a value column");
+            Column column = mColumns.get(mColumns.size() - 1);
+            column.mPrefix = prefix.toCharArray();
+            column.mSuffix = suffix.toCharArray();
+            column.mOuterWidth = outerWidth;
+            return this;
+        }
+
+        private Builder value(int kind, int width, int precision) {
+            Column column = new Column();
+            column.mKind = kind;
+            column.mWidth = width;
+            column.mPrecision = precision;
+            mColumns.add(column);
+            return this;
+        }
+
+        public RowTemplate build() {
+            return new RowTemplate(mColumns);
+        }
+    }
+
+    /**
+     * Start a new row.
+     * @return this template, for chaining the put calls
+     */
+    public RowTemplate begin() {
+        mLength = 0;
+        mNextColumn = 0;
+        return this;
+    }
+
+    public RowTemplate put(String value) {
+        int start = startValue(STRING);
+        appendChars(value);
+        return endValue(start);
+    }
+
+    public RowTemplate put(int value) {
+        int start = startValue(INTEGER);
+        appendLong(value, 0);
+        return endValue(start);
+    }
+
+    public RowTemplate put(double value) {
+        int start = startValue(DECIMAL);
+        appendDecimal(value, mColumns[mNextColumn].mPrecision);
+        return endValue(start);
+    }
+
+    /**
+     * @return number of chars in the finished row
+     */
+    public int length() {
+        finish();
+        return mLength;
+    }
+
+    public void writeTo(PrintWriter out) {
+        finish();
+        out.write(mBuffer, 0, mLength);
+    }
+
+    public void appendTo(StringBuilder sb) {
+        finish();
+        sb.append(mBuffer, 0, mLength);
+    }
+
+    /**
+     * @return the finished row as a String
+     */
+    @Override
+    public String toString() {
+        finish();
+        return new String(mBuffer, 0, mLength);
+    }
+
+    /**
+     * Writes any fixed text before the next value, then the value's prefix.
+     * @return where the value's cell starts in the buffer
+     */
+    private int startValue(int kind) {
+        writeText();
+        if (mNextColumn >= mColumns.length)
+            throw new IllegalStateException("more values than columns in the row template");
+        Column column = mColumns[mNextColumn];
+        if (column.mKind != kind)
+            throw new IllegalStateException("value does not match column " + mNextColumn);
+        int start = mLength;
+        append(column.mPrefix, column.mPrefix.length);
+        return start;
+    }
+
+    private RowTemplate endValue(int cellStart) {
+        Column column = mColumns[mNextColumn];
+        int valueStart = cellStart + column.mPrefix.length;
+        pad(valueStart, column.mWidth);
+        append(column.mSuffix, column.mSuffix.length);
+        pad(cellStart, column.mOuterWidth);
+        mNextColumn++;
+        return this;
+    }
+
+    /**
+     * Pad from start to the end of the buffer out to the printf width.
+     */
+    private void pad(int start, int width) {
+        int length = mLength - start;
+        int padding = Math.abs(width) - length;
+        if (padding <= 0)
+            return;
+        ensureCapacity(mLength + padding);
+        if (width > 0) { // right aligned, shift the value over
+            System.arraycopy(mBuffer, start, mBuffer, start + padding, length);
+            Arrays.fill(mBuffer, start, start + padding, ' ');
+        } else {
+            Arrays.fill(mBuffer, mLength, mLength + padding, ' ');
+        }
+        mLength += padding;
+    }
+
+    private void writeText() {
+        while (mNextColumn < mColumns.length && mColumns[mNextColumn].mKind == TEXT) {
+            char[] text = mColumns[mNextColumn].mText;
+            append(text, text.length);
+            mNextColumn++;
+        }
+    }
+
+    private void finish() {
+        writeText();
+    }
+
+    private void append(char[] chars, int count) {
+        ensureCapacity(mLength + count);
+        System.arraycopy(chars, 0, mBuffer, mLength, count);
+        mLength += count;
+    }
+
+    private void appendChars(String value) {
+        int count = value.length();
+        ensureCapacity(mLength + count);
+        value.getChars(0, count, mBuffer, mLength);
+        mLength += count;
+    }
+
+    /**
+     * @param minDigits zero pad to at least this many digits
+     */
+    private void appendLong(long value, int minDigits) {
+        boolean negative = value < 0;
+        int count = 0;
+        do {
+            long digit = value % 10;
+            mDigits[count++] = (char) ('0' + Math.abs(digit));
+            value /= 10;
+        } while (value != 0);
+        while (count < minDigits)
+            mDigits[count++] = '0';
+        ensureCapacity(mLength + count + 1);
+        if (negative)
+            mBuffer[mLength++] = '-';
+        while (count > 0)
+            mBuffer[mLength++] = mDigits[--count];
+    }
+
+    /**
+     * Rounds half up like %.Nf for the values reports print
+     * (averages and percentages), without going through a String.
+     */
+    private void appendDecimal(double value, int precision) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            appendChars(Double.isNaN(value) ? "NaN" : value > 0 ? "Infinity" : "-Infinity");
+            return;
+        }
+        long scale = POWERS_OF_TEN[precision];
+        double shifted = Math.abs(value) * scale;
+        long scaled = (long) shifted;
+        // %.Nf rounds the shortest decimal form of the double half up, so
+        //    2.425 (stored as 2.42499999...) still rounds to 2.43
+        if (shifted - scaled >= 0.5 - HALF_TOLERANCE * Math.max(1d, shifted))
+            scaled++;
+        if (value < 0 && scaled != 0) {
+            ensureCapacity(mLength + 1);
+            mBuffer[mLength++] = '-';
+        }
+        appendLong(scaled / scale, 0);
+        if (precision > 0) {
+            ensureCapacity(mLength + 1);
+            mBuffer[mLength++] = '.';
+            appendLong(scaled % scale, precision);
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > mBuffer.length)
+            mBuffer = Arrays.copyOf(mBuffer, Math.max(capacity, mBuffer.length * 2));
+    }
+}
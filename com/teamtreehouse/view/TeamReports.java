@@ -0,0 +1,171 @@
+package com.teamtreehouse.view;
+
+import com.teamtreehouse.model.HeightHistogram;
+import com.teamtreehouse.model.PlayerOrder;
+import com.teamtreehouse.model.PlayerRecord;
+import com.teamtreehouse.model.Team;
+import java.util.Arrays;
+
+/**
+ * Renders a single team's reports as text: the Team Height Report and
+ * the Team Roster.
+ */
+public class TeamReports {
+
+    private TeamReports() {}
+
+    /**
+     * The team's coach, average height and experience, then its players
+     * grouped by height, tallest first.
+     */
+    public static void appendHeightReport(StringBuilder out, Team team) {
+        String teamName = team.getName();
+        out.append(teamName).append('\n');
+        appendDashes(out, teamName.length() + 5);
+        out.append(String.format("Coach: %s\n", team.getCoach()));
+        out.append(String.format("Average Player Height: %.2f\"\n", team.getAverageHeight()));
+        out.append("Experience:\n");
+        out.append(String.format(" %2d experienced players\n", team.getCount_ExperiencedPlayers()));
+        out.append(String.format(" %2d inexperienced players\n", team.getCount_InexperiencedPlayers()));
+        int numPlayers = team.getCount_AllPlayers();
+        out.append(
+            String.format(
+                " %s of %d players have previous experience\n",
+                numPlayers > 0 ? // if no players, prevent printing "NaN" from div by zero error
+                    String.format( // percentage of players with experience
+                        "%2.0f%%",
+                        100d * team.getCount_ExperiencedPlayers() / numPlayers
+                    ) :
+                    " 0%",
+                numPlayers
+            )
+        );
+        out.append('\n');
+        out.append('\n');
+
+        HeightHistogram playersByHeight = team.getHeightHistogram();
+        if (playersByHeight.isEmpty()){
+            out.append("  (no players on this team)\n");
+            return;
+        }
+
+        // Note: read from the league's columns where the team has them,
+        //    see Team.records()
+        Iterable<? extends PlayerRecord> players = team.records(PlayerOrder.HEIGHT);
+        int firstNameLength = 0;
+        int lastNameLength = 0;
+        for (PlayerRecord player : players) {
+            firstNameLength = Math.max(firstNameLength, player.getFirstName().length());
+            lastNameLength = Math.max(lastNameLength, player.getLastName().length());
+        }
+        // {last}, {first}  Height: ##", Experienced: {Yes/No}
+        RowTemplate detailRow = RowTemplate.builder()
+                .text("  ").string(0).wrap("", ",", -(lastNameLength + 1)).text(" ").string(-firstNameLength)
+                .text("  Height: ").integer(0).text("\", Experienced: ").string(0).text("\n")
+                .build();
+        RowTemplate overviewRow = RowTemplate.builder()
+                .text("inches ").integer(2).text(" -").integer(2).text(" player").string(0).text("\n")
+                .build();
+        RowTemplate heightRow = RowTemplate.builder().integer(0).text(" inches\n").build();
+
+        StringBuilder overviewReport = new StringBuilder();
+        StringBuilder detailReport = new StringBuilder();
+
+        for(int height = playersByHeight.getTallest(); height != HeightHistogram.NONE;
+                height = playersByHeight.getNextShorter(height)){
+            numPlayers = playersByHeight.getCount(height);
+            overviewRow.begin().put(height).put(numPlayers).put(numPlayers == 1 ? "" : "s").appendTo(overviewReport);
+        }
+        // Note: tallest first, so each height's players are together
+        int lastHeight = HeightHistogram.NONE;
+        for (PlayerRecord player : players) {
+            if (player.getHeightInInches() != lastHeight) {
+                if (lastHeight != HeightHistogram.NONE)
+                    detailReport.append("\n");
+                lastHeight = player.getHeightInInches();
+                heightRow.begin().put(lastHeight).appendTo(detailReport);
+            }
+            detailRow.begin()
+                    .put(player.getLastName()).put(player.getFirstName())
+                    .put(player.getHeightInInches())
+                    .put(player.isPreviousExperience() ? "Yes" : "No")
+                    .appendTo(detailReport);
+        }
+        if (lastHeight != HeightHistogram.NONE)
+            detailReport.append("\n");
+
+        out.append("Heights:\n");
+        out.append("---------\n");
+        out.append(overviewReport);
+        out.append('\n');
+        out.append("Players:\n");
+        out.append("---------\n");
+        out.append(detailReport);
+    }
+
+    /**
+     * The team's name and coach, then one line per player.
+     */
+    public static void appendRoster(StringBuilder out, Team team) {
+        appendRoster(out, team.getName(), team.getCoach(), team.records(PlayerOrder.NAME));
+    }
+
+    /**
+     * Same as {@link #appendRoster(StringBuilder, Team)}, for a copy of a
+     * team (e.g. a {@link com.teamtreehouse.model.LeagueState.TeamState}).
+     * @param players the players in name order
+     */
+    public static void appendRoster(StringBuilder out, String teamName, String coach,
+            Iterable<? extends PlayerRecord> players) {
+        out.append("Team Roster\n");
+        out.append("-----------------------\n");
+        out.append(String.format("Team Name: %s\n", teamName));
+        out.append(String.format("Coach: %s\n", coach));
+        out.append('\n');
+        out.append("Players:\n");
+        out.append("---------\n");
+
+        appendRosterLines(out, players);
+        out.append("\n\n");
+    }
+
+    /**
+     * One line per player, with the name columns sized to fit.
+     * Works for Player objects and for any other PlayerRecords, e.g. a
+     * {@link com.teamtreehouse.model.PlayerStore}'s rows.
+     */
+    public static void appendRosterLines(StringBuilder out, Iterable<? extends PlayerRecord> players) {
+        int firstNameLength = 0;
+        int lastNameLength = 0;
+        boolean hasPlayers = false;
+        for (PlayerRecord player : players) {
+            firstNameLength = Math.max(firstNameLength, player.getFirstName().length());
+            lastNameLength = Math.max(lastNameLength, player.getLastName().length());
+            hasPlayers = true;
+        }
+        if (!hasPlayers) {
+            out.append("(no players)\n");
+            return;
+        }
+        // {last}, {first}  Height: ##", Experienced: {Yes/No}
+        RowTemplate rosterRow = RowTemplate.builder()
+                .string(0).wrap("", ",", -(lastNameLength + 1)).text(" ").string(-firstNameLength)
+                .text("  Height: ").integer(0).text("\", Experienced: ").string(0)
+                .build();
+
+        for (PlayerRecord player : players) {
+            rosterRow.begin()
+                    .put(player.getLastName()).put(player.getFirstName())
+                    .put(player.getHeightInInches())
+                    .put(player.isPreviousExperience() ? "Yes" : "No")
+                    .appendTo(out);
+            out.append('\n');
+        }
+    }
+
+    private static void appendDashes(StringBuilder out, int count) {
+        char[] dashes = new char[count];
+        Arrays.fill(dashes, '-');
+        out.append(dashes).append('\n');
+    }
+}
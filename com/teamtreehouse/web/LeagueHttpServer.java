@@ -0,0 +1,224 @@
+package com.teamtreehouse.web;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.teamtreehouse.metrics.Metrics;
+import com.teamtreehouse.metrics.OperationMetrics;
+import com.teamtreehouse.model.League;
+import com.teamtreehouse.model.LeagueHistory;
+import com.teamtreehouse.model.LeagueState;
+import com.teamtreehouse.view.LeagueJson;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Serves the league's reports as JSON over HTTP, for reading only.
+ *
+ *   GET /teams                       every team with its totals
+ *   GET /teams/{name}/roster         a team's coach and players
+ *   GET /teams/{name}/height-report  a team's players grouped by height
+ *   GET /reports/balance[?unassigned=true]  the League Balance Report
+ *
+ * Team names are not case sensitive and must be URL encoded.
+ *
+ * Requests are answered from a {@link LeagueState} copy of the league,
+ * so they never wait on organizers editing rosters. The copy is taken
+ * again once the league has changed and it is older than the refresh
+ * interval; taking it locks the league for as long as it takes to copy
+ * the player references, at most once per interval. Given the league's
+ * {@link LeagueHistory}, requests use its state instead, which is
+ * always current and never locks the league.
+ */
+public class LeagueHttpServer {
+    public static final long DEFAULT_REFRESH_MILLIS = 100;
+
+    private static final OperationMetrics TEAMS = Metrics.operation("http.teams");
+    private static final OperationMetrics ROSTER = Metrics.operation("http.roster");
+    private static final OperationMetrics HEIGHT_REPORT = Metrics.operation("http.heightReport");
+    private static final OperationMetrics BALANCE_REPORT = Metrics.operation("http.balanceReport");
+    private static final OperationMetrics FAILED = Metrics.operation("http.failed"); // 400, 404 and 405
+    private static final OperationMetrics CAPTURE = Metrics.operation("http.captureLeague");
+
+    static {
+        // Note: without TCP_NODELAY small responses (headers and body are
+        //    written separately) wait ~40 ms on the client's delayed ACK.
+        //    Read once, when the JDK's server first loads.
+        if (System.getProperty("sun.net.httpserver.nodelay") == null)
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private final League mLeague;
+    private final HttpServer mServer;
+    private final ExecutorService mExecutor;
+    private final ReentrantLock mCaptureLock = new ReentrantLock();
+    private volatile LeagueHistory mHistory;
+    private volatile LeagueState mState;
+    private volatile long mCapturedNanos;
+    private long mRefreshNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_REFRESH_MILLIS);
+
+    /**
+     * @param league the league to serve
+     * @param port port to listen on, on this computer only (0 picks a free port)
+     * @throws IOException if the port can't be opened
+     */
+    public LeagueHttpServer(League league, int port) throws IOException {
+        mLeague = league;
+        mServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        mExecutor = newRequestExecutor();
+        mServer.setExecutor(mExecutor);
+        mServer.createContext("/", this::handle);
+    }
+
+    /**
+     * How stale the served copy may get while the league is changing.
+     * Zero copies the league again for every request after a change.
+     */
+    public void setRefreshInterval(long millis) {
+        mRefreshNanos = TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    /**
+     * Answer from the history's state instead of copying the league.
+     */
+    public void setHistory(LeagueHistory history) {
+        mHistory = history;
+    }
+
+    public void start() {
+        mState = LeagueState.capture(mLeague);
+        mCapturedNanos = System.nanoTime();
+        mServer.start();
+    }
+
+    /**
+     * Stop listening, giving requests in progress up to a second to finish.
+     */
+    public void stop() {
+        mServer.stop(1);
+        mExecutor.shutdown();
+    }
+
+    public int getPort() {
+        return mServer.getAddress().getPort();
+    }
+
+    /**
+     * One thread per request: a virtual thread when the JVM has them
+     * (Java 21 and later), otherwise a pooled platform thread.
+     */
+    static ExecutorService newRequestExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException ex) {
+            return Executors.newCachedThreadPool(task -> {
+                Thread thread = new Thread(task, "league-http");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * @return the copy of the league to answer from, taken again if it is
+     *   out of date; while one request is taking a copy, the others keep
+     *   using the previous one rather than wait
+     */
+    LeagueState currentState() {
+        LeagueHistory history = mHistory;
+        if (history != null)
+            return history.getState();
+        LeagueState state = mState;
+        if (state.getVersion() == mLeague.getVersion()
+                || System.nanoTime() - mCapturedNanos < mRefreshNanos
+                || !mCaptureLock.tryLock())
+            return state;
+        try {
+            state = mState;
+            if (state.getVersion() != mLeague.getVersion()) {
+                state = CAPTURE.time(() -> LeagueState.capture(mLeague));
+                mState = state;
+                mCapturedNanos = System.nanoTime();
+            }
+            return state;
+        } finally {
+            mCaptureLock.unlock();
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        long start = System.nanoTime();
+        OperationMetrics operation = FAILED;
+        try {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                exchange.getResponseHeaders().set("Allow", "GET");
+                send(exchange, 405, LeagueJson.error(405, "only GET is supported"));
+                return;
+            }
+            String[] path = exchange.getRequestURI().getRawPath().split("/");
+            String query = exchange.getRequestURI().getRawQuery();
+            LeagueState state = currentState();
+            // Note: the path starts with "/", so path[0] is always ""
+            if (path.length == 2 && path[1].equals("teams")) {
+                operation = TEAMS;
+                send(exchange, 200, LeagueJson.teams(state));
+            } else if (path.length == 4 && path[1].equals("teams")) {
+                LeagueState.TeamState team = state.getTeam(decode(path[2]));
+                if (team == null) {
+                    send(exchange, 404, LeagueJson.error(404, String.format("no team named \"%s\"", decode(path[2]))));
+                } else if (path[3].equals("roster")) {
+                    operation = ROSTER;
+                    send(exchange, 200, LeagueJson.roster(state, team));
+                } else if (path[3].equals("height-report")) {
+                    operation = HEIGHT_REPORT;
+                    send(exchange, 200, LeagueJson.heightReport(state, team));
+                } else {
+                    send(exchange, 404, LeagueJson.error(404, "not found"));
+                }
+            } else if (path.length == 3 && path[1].equals("reports") && path[2].equals("balance")) {
+                boolean includeUnassigned = hasParameter(query, "unassigned=true");
+                operation = BALANCE_REPORT;
+                send(exchange, 200, LeagueJson.balanceReport(state, includeUnassigned));
+            } else {
+                send(exchange, 404, LeagueJson.error(404, "not found"));
+            }
+        } catch (IllegalArgumentException ex) { // bad URL encoding
+            send(exchange, 400, LeagueJson.error(400, ex.getMessage()));
+        } finally {
+            exchange.close();
+            operation.recordSince(start);
+        }
+    }
+
+    private static boolean hasParameter(String query, String parameter) {
+        if (query == null)
+            return false;
+        for (String each : query.split("&"))
+            if (each.equals(parameter))
+                return true;
+        return false;
+    }
+
+    private static String decode(String pathSegment) {
+        // Note: URLDecoder is for form data and would turn "+" into a space
+        return URLDecoder.decode(pathSegment.replace("+", "%2B"), StandardCharsets.UTF_8);
+    }
+
+    private static void send(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
@@ -0,0 +1,370 @@
+package com.teamtreehouse.benchmark;
+
+import com.teamtreehouse.model.League;
+import com.teamtreehouse.model.LeagueHistory;
+import com.teamtreehouse.model.LeagueState;
+import com.teamtreehouse.model.LeagueStatistics;
+import com.teamtreehouse.model.Player;
+import com.teamtreehouse.model.PlayerMove;
+import com.teamtreehouse.model.PlayerQueries;
+import com.teamtreehouse.model.PlayerRecord;
+import com.teamtreehouse.model.Team;
+import com.teamtreehouse.persistence.LeagueCodec;
+import com.teamtreehouse.view.LeagueBalanceReport;
+import com.teamtreehouse.view.Presenter;
+import com.teamtreehouse.view.ReportCache;
+import com.teamtreehouse.view.TeamReports;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput and allocation of the model and report code the menus run,
+ * at a range of league sizes (the size parameter, in players):
+ *   team*          Team's mutations and aggregates, on a team holding
+ *                  every player
+ *   selectPlayer*  the name and height orders selectPlayer lists:
+ *                  opening one and reading its first page, and paging
+ *                  on through it
+ *   balance*       the two parts of the League Balance Report, for a
+ *                  league of size/1000 teams (4 to 1000) with a tenth
+ *                  of the players unassigned
+ *   report*        rendering a team's reports, and showing one that
+ *                  is already in the report cache
+ *   query*         counting and listing the unassigned, experienced
+ *                  players from 42 to 45 inches, from the bitmap
+ *                  indexes and by scanning the pool
+ *   move*          moving up to 500 players from one team to another
+ *                  (and back, every other operation) in one batch, and
+ *                  one transfer at a time
+ *   state*         one transfer and then a LeagueState of the league,
+ *                  copied from it and from a LeagueHistory (which
+ *                  stays listening once made, slowing later changes)
+ *   codec*         the whole league encoded by LeagueCodec, decoded
+ *                  (every player read), and its players written with
+ *                  Java serialization, returning the bytes
+ *
+ * Each benchmark only sets up what it uses, so e.g. the bitmap indexes
+ * of the query benchmarks don't slow the move benchmarks down.
+ *
+ * Usage: gradle :jmh:jmh [-PjmhArgs="<JMH options, e.g. -p size=1000 team>"]
+ *   (runs with -prof gc, for the allocation rate)
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ModelBenchmarks {
+
+    @State(Scope.Benchmark)
+    public static class Players {
+        @Param({"1000", "10000", "100000", "1000000"})
+        public int size;
+
+        Player[] mPlayers;
+
+        @Setup
+        public void setUp() {
+            mPlayers = SyntheticPlayers.roster(size, new Random(42));
+        }
+    }
+
+    /**
+     * A team holding every player.
+     */
+    @State(Scope.Benchmark)
+    public static class TeamFixture {
+        Player[] mPlayers;
+        Team mTeam;
+        int mNext;
+        List<Player> mSortedByHeight;
+        int mNextPage;
+        final StringBuilder mOut = new StringBuilder();
+        ReportCache mCache;
+
+        @Setup
+        public void setUp(Players players) {
+            mPlayers = players.mPlayers;
+            mTeam = new Team("Benchmark", "Coach");
+            for (Player player : mPlayers)
+                mTeam.addPlayer(player);
+            mSortedByHeight = mTeam.getPlayersSortedByHeight();
+            mCache = new ReportCache(Long.MAX_VALUE);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class LeagueFixture {
+        League mLeague;
+        LeagueStatistics mStatistics;
+        List<Team> mReportTeams;
+        int mMaxNameLength;
+        final StringBuilder mOut = new StringBuilder();
+
+        @Setup
+        public void setUp(Players players) {
+            int size = players.size;
+            mLeague = new League();
+            mStatistics = new LeagueStatistics(mLeague);
+            for (Player player : players.mPlayers)
+                mLeague.registerPlayer(player);
+            int teamCount = Math.max(4, Math.min(1000, size / 1000));
+            Team[] teams = new Team[teamCount];
+            for (int i = 0; i < teamCount; i++)
+                teams[i] = mLeague.createTeam(String.format("Team %04d", i + 1), "Coach " + (i + 1));
+            for (int i = 0; i < size - size / 10; i++)
+                mLeague.assignPlayer(players.mPlayers[i], teams[i % teamCount]);
+            // same teams and column width as LeagueManager's report, unassigned included
+            mReportTeams = new ArrayList<>(teamCount + 1);
+            mReportTeams.add(mLeague.getUnassignedPool());
+            mReportTeams.addAll(mStatistics.getTeamsByName());
+            mMaxNameLength = Math.max("Team Name".length(),
+                    Math.max(mStatistics.getMaxTeamNameLength(), League.UNASSIGNED_POOL_NAME.length()));
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class QueryFixture {
+        PlayerQueries mQueries;
+        PlayerQueries.Query mQuery;
+
+        @Setup
+        public void setUp(LeagueFixture league) {
+            mQueries = new PlayerQueries(league.mLeague);
+            mQuery = mQueries.onTeam(league.mLeague.getUnassignedPool())
+                    .and(mQueries.experienced(true)).and(mQueries.heightBetween(42, 45));
+        }
+    }
+
+    /**
+     * Players on the league's first team to move to its second.
+     */
+    @State(Scope.Benchmark)
+    public static class MoveFixture {
+        League mLeague;
+        final List<PlayerMove> mMoves = new ArrayList<>();
+        final List<PlayerMove> mMovesBack = new ArrayList<>();
+        boolean mBack;
+        int mNext;
+
+        @Setup
+        public void setUp(LeagueFixture league) {
+            mLeague = league.mLeague;
+            Team[] teams = mLeague.getTeams().toArray(new Team[0]);
+            for (Player player : teams[0].getPlayers()) {
+                if (mMoves.size() == 500)
+                    break;
+                mMoves.add(new PlayerMove(player, teams[0], teams[1]));
+                mMovesBack.add(new PlayerMove(player, teams[1], teams[0]));
+            }
+        }
+
+        /**
+         * Transfer the next of the players to whichever of the two teams
+         * it isn't on.
+         */
+        void transferNext() {
+            int index = mNext++ % mMoves.size();
+            PlayerMove move = mMoves.get(index);
+            if (!move.getFromTeam().getPlayers().contains(move.getPlayer()))
+                move = mMovesBack.get(index);
+            mLeague.transferPlayer(move.getPlayer(), move.getFromTeam(), move.getToTeam());
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class HistoryFixture {
+        LeagueHistory mHistory;
+
+        @Setup
+        public void setUp(LeagueFixture league) {
+            mHistory = new LeagueHistory(league.mLeague);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class CodecFixture {
+        ByteBuffer mEncoded;
+        final List<Player> mPlayers = new ArrayList<>();
+
+        @Setup
+        public void setUp(LeagueFixture league) {
+            mEncoded = LeagueCodec.encode(league.mLeague);
+            for (Team team : league.mLeague.getTeams())
+                mPlayers.addAll(team.getPlayers());
+            mPlayers.addAll(league.mLeague.getUnassignedPlayers());
+        }
+    }
+
+    @Benchmark
+    public int teamAddAndRemovePlayer(TeamFixture fixture) {
+        Player player = fixture.mPlayers[fixture.mNext];
+        fixture.mNext = (fixture.mNext + 1) % fixture.mPlayers.length;
+        fixture.mTeam.removePlayer(player);
+        fixture.mTeam.addPlayer(player);
+        return fixture.mTeam.getCount_AllPlayers();
+    }
+
+    @Benchmark
+    public double teamAverageHeight(TeamFixture fixture) {
+        return fixture.mTeam.getAverageHeight();
+    }
+
+    @Benchmark
+    public int teamPlayersGroupedByHeight(TeamFixture fixture) {
+        return fixture.mTeam.getPlayersGroupedByHeight().size();
+    }
+
+    @Benchmark
+    public long selectPlayerSortByName(TeamFixture fixture) {
+        return page(fixture.mTeam.getPlayersSortedByName(), 0);
+    }
+
+    @Benchmark
+    public long selectPlayerSortByHeight(TeamFixture fixture) {
+        return page(fixture.mTeam.getPlayersSortedByHeight(), 0);
+    }
+
+    @Benchmark
+    public long selectPlayerNextPage(TeamFixture fixture) {
+        long heights = page(fixture.mSortedByHeight, fixture.mNextPage);
+        fixture.mNextPage = (fixture.mNextPage + Presenter.DEFAULT_PAGE_SIZE) % fixture.mSortedByHeight.size();
+        return heights;
+    }
+
+    @Benchmark
+    public int balanceMainReport(LeagueFixture fixture) {
+        fixture.mOut.setLength(0);
+        LeagueBalanceReport.appendMainReport(fixture.mOut, fixture.mReportTeams, fixture.mMaxNameLength,
+                fixture.mStatistics, true);
+        return fixture.mOut.length();
+    }
+
+    @Benchmark
+    public int balanceHeightChart(LeagueFixture fixture) {
+        fixture.mOut.setLength(0);
+        LeagueBalanceReport.appendHeightChart(fixture.mOut, fixture.mReportTeams, fixture.mMaxNameLength,
+                fixture.mStatistics, true);
+        return fixture.mOut.length();
+    }
+
+    @Benchmark
+    public int queryCount(QueryFixture fixture) {
+        return fixture.mQueries.count(fixture.mQuery);
+    }
+
+    @Benchmark
+    public int queryFind(QueryFixture fixture) {
+        return fixture.mQueries.find(fixture.mQuery).size();
+    }
+
+    @Benchmark
+    public int queryScan(LeagueFixture fixture) {
+        int count = 0;
+        for (Player player : fixture.mLeague.getUnassignedPlayers()) {
+            if (player.isPreviousExperience() && player.getHeightInInches() >= 42 && player.getHeightInInches() <= 45)
+                count++;
+        }
+        return count;
+    }
+
+    @Benchmark
+    public int moveMovePlayers(MoveFixture fixture) {
+        fixture.mLeague.movePlayers(fixture.mBack ? fixture.mMovesBack : fixture.mMoves);
+        fixture.mBack = !fixture.mBack;
+        return fixture.mMoves.size();
+    }
+
+    @Benchmark
+    public int moveTransferPlayer(MoveFixture fixture) {
+        for (PlayerMove move : fixture.mBack ? fixture.mMovesBack : fixture.mMoves)
+            fixture.mLeague.transferPlayer(move.getPlayer(), move.getFromTeam(), move.getToTeam());
+        fixture.mBack = !fixture.mBack;
+        return fixture.mMoves.size();
+    }
+
+    @Benchmark
+    public int stateCapture(MoveFixture fixture) {
+        fixture.transferNext();
+        return LeagueState.capture(fixture.mLeague).getTeams().size();
+    }
+
+    @Benchmark
+    public int stateHistory(MoveFixture fixture, HistoryFixture history) {
+        fixture.transferNext();
+        history.mHistory.endStep();
+        return history.mHistory.getState().getTeams().size();
+    }
+
+    @Benchmark
+    public int codecEncode(LeagueFixture fixture) {
+        return LeagueCodec.encode(fixture.mLeague).remaining();
+    }
+
+    @Benchmark
+    public long codecDecode(CodecFixture fixture) throws IOException {
+        LeagueCodec.Decoded decoded = LeagueCodec.decode(fixture.mEncoded);
+        long heights = 0;
+        for (int i = 0; i < decoded.getTeamCount(); i++)
+            for (PlayerRecord player : decoded.records(i))
+                heights += player.getHeightInInches() + player.getLastName().length();
+        return heights;
+    }
+
+    @Benchmark
+    public int codecJavaSerialization(CodecFixture fixture) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(fixture.mPlayers);
+        }
+        return bytes.size();
+    }
+
+    @Benchmark
+    public int reportTeamRoster(TeamFixture fixture) {
+        fixture.mOut.setLength(0);
+        TeamReports.appendRoster(fixture.mOut, fixture.mTeam);
+        return fixture.mOut.length();
+    }
+
+    @Benchmark
+    public int reportTeamHeight(TeamFixture fixture) {
+        fixture.mOut.setLength(0);
+        TeamReports.appendHeightReport(fixture.mOut, fixture.mTeam);
+        return fixture.mOut.length();
+    }
+
+    @Benchmark
+    public int reportCachedTeamRoster(TeamFixture fixture) {
+        Team team = fixture.mTeam;
+        return fixture.mCache.get("roster", team, team.getVersion(), () -> {
+            StringBuilder out = new StringBuilder();
+            TeamReports.appendRoster(out, team);
+            return out.toString();
+        }).length();
+    }
+
+    private static long page(List<Player> players, int first) {
+        long heights = 0;
+        for (int i = first; i < Math.min(players.size(), first + Presenter.DEFAULT_PAGE_SIZE); i++)
+            heights += players.get(i).getHeightInInches();
+        return heights;
+    }
+}
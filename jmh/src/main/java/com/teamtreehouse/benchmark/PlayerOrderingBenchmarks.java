@@ -0,0 +1,76 @@
+package com.teamtreehouse.benchmark;
+
+import com.teamtreehouse.model.Player;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time to insert then remove every player of a synthetic roster in a
+ * TreeSet, with the original Player ordering (equals, then full String
+ * compares) and with Player's current compareTo (packed sort keys).
+ *
+ * Usage: gradle :jmh:jmh -PjmhArgs="PlayerOrderingBenchmarks"
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PlayerOrderingBenchmarks {
+
+    /**
+     * Player.compareTo as it was before sort keys were added.
+     */
+    static final Comparator<Player> ORIGINAL_ORDER = (a, b) -> {
+        if (a.equals(b))
+            return 0;
+        int lastNameCompare = a.getLastName().compareTo(b.getLastName());
+        if (lastNameCompare != 0)
+            return lastNameCompare;
+        return a.getFirstName().compareTo(b.getFirstName());
+    };
+
+    @Param({"10000", "1000000"})
+    public int size;
+
+    private Player[] mPlayers;
+
+    @Setup
+    public void setUp() {
+        mPlayers = SyntheticPlayers.roster(size, new Random(42));
+    }
+
+    @Benchmark
+    public TreeSet<Player> originalOrder() {
+        return insertAndRemove(new TreeSet<>(ORIGINAL_ORDER));
+    }
+
+    @Benchmark
+    public TreeSet<Player> sortKeys() {
+        return insertAndRemove(new TreeSet<>());
+    }
+
+    private TreeSet<Player> insertAndRemove(TreeSet<Player> set) {
+        for (Player player : mPlayers)
+            set.add(player);
+        for (Player player : mPlayers)
+            set.remove(player);
+        if (!set.isEmpty())
+            throw new IllegalStateException("benchmark set not emptied");
+        return set;
+    }
+}
@@ -0,0 +1,86 @@
+package com.teamtreehouse.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.Test;
+
+class LeagueHistoryTest {
+    @Test
+    void stateNeverShowsAMovePartWay() throws InterruptedException {
+        League league = new League();
+        List<Player> players = new ArrayList<>();
+        for (int i = 0; i < 400; i++) {
+            Player player = new Player("F" + i, "L" + i, 36 + i % 12, i % 2 == 0);
+            players.add(player);
+            league.registerPlayer(player);
+        }
+        Team[] teams = new Team[6];
+        for (int i = 0; i < teams.length; i++)
+            teams[i] = league.createTeam("T" + i, "Coach");
+        LeagueHistory history = new LeagueHistory(league);
+
+        AtomicBoolean stop = new AtomicBoolean();
+        Thread[] threads = new Thread[3];
+        for (int t = 0; t < threads.length; t++) {
+            int first = t;
+            threads[t] = new Thread(() -> {
+                Random random = new Random(first);
+                for (int i = first; i < players.size(); i += threads.length) {
+                    Team team = teams[random.nextInt(teams.length)];
+                    league.assignPlayer(players.get(i), team);
+                    for (int k = 0; k < 20; k++) {
+                        Team to = teams[random.nextInt(teams.length)];
+                        if (league.transferPlayer(players.get(i), team, to))
+                            team = to;
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        Thread reader = new Thread(() -> {
+            while (!stop.get()) {
+                LeagueState state = history.getState();
+                int count = state.getUnassignedPool().getCount_AllPlayers();
+                for (LeagueState.TeamState team : state.getTeams())
+                    count += team.getCount_AllPlayers();
+                assertEquals(players.size(), count);
+            }
+        });
+        List<Throwable> failures = new ArrayList<>();
+        reader.setUncaughtExceptionHandler((thread, ex) -> failures.add(ex));
+        reader.start();
+        for (Thread thread : threads)
+            thread.join();
+        stop.set(true);
+        reader.join();
+        assertEquals(List.of(), failures);
+
+        LeagueState state = history.getState();
+        assertEquals(0, state.getUnassignedPool().getCount_AllPlayers());
+        assertEquals(league.getVersion(), state.getVersion());
+        for (Team team : teams)
+            assertEquals(new ArrayList<>(team.getPlayers()), state.getTeam(team.getName()).getPlayers());
+    }
+
+    @Test
+    void aNewChangeEndsWhatCanBeRedone() {
+        League league = new League();
+        Player player = new Player("Joe", "Smith", 42, true);
+        league.registerPlayer(player);
+        Team team = league.createTeam("Sharks", "Coach");
+        LeagueHistory history = new LeagueHistory(league);
+        league.assignPlayer(player, team);
+        history.endStep();
+        assertEquals("add Smith, Joe to Sharks", history.undo());
+        assertEquals("add Smith, Joe to Sharks", history.getRedoDescription());
+        league.createTeam("Jets", "Coach");
+        assertNull(history.getRedoDescription());
+        assertNull(history.redo());
+        assertEquals("create team Jets", history.getUndoDescription());
+    }
+}
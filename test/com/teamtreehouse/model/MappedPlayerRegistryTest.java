@@ -0,0 +1,58 @@
+package com.teamtreehouse.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class MappedPlayerRegistryTest {
+    @TempDir
+    Path mDirectory;
+
+    private MappedPlayerRegistry write(Player... players) throws IOException {
+        Path file = mDirectory.resolve("players.ttpm");
+        try (MappedPlayerRegistry.Writer writer = MappedPlayerRegistry.create(file)) {
+            for (Player player : players)
+                writer.add(player);
+        }
+        return MappedPlayerRegistry.open(file);
+    }
+
+    @Test
+    void aNameUsedTwiceInOneRecordIsStoredOnce() throws IOException {
+        MappedPlayerRegistry registry = write(new Player("Kim", "Kim", 42, true));
+        // header, one record, then "Kim" once: a length byte and 3 bytes
+        assertEquals(32 + 10 + 1 + 3, Files.size(registry.getFile()));
+        assertEquals(new Player("Kim", "Kim", 42, true), registry.toPlayer(0));
+    }
+
+    @Test
+    void rostersKeepTotalsAndReadThroughViews() throws IOException {
+        MappedPlayerRegistry registry = write(
+                new Player("Joe", "Smith", 42, true),
+                new Player("Jill", "Tanner", 36, false),
+                new Player("Bill", "Smith", 45, true));
+        MappedPlayerRegistry.Roster roster = registry.newRoster();
+        roster.add(0);
+        roster.add(1);
+        roster.add(2);
+        assertTrue(roster.remove(1));
+        assertFalse(roster.remove(1));
+        assertEquals(2, roster.getCount_ExperiencedPlayers());
+        assertEquals(43.5, roster.getAverageHeight());
+        assertEquals(1, roster.getHeightCounts().getCount(45));
+
+        List<Player> players = new ArrayList<>();
+        for (MappedPlayerRegistry.View view : roster.records())
+            players.add(view.toPlayer());
+        assertEquals(List.of(new Player("Joe", "Smith", 42, true), new Player("Bill", "Smith", 45, true)), players);
+        assertEquals("Tanner", registry.view(1).getLastName());
+    }
+}
@@ -0,0 +1,57 @@
+package com.teamtreehouse.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+
+class PlayerQueriesTest {
+    @Test
+    void findsWhatAScanFindsAfterMovesFromSeveralThreads() throws InterruptedException {
+        League league = new League();
+        List<Player> players = new ArrayList<>();
+        Random random = new Random(7);
+        for (int i = 0; i < 4000; i++) {
+            Player player = new Player("F" + i, "L" + random.nextInt(300), 36 + random.nextInt(12), random.nextBoolean());
+            players.add(player);
+            league.registerPlayer(player);
+        }
+        Team[] teams = new Team[8];
+        for (int i = 0; i < teams.length; i++)
+            teams[i] = league.createTeam("T" + i, "Coach");
+        PlayerQueries queries = new PlayerQueries(league);
+
+        // each thread owns its own players, so the moves never conflict
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            int first = t;
+            threads[t] = new Thread(() -> {
+                Random moves = new Random(first);
+                for (int i = first; i < players.size(); i += threads.length) {
+                    Team team = teams[moves.nextInt(teams.length)];
+                    league.assignPlayer(players.get(i), team);
+                    if (moves.nextInt(3) == 0)
+                        league.transferPlayer(players.get(i), team, teams[(team.getName().hashCode() + 1) % teams.length]);
+                    queries.count(queries.onTeam(team).and(queries.experienced(true)));
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads)
+            thread.join();
+
+        for (Team team : teams) {
+            List<Player> found = queries.find(queries.onTeam(team)
+                    .and(queries.experienced(true)).and(queries.heightBetween(40, 44)));
+            found.sort(null);
+            List<Player> scanned = team.getPlayers().stream()
+                    .filter(p -> p.isPreviousExperience() && p.getHeightInInches() >= 40 && p.getHeightInInches() <= 44)
+                    .sorted().collect(Collectors.toList());
+            assertEquals(scanned, found, team.getName());
+        }
+        assertEquals(0, queries.count(queries.onTeam(league.getUnassignedPool())));
+    }
+}
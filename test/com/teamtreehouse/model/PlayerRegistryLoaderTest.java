@@ -0,0 +1,73 @@
+package com.teamtreehouse.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class PlayerRegistryLoaderTest {
+    private static final String ACCENTED_CSV =
+            "firstName,lastName,heightInInches,previousExperience\n"
+            + "José,Müller,42,yes\n"
+            + "Émile,Zoë,36,no\r\n"
+            + "  Ångström , Øre  ,40,true\n";
+
+    @TempDir
+    Path mDirectory;
+
+    private List<Player> load(Path file) throws IOException {
+        List<Player> players = new ArrayList<>();
+        new PlayerRegistryLoader().load(file, PlayerRegistryLoader.into(players));
+        return players;
+    }
+
+    private Path writeCsv(String text) throws IOException {
+        Path file = mDirectory.resolve("players.csv");
+        Files.write(file, text.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private static void assertAccentedPlayers(List<Player> players) {
+        assertEquals(3, players.size());
+        assertEquals("José", players.get(0).getFirstName());
+        assertEquals("Müller", players.get(0).getLastName());
+        assertEquals("Émile", players.get(1).getFirstName());
+        assertEquals("Zoë", players.get(1).getLastName());
+        assertEquals("Ångström", players.get(2).getFirstName());
+        assertEquals("Øre", players.get(2).getLastName());
+    }
+
+    @Test
+    void csvKeepsAccentedLettersAtTheEndsOfFields() throws IOException {
+        List<Player> players = load(writeCsv(ACCENTED_CSV));
+        assertAccentedPlayers(players);
+        assertEquals(42, players.get(0).getHeightInInches());
+        assertEquals(false, players.get(1).isPreviousExperience());
+    }
+
+    @Test
+    void accentedNamesSurviveBinaryAndMappedFormats() throws IOException {
+        List<Player> players = load(writeCsv(ACCENTED_CSV));
+        Path binary = mDirectory.resolve("players.bin");
+        PlayerRegistryLoader.writeBinary(players, binary);
+        assertAccentedPlayers(load(binary));
+
+        Path mapped = mDirectory.resolve("players.ttpm");
+        assertEquals(3, MappedPlayerRegistry.convert(binary, mapped));
+        assertAccentedPlayers(load(mapped));
+    }
+
+    @Test
+    void csvRejectsHeightsThatDontFitInAByte() throws IOException {
+        Path file = writeCsv("Joe,Smith,256,yes\n");
+        IOException ex = assertThrows(IOException.class, () -> load(file));
+        assertEquals("Malformed player record on line 1: height must be from 0 to 255", ex.getMessage());
+    }
+}
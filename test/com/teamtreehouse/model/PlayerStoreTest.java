@@ -0,0 +1,58 @@
+package com.teamtreehouse.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+class PlayerStoreTest {
+    private static final String[] FIRST_NAMES = {"Joe", "Jill", "Ben", "Bo", "Zoë", "Éva"};
+    private static final String[] LAST_NAMES = {"Smith", "Smit", "Adams", "Müller", "Ng"};
+
+    private static List<String> lines(Iterable<? extends PlayerRecord> players) {
+        List<String> lines = new ArrayList<>();
+        for (PlayerRecord player : players)
+            lines.add(player.getLastName() + ", " + player.getFirstName() + " "
+                    + player.getHeightInInches() + " " + player.isPreviousExperience());
+        return lines;
+    }
+
+    @Test
+    void teamRecordsComeFromTheStoreInEachOrder() {
+        League league = new League();
+        Team team = league.createTeam("Sharks", "Coach");
+        Random random = new Random(42);
+        List<Player> players = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            Player player = new Player(FIRST_NAMES[random.nextInt(FIRST_NAMES.length)],
+                    LAST_NAMES[random.nextInt(LAST_NAMES.length)], 36 + random.nextInt(12), random.nextBoolean());
+            if (league.registerPlayer(player))
+                players.add(player);
+        }
+        for (int i = 0; i < players.size(); i += 2)
+            league.assignPlayer(players.get(i), team);
+        for (int i = 0; i < players.size(); i += 6)
+            league.unassignPlayer(players.get(i), team);
+
+        for (PlayerOrder order : PlayerOrder.values()) {
+            assertEquals(lines(team.getPlayersInOrder(order)), lines(team.records(order)), order.name());
+            assertEquals(lines(league.getUnassignedPool().getPlayersInOrder(order)),
+                    lines(league.getUnassignedPool().records(order)), order.name());
+        }
+    }
+
+    @Test
+    void rowsReadBackAsAdded() {
+        PlayerStore store = new PlayerStore(1);
+        for (int i = 0; i < 200; i++)
+            assertEquals(i, store.add(FIRST_NAMES[i % FIRST_NAMES.length], LAST_NAMES[i % LAST_NAMES.length],
+                    i % 80, i % 3 == 0));
+        for (int i = 0; i < 200; i++) {
+            assertEquals(new Player(FIRST_NAMES[i % FIRST_NAMES.length], LAST_NAMES[i % LAST_NAMES.length],
+                    i % 80, i % 3 == 0), store.toPlayer(i));
+        }
+        assertEquals(FIRST_NAMES.length, store.getFirstNames().size());
+    }
+}
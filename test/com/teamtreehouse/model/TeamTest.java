@@ -0,0 +1,47 @@
+package com.teamtreehouse.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class TeamTest {
+    @Test
+    void longestNamesAreKeptAsPlayersComeAndGo() {
+        Team team = new Team("Sharks", "Coach");
+        Player longFirst = new Player("Christopher", "Ng", 42, true);
+        Player longLast = new Player("Al", "Montgomery-Smith", 40, false);
+        Player plain = new Player("Joe", "Smith", 44, false);
+        team.addPlayer(longFirst);
+        team.addPlayer(longLast);
+        team.addPlayer(plain);
+        assertEquals(11, team.getMaxFirstNameLength());
+        assertEquals(16, team.getMaxLastNameLength());
+
+        team.removePlayer(longFirst);
+        team.removePlayer(longLast);
+        assertEquals(3, team.getMaxFirstNameLength());
+        assertEquals(5, team.getMaxLastNameLength());
+        team.removePlayer(plain);
+        assertEquals(0, team.getMaxFirstNameLength());
+    }
+
+    @Test
+    void movePlayersOnlyCountsPlayersThatChanged() {
+        Team team = new Team("Sharks", "Coach");
+        Player on = new Player("Joe", "Smith", 42, true);
+        Player off = new Player("Jill", "Tanner", 36, true);
+        Player added = new Player("Bill", "Bon", 44, false);
+        team.addPlayer(on);
+
+        // off isn't on the team and on already is: only added changes it
+        assertThrows(AssertionError.class,
+                () -> team.movePlayers(List.of(off), List.of(on, added), List.of(-1, -1)));
+        assertEquals(2, team.getCount_AllPlayers());
+        assertEquals(1, team.getCount_ExperiencedPlayers());
+        assertEquals(43.0, team.getAverageHeight());
+        assertEquals(1, team.getHeightHistogram().getCount(44));
+        assertEquals(0, team.getHeightHistogram().getCount(36));
+    }
+}